@@ -0,0 +1,184 @@
+package com.example.qa.cache;
+
+import com.example.qa.router.TextNormalizer;
+import com.example.vector.VectorMath;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 语义回答缓存
+ *
+ * 保存 (问题, 问题向量, 向量模型, Agent, 上下文版本, 完整回答)。查询时只比较 Agent 和上下文版本都相同的条目：
+ * 归一化后的问题文本相同时直接命中；否则要求向量模型相同、余弦相似度不低于阈值，
+ * 且两个问题中的英文和数字整词（专利号、牌号、化学式等）完全相同，避免只差一个编号的问题共用回答。
+ * 上下文版本落后的条目在扫描时顺带移除，条目数超过上限时淘汰最久未命中的条目。
+ */
+public class SemanticAnswerCache {
+
+    private final double threshold;
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong exactHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+
+    /**
+     * @param threshold 命中所需的最低余弦相似度
+     * @param maxEntries 最大条目数
+     * @param ttlMillis 条目有效期，<= 0 表示不过期
+     */
+    public SemanticAnswerCache(double threshold, int maxEntries, long ttlMillis) {
+        this.threshold = threshold;
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 查找相同或语义相同的问题的回答，未命中返回 null
+     *
+     * @param embedder 生成 vector 的向量模型，不同模型的向量不互相比较
+     */
+    public synchronized List<String> find(String question, float[] vector, String embedder,
+                                          String agentCode, long contextVersion) {
+        long now = System.currentTimeMillis();
+        String text = TextNormalizer.normalize(question);
+        Set<String> identifiers = identifiers(text);
+        double norm = VectorMath.norm(vector);
+        Entry best = null;
+        double bestSim = threshold;
+        boolean exact = false;
+
+        Iterator<Entry> it = entries.iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.contextVersion < contextVersion || (ttlMillis > 0 && now - entry.createdAt > ttlMillis)) {
+                it.remove();
+                continue;
+            }
+            if (entry.contextVersion != contextVersion || !entry.agentCode.equals(agentCode)) {
+                continue;
+            }
+            if (entry.text.equals(text)) {
+                best = entry;
+                exact = true;
+                break;
+            }
+            if (!entry.embedder.equals(embedder) || entry.vector.length != vector.length
+                    || !entry.identifiers.equals(identifiers)) {
+                continue;
+            }
+            double sim = VectorMath.cosine(vector, norm, entry.vector, entry.norm);
+            if (sim >= bestSim) {
+                best = entry;
+                bestSim = sim;
+            }
+        }
+
+        if (best == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        best.lastAccess = now;
+        hits.incrementAndGet();
+        if (exact) {
+            exactHits.incrementAndGet();
+        }
+        return best.chunks;
+    }
+
+    /**
+     * 保存回答
+     */
+    public synchronized void put(String question, float[] vector, String embedder, String agentCode,
+                                 long contextVersion, List<String> chunks) {
+        long now = System.currentTimeMillis();
+        String text = TextNormalizer.normalize(question);
+        entries.add(new Entry(text, identifiers(text), vector, VectorMath.norm(vector), embedder, agentCode,
+                contextVersion, Collections.unmodifiableList(new ArrayList<>(chunks)), now));
+        stores.incrementAndGet();
+
+        while (entries.size() > maxEntries) {
+            Entry oldest = entries.get(0);
+            for (Entry entry : entries) {
+                if (entry.lastAccess < oldest.lastAccess) {
+                    oldest = entry;
+                }
+            }
+            entries.remove(oldest);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("hits", hits.get());
+        stats.put("exactHits", exactHits.get());
+        stats.put("misses", misses.get());
+        stats.put("stores", stores.get());
+        stats.put("threshold", threshold);
+        return stats;
+    }
+
+    // 英文和数字整词（小写）
+    private static Set<String> identifiers(String text) {
+        Set<String> identifiers = new HashSet<>();
+        int i = 0;
+        while (i < text.length()) {
+            if (!isAsciiLetterOrDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+            int end = i;
+            while (end < text.length() && isAsciiLetterOrDigit(text.charAt(end))) {
+                end++;
+            }
+            identifiers.add(text.substring(i, end).toLowerCase(Locale.ROOT));
+            i = end;
+        }
+        return identifiers;
+    }
+
+    private static boolean isAsciiLetterOrDigit(char c) {
+        return c < 128 && Character.isLetterOrDigit(c);
+    }
+
+    private static class Entry {
+        final String text;
+        final Set<String> identifiers;
+        final float[] vector;
+        final double norm;
+        final String embedder;
+        final String agentCode;
+        final long contextVersion;
+        final List<String> chunks;
+        final long createdAt;
+        long lastAccess;
+
+        Entry(String text, Set<String> identifiers, float[] vector, double norm, String embedder,
+              String agentCode, long contextVersion, List<String> chunks, long createdAt) {
+            this.text = text;
+            this.identifiers = identifiers;
+            this.vector = vector;
+            this.norm = norm;
+            this.embedder = embedder;
+            this.agentCode = agentCode;
+            this.contextVersion = contextVersion;
+            this.chunks = chunks;
+            this.createdAt = createdAt;
+            this.lastAccess = createdAt;
+        }
+    }
+}
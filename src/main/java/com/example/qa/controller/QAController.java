@@ -1,19 +1,36 @@
 package com.example.qa.controller;
 
 import com.example.qa.handler.BusinessChainHandler;
+import com.example.qa.router.AgentRouter;
+import com.example.qa.router.RoutingDecision;
+import com.example.qa.service.AnswerCacheService;
+import com.example.qa.service.DocumentIndexService;
+import com.example.qa.service.DocumentRetrievalService;
 import com.example.qa.service.MaterialsContextService;
 import com.example.qa.service.OpenAIService;
+import com.example.qa.service.PromptService;
 import com.example.qa.service.SpringAIService;
 import com.example.qa.tool.ConfluenceTool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.servlet.http.HttpServletRequest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -25,6 +42,8 @@ import java.util.stream.Collectors;
 @CrossOrigin(origins = "*")
 public class QAController {
 
+    private static final Logger logger = LoggerFactory.getLogger(QAController.class);
+
     @Autowired
     private OpenAIService openAIService;
 
@@ -40,6 +59,62 @@ public class QAController {
     @Autowired
     private MaterialsContextService materialsContextService;
 
+    @Autowired
+    private AgentRouter agentRouter;
+
+    @Autowired
+    private AnswerCacheService answerCacheService;
+
+    @Autowired
+    private DocumentRetrievalService documentRetrievalService;
+
+    @Autowired
+    private DocumentIndexService documentIndexService;
+
+    @Autowired
+    private PromptService promptService;
+
+    // 输入过程中的预取配置：问题长度达到 min-length 后才预取
+    @Value("${qa.prefetch.enabled:true}")
+    private boolean prefetchEnabled;
+
+    @Value("${qa.prefetch.min-length:4}")
+    private int prefetchMinLength;
+
+    // 同一客户端两次预取的最小间隔，间隔内的预取请求直接跳过
+    @Value("${qa.prefetch.min-interval-ms:1000}")
+    private long prefetchMinIntervalMs;
+
+    // 客户端地址 -> 上次预取时间，超过 PREFETCH_CLIENTS_LIMIT 个时清理过期记录
+    private static final int PREFETCH_CLIENTS_LIMIT = 10000;
+    private final Map<String, Long> lastPrefetchAt = new ConcurrentHashMap<>();
+
+    /**
+     * Agent Code -> 处理器列表（按优先级排序），用于根据路由结果直接分发
+     */
+    private Map<String, List<BusinessChainHandler>> handlersByAgent = Collections.emptyMap();
+
+    /**
+     * 不参与 embedding 路由的处理器（按优先级排序），仍通过 canHandle 判断
+     */
+    private List<BusinessChainHandler> ruleHandlers = Collections.emptyList();
+
+    @PostConstruct
+    public void initHandlerIndex() {
+        Map<String, List<BusinessChainHandler>> byAgent = new HashMap<>();
+        List<BusinessChainHandler> rules = new ArrayList<>();
+        for (BusinessChainHandler handler : getSortedHandlers()) {
+            String agentCode = handler.getAgentCode();
+            if (agentCode == null) {
+                rules.add(handler);
+            } else {
+                byAgent.computeIfAbsent(agentCode, k -> new ArrayList<>()).add(handler);
+            }
+        }
+        this.handlersByAgent = byAgent;
+        this.ruleHandlers = rules;
+    }
+
     /**
      * 获取按优先级排序的处理器列表
      */
@@ -49,14 +124,28 @@ public class QAController {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 根据路由结果确定本次请求的候选处理器链（按优先级排序）
+     * embedding 路由的处理器直接从 Agent Code 映射中取出，只有非 embedding 处理器才调用 canHandle
+     */
+    private List<BusinessChainHandler> resolveHandlers(String question, RoutingDecision decision) {
+        List<BusinessChainHandler> chain = new ArrayList<>();
+        for (BusinessChainHandler handler : ruleHandlers) {
+            if (handler.canHandle(question)) {
+                chain.add(handler);
+            }
+        }
+        chain.addAll(handlersByAgent.getOrDefault(decision.getAgentCode(), Collections.emptyList()));
+        chain.sort(Comparator.comparingInt(BusinessChainHandler::getPriority));
+        return chain;
+    }
+
     /**
      * 查找可以处理问题的处理器
      */
     private BusinessChainHandler findHandler(String question) {
-        return getSortedHandlers().stream()
-                .filter(handler -> handler.canHandle(question))
-                .findFirst()
-                .orElse(null);
+        List<BusinessChainHandler> chain = resolveHandlers(question, agentRouter.routeDecision(question));
+        return chain.isEmpty() ? null : chain.get(0);
     }
 
     /**
@@ -75,70 +164,133 @@ public class QAController {
         }
 
         try {
-            // 使用责任链模式查找合适的处理器，支持跳过逻辑
-            List<BusinessChainHandler> sortedHandlers = getSortedHandlers();
-            return processHandlersWithSkip(question, sortedHandlers, 0);
+            // 每个请求只路由一次（非阻塞），再按路由结果组装责任链，支持跳过逻辑；
+            // 路由时计算的问题向量通过 Reactor Context 传给文档检索，不再重复计算
+            return agentRouter.routeAsync(question)
+                    .flatMapMany(decision -> answerFor(question, decision)
+                            .contextWrite(context -> decision.getQueryVector() != null
+                                    ? context.put(DocumentRetrievalService.QUERY_VECTOR, decision.getQueryVector())
+                                    : context));
         } catch (Exception e) {
             String errorMsg = "抱歉，处理您的问题时出现了错误：" + e.getMessage();
             return Flux.just("data: " + errorMsg + "\n\n");
         }
     }
 
+    /**
+     * 按路由结果组装责任链并回答；Agent 处理器的回答经过回答缓存
+     *
+     * 规则处理器（如 Confluence）命中时优先于多标签路由：问题按单条责任链回答
+     * （规则处理器在前，其后为主 Agent 的处理器），不做多 Agent 合并，也不缓存。
+     * 规则处理器依赖外部实时数据且可能跳过，无法与其他 Agent 的回答一起缓存
+     */
+    private Flux<String> answerFor(String question, RoutingDecision decision) {
+        List<BusinessChainHandler> chain = resolveHandlers(question, decision);
+        // 规则处理器依赖外部实时数据，其回答不缓存
+        boolean cacheable = chain.stream().allMatch(handler -> handler.getAgentCode() != null);
+        if (decision.isMultiAgent() && !cacheable) {
+            logger.info("规则处理器已匹配，多标签路由 {} 按单条责任链回答（主 Agent: {}）",
+                    decision.getAgentCodes(), decision.getAgentCode());
+        }
+        if (decision.isMultiAgent() && cacheable) {
+            // 多标签路由：多个 Agent 并行回答，按路由顺序依次输出
+            Supplier<Flux<String>> answer = () -> processMultiAgent(question, decision.getAgentCodes());
+            return answerCacheService.answer(question, String.join("+", decision.getAgentCodes()),
+                    decision.getQueryVector(), answer);
+        }
+        Supplier<Flux<String>> answer = () -> processHandlersWithSkip(question, chain, 0);
+        return cacheable
+                ? answerCacheService.answer(question, decision.getAgentCode(), decision.getQueryVector(), answer)
+                : answer.get();
+    }
+
+    /**
+     * 多个 Agent 共同回答
+     * 各 Agent 的处理器链同时订阅（并行调用大模型），输出仍按路由顺序逐段排列，段与段之间插入分隔线。
+     * 跳过的 Agent 不输出任何内容；所有 Agent 都跳过时使用默认问答
+     */
+    private Flux<String> processMultiAgent(String question, List<String> agentCodes) {
+        List<Flux<Map.Entry<Integer, String>>> sections = new ArrayList<>();
+        for (int i = 0; i < agentCodes.size(); i++) {
+            int index = i;
+            List<BusinessChainHandler> chain = handlersByAgent.getOrDefault(agentCodes.get(i), Collections.emptyList());
+            // 订阅时才组装处理器链（调用 handleStream），取消请求时各段随订阅一起取消，不会留下无人订阅的大模型调用
+            sections.add(Flux.defer(() -> processHandlersWithSkip(question, chain, 0, Flux::empty))
+                    .filter(chunk -> !chunk.isEmpty())
+                    .map(chunk -> Map.entry(index, chunk)));
+        }
+
+        return Flux.defer(() -> {
+            int[] lastSection = {-1};
+            return Flux.mergeSequential(sections)
+                    .concatMapIterable(entry -> {
+                        boolean newSection = entry.getKey() != lastSection[0];
+                        boolean needSeparator = newSection && lastSection[0] >= 0;
+                        lastSection[0] = entry.getKey();
+                        return needSeparator
+                                ? Arrays.asList(MULTI_AGENT_SEPARATOR, entry.getValue())
+                                : Collections.singletonList(entry.getValue());
+                    });
+        }).switchIfEmpty(Flux.defer(() -> getDefaultAnswerStream(question)));
+    }
+
+    /**
+     * 多 Agent 回答之间的分隔
+     */
+    private static final String MULTI_AGENT_SEPARATOR = "\n---\n\n";
+
     /**
      * 处理handler链，支持跳过逻辑
      */
     private Flux<String> processHandlersWithSkip(String question, 
                                                   List<BusinessChainHandler> handlers, 
                                                   int startIndex) {
+        return processHandlersWithSkip(question, handlers, startIndex, () -> getDefaultAnswerStream(question));
+    }
+
+    /**
+     * 处理handler链，支持跳过逻辑
+     *
+     * @param whenExhausted 所有handler都跳过时的回答
+     */
+    private Flux<String> processHandlersWithSkip(String question,
+                                                  List<BusinessChainHandler> handlers,
+                                                  int startIndex,
+                                                  Supplier<Flux<String>> whenExhausted) {
         // 如果已经遍历完所有handler，使用默认问答
         if (startIndex >= handlers.size()) {
-            return getDefaultAnswerStream(question);
+            return whenExhausted.get();
         }
 
-        // 查找当前及后续可以处理的handler
-        for (int i = startIndex; i < handlers.size(); i++) {
-            BusinessChainHandler handler = handlers.get(i);
-            if (handler.canHandle(question)) {
-                final int currentIndex = i; // 保存为final变量供lambda使用
-                Flux<String> handlerResult = handler.handleStream(question);
-                
-                // 使用cache来缓存结果，这样我们可以多次订阅
-                Flux<String> cachedResult = handlerResult.cache();
-                
-                // 检查第一个chunk是否包含跳过标识
-                return cachedResult
-                        .take(1)
-                        .collectList()
-                        .flatMapMany(chunks -> {
-                            boolean isSkipped = false;
-                            if (chunks.isEmpty()) {
-                                isSkipped = true; // 空结果视为跳过
-                            } else {
-                                // 合并所有chunk并检查
-                                String combined = String.join("", chunks);
-                                String clean = combined.replace("\n\n", "").replace("\n", "").trim();
-                                isSkipped = clean.contains(SKIP_MARKER);
-                            }
-                            
-                            if (isSkipped) {
-                                // 跳过，尝试下一个handler
-                                return processHandlersWithSkip(question, handlers, currentIndex + 1);
-                            } else {
-                                // 不跳过，先添加handler提示信息，然后返回完整的handler结果（过滤掉SKIP标记）
-                                String handlerName = getFriendlyHandlerName(handler.getHandlerName());
-                                String handlerInfo = "💡 我使用了 " + handlerName + " 来回答您的问题：\n\n";
-                                return Flux.just(handlerInfo)
-                                        .concatWith(cachedResult
-                                                .filter(chunk -> !chunk.trim().equals(SKIP_MARKER) && !chunk.contains(SKIP_MARKER)));
-                            }
-                        })
-                        .defaultIfEmpty("")
-                        .switchIfEmpty(processHandlersWithSkip(question, handlers, currentIndex + 1));
-            }
-        }
+        // 链中的handler均已确定可以处理该问题
+        BusinessChainHandler handler = handlers.get(startIndex);
 
-        // 没有找到可以处理的handler，使用默认问答
-        return getDefaultAnswerStream(question);
+        // 根据第一个chunk判断是否跳过；只订阅一次handler的输出，下游取消时直接取消handler的请求
+        return handler.handleStream(question)
+                .switchOnFirst((first, result) -> {
+                    if (first.isOnError()) {
+                        return result;
+                    }
+                    boolean isSkipped = true; // 空结果视为跳过
+                    if (first.hasValue()) {
+                        String clean = first.get().replace("\n\n", "").replace("\n", "").trim();
+                        isSkipped = clean.contains(SKIP_MARKER);
+                    }
+
+                    if (isSkipped) {
+                        // 跳过：取消该handler的输出，尝试下一个handler
+                        return result.take(1)
+                                .thenMany(Flux.defer(() ->
+                                        processHandlersWithSkip(question, handlers, startIndex + 1, whenExhausted)));
+                    }
+                    // 不跳过，先添加handler提示信息，然后返回完整的handler结果（过滤掉SKIP标记）
+                    String handlerName = getFriendlyHandlerName(handler.getHandlerName());
+                    String handlerInfo = "💡 我使用了 " + handlerName + " 来回答您的问题：\n\n";
+                    return Flux.just(handlerInfo)
+                            .concatWith(result
+                                    .filter(chunk -> !chunk.trim().equals(SKIP_MARKER) && !chunk.contains(SKIP_MARKER)));
+                })
+                .defaultIfEmpty("");
     }
 
     /**
@@ -173,6 +325,138 @@ public class QAController {
                 });
     }
 
+    /**
+     * 预取接口：前端在用户输入时（防抖后）调用，提前执行路由并准备检索所需的问题向量。
+     * 路由与正式提问走同一条路径，结果写入路由决策缓存和内存 embedding 缓存，
+     * 正式提问的问题与最后一次预取相同（或近似重复）时直接命中；预取计算的向量不写入磁盘缓存。
+     * 同一客户端按 qa.prefetch.min-interval-ms 限流
+     */
+    @PostMapping("/prefetch")
+    public Mono<Map<String, Object>> prefetch(@RequestBody Map<String, String> request,
+                                              HttpServletRequest httpRequest) {
+        String question = request.get("question");
+        Map<String, Object> response = new HashMap<>();
+        if (!prefetchEnabled || question == null || question.trim().length() < prefetchMinLength) {
+            response.put("status", "skipped");
+            return Mono.just(response);
+        }
+        if (!acquirePrefetch(httpRequest.getRemoteAddr())) {
+            response.put("status", "throttled");
+            return Mono.just(response);
+        }
+
+        long start = System.currentTimeMillis();
+        return agentRouter.prefetchRoute(question)
+                .flatMap(decision -> materialsContextService.prefetchContext(question, decision)
+                        .thenReturn(decision))
+                .map(decision -> {
+                    response.put("status", "success");
+                    response.put("agentCode", decision.getAgentCode());
+                    response.put("elapsedMillis", System.currentTimeMillis() - start);
+                    return response;
+                })
+                .onErrorResume(e -> {
+                    response.put("status", "error");
+                    response.put("message", e.getMessage());
+                    return Mono.just(response);
+                });
+    }
+
+    // 距该客户端上次预取超过最小间隔时记录本次时间并返回 true
+    private boolean acquirePrefetch(String client) {
+        long now = System.currentTimeMillis();
+        if (lastPrefetchAt.size() > PREFETCH_CLIENTS_LIMIT) {
+            lastPrefetchAt.values().removeIf(last -> now - last >= prefetchMinIntervalMs);
+        }
+        boolean[] acquired = new boolean[1];
+        lastPrefetchAt.compute(client, (key, last) -> {
+            if (last != null && now - last < prefetchMinIntervalMs) {
+                return last;
+            }
+            acquired[0] = true;
+            return now;
+        });
+        return acquired[0];
+    }
+
+    /**
+     * 获取文档检索索引统计信息
+     */
+    @GetMapping("/retrieval/stats")
+    public Map<String, Object> getRetrievalStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("retrieval", documentRetrievalService.getStats());
+        response.put("status", "success");
+        return response;
+    }
+
+    /**
+     * 全量对账文档片段索引（补齐丢失的索引事件）
+     * 对账在索引线程上排队执行，与增量索引不会交错，完成后返回索引统计
+     */
+    @PostMapping("/retrieval/reindex")
+    public Mono<Map<String, Object>> reindexDocuments() {
+        return documentIndexService.reindex()
+                .map(stats -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("retrieval", stats);
+                    response.put("status", "success");
+                    return response;
+                })
+                .onErrorResume(e -> {
+                    Map<String, Object> response = new HashMap<>();
+                    response.put("status", "error");
+                    response.put("message", "文档片段索引对账失败: " + e.getMessage());
+                    return Mono.just(response);
+                });
+    }
+
+    /**
+     * 将重试次数用尽的文档索引事件（死信）重新入队
+     */
+    @PostMapping("/retrieval/retry-dead-letters")
+    public Map<String, Object> retryDeadLetters() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("requeued", documentIndexService.retryDeadLetters());
+        response.put("status", "success");
+        return response;
+    }
+
+    /**
+     * 获取提示词 token 统计信息（上下文窗口、累计的提示词 / 回答 token 估计、被裁剪的片段数）
+     */
+    @GetMapping("/prompt/stats")
+    public Map<String, Object> getPromptStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("prompt", promptService.getStats());
+        response.put("usage", openAIService.getUsageStats());
+        response.put("status", "success");
+        return response;
+    }
+
+    /**
+     * 获取回答缓存统计信息
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> getAnswerCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        response.put("cache", answerCacheService.getStats());
+        response.put("status", "success");
+        return response;
+    }
+
+    /**
+     * 清空回答缓存
+     */
+    @PostMapping("/cache/clear")
+    public Map<String, Object> clearAnswerCache() {
+        Map<String, Object> response = new HashMap<>();
+        answerCacheService.clear();
+        response.put("status", "success");
+        response.put("message", "回答缓存已清空");
+        return response;
+    }
+
     /**
      * 普通问答接口（非流式，支持工具调用）
      */
@@ -0,0 +1,79 @@
+package com.example.qa.controller;
+
+import com.example.qa.router.AgentRouter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 路由器控制器
+ * 提供 AgentRouter 的就绪状态、缓存统计与示例重新加载接口
+ */
+@RestController
+@RequestMapping("/api/router")
+@CrossOrigin(origins = "*")
+public class RouterController {
+
+    @Autowired
+    private AgentRouter agentRouter;
+
+    /**
+     * 获取路由器就绪状态
+     * 语义路由可用（或按配置只使用本地模型）时返回 200，预热中、预热失败或索引不完整时返回 503，可用作就绪探针
+     */
+    @GetMapping("/status")
+    public ResponseEntity<Map<String, Object>> getStatus() {
+        Map<String, Object> status = agentRouter.getStatus();
+        AgentRouter.Readiness readiness = agentRouter.getReadiness();
+        boolean ready = readiness == AgentRouter.Readiness.READY || readiness == AgentRouter.Readiness.LOCAL_ONLY;
+        return ResponseEntity.status(ready ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE).body(status);
+    }
+
+    /**
+     * 获取 Embedding 缓存统计信息
+     */
+    @GetMapping("/cache/stats")
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("cache", agentRouter.getCacheStats());
+            response.put("status", "success");
+        } catch (Exception e) {
+            response.put("message", "获取缓存统计信息失败：" + e.getMessage());
+            response.put("status", "error");
+        }
+        return response;
+    }
+
+    /**
+     * 清空 Embedding 缓存
+     */
+    @PostMapping("/cache/clear")
+    public Map<String, Object> clearCache() {
+        Map<String, Object> response = new HashMap<>();
+        agentRouter.clearCache();
+        response.put("status", "success");
+        response.put("message", "缓存已清空");
+        return response;
+    }
+
+    /**
+     * 重新加载 Agent 示例文件并增量更新路由索引
+     */
+    @PostMapping("/reload")
+    public Map<String, Object> reloadExamples() {
+        Map<String, Object> response = new HashMap<>();
+        try {
+            response.put("sync", agentRouter.reloadExamples());
+            response.put("status", "success");
+        } catch (Exception e) {
+            response.put("message", "重新加载 Agent 示例失败：" + e.getMessage());
+            response.put("status", "error");
+        }
+        return response;
+    }
+}
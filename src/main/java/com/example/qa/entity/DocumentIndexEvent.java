@@ -0,0 +1,151 @@
+package com.example.qa.entity;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * 文档索引事件（事务性发件箱）
+ * 与文档的增删改在同一个事务中写入，后台索引器据此增量更新文档片段向量
+ * 处理失败的事件按指数退避在 nextAttemptAt 之后重试，重试次数用尽后标记为死信（deadLetteredAt），
+ * 不再自动重试，但保留在表中并计入索引统计，可手动重新入队
+ */
+@Entity
+@Table(name = "document_index_outbox",
+       indexes = @Index(name = "idx_document_index_outbox_processed", columnList = "processed_at"))
+public class DocumentIndexEvent {
+
+    /**
+     * 文档新增或变更，需要重新切分和向量化
+     */
+    public static final String UPSERT = "UPSERT";
+
+    /**
+     * 文档删除（含软删除），需要删除其片段
+     */
+    public static final String DELETE = "DELETE";
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(name = "operation", nullable = false, length = 10)
+    private String operation;
+
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "dead_lettered_at")
+    private LocalDateTime deadLetteredAt;
+
+    public DocumentIndexEvent() {
+        this.createdAt = LocalDateTime.now();
+    }
+
+    public DocumentIndexEvent(Long documentId, String operation) {
+        this();
+        this.documentId = documentId;
+        this.operation = operation;
+    }
+
+    // Getter和Setter方法
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getDocumentId() {
+        return documentId;
+    }
+
+    public void setDocumentId(Long documentId) {
+        this.documentId = documentId;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public void setOperation(String operation) {
+        this.operation = operation;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(LocalDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public LocalDateTime getProcessedAt() {
+        return processedAt;
+    }
+
+    public void setProcessedAt(LocalDateTime processedAt) {
+        this.processedAt = processedAt;
+    }
+
+    public Integer getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(Integer attempts) {
+        this.attempts = attempts;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+
+    public void setLastError(String lastError) {
+        this.lastError = lastError;
+    }
+
+    public LocalDateTime getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) {
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public LocalDateTime getDeadLetteredAt() {
+        return deadLetteredAt;
+    }
+
+    public void setDeadLetteredAt(LocalDateTime deadLetteredAt) {
+        this.deadLetteredAt = deadLetteredAt;
+    }
+
+    @Override
+    public String toString() {
+        return "DocumentIndexEvent{" +
+                "id=" + id +
+                ", documentId=" + documentId +
+                ", operation='" + operation + '\'' +
+                ", createdAt=" + createdAt +
+                ", processedAt=" + processedAt +
+                ", attempts=" + attempts +
+                ", nextAttemptAt=" + nextAttemptAt +
+                ", deadLetteredAt=" + deadLetteredAt +
+                '}';
+    }
+}
@@ -9,11 +9,14 @@ import reactor.core.publisher.Flux;
 public interface BusinessChainHandler {
 
     /**
-     * 判断是否处理该问题
+     * 判断是否处理该问题，只对不参与 embedding 路由（getAgentCode 返回 null）的处理器调用；
+     * embedding 路由的处理器由 QAController 按路由结果的 Agent Code 直接分发，不需要实现
      * @param question 用户问题
      * @return true 表示可以处理，false 表示不能处理
      */
-    boolean canHandle(String question);
+    default boolean canHandle(String question) {
+        return false;
+    }
 
     /**
      * 流式处理问题
@@ -35,6 +38,15 @@ public interface BusinessChainHandler {
      */
     String getHandlerName();
 
+    /**
+     * 获取处理器对应的 Agent Code（与 AgentRouter 的路由结果对应）
+     * 返回 null 表示该处理器不参与 embedding 路由，由 canHandle 自行判断
+     * @return Agent Code
+     */
+    default String getAgentCode() {
+        return null;
+    }
+
     /**
      * 获取处理器优先级，数值越小优先级越高
      * @return 优先级
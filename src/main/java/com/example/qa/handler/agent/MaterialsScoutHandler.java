@@ -1,11 +1,10 @@
 package com.example.qa.handler.agent;
 
 import com.example.qa.handler.BusinessChainHandler;
-import com.example.qa.router.AgentRouter;
-import com.example.qa.service.MaterialsContextService;
+import com.example.qa.prompt.AssembledPrompt;
+import com.example.qa.prompt.PromptTemplate;
 import com.example.qa.service.OpenAIService;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.example.qa.service.PromptService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import reactor.core.publisher.Flux;
@@ -13,57 +12,32 @@ import reactor.core.publisher.Flux;
 /**
  * 材料问题处理器
  * 处理与材料文档相关的问题
- * 使用 AgentRouter 进行智能路由判断
+ * 由 QAController 按 AgentRouter 的路由结果（Agent Code）分发
  */
 @Component
 public class MaterialsScoutHandler implements BusinessChainHandler {
 
-    private static final Logger logger = LoggerFactory.getLogger(MaterialsScoutHandler.class);
-
-    @Autowired
-    private MaterialsContextService materialsContextService;
+    // 提示词模板：固定的系统说明在前，材料上下文紧随其后，用户问题单独作为最后一条消息
+    private static final PromptTemplate PROMPT_TEMPLATE = new PromptTemplate(
+            "基于以下材料文档内容，请回答用户的问题。\n" +
+            "请根据下面的材料文档内容来回答用户的问题。\n" +
+            "重要提示：如果材料文档中完全没有与用户问题相关的信息，请只返回 \"__SKIP__\"（不要返回任何其他内容）。如果有相关信息，请正常回答。\n\n" +
+            "材料文档内容：\n");
 
     @Autowired
     private OpenAIService openAIService;
 
     @Autowired
-    private AgentRouter agentRouter;
-
-    @Override
-    public boolean canHandle(String question) {
-        try {
-            // 使用 AgentRouter 进行路由，如果返回 material_scout 则处理
-            String agentCode = agentRouter.route(question);
-            boolean canHandle = "material_scout".equals(agentCode);
-            
-            if (canHandle) {
-                logger.debug("MaterialsQuestionHandler 匹配到问题: {}", question);
-            }
-            
-            return canHandle;
-        } catch (Exception e) {
-            logger.error("AgentRouter 路由判断失败，回退到关键词匹配: {}", e.getMessage(), e);
-            // 如果 AgentRouter 失败，回退到原有的关键词匹配逻辑
-            String lowerQuestion = question.toLowerCase();
-            return lowerQuestion.contains("材料") || lowerQuestion.contains("materials");
-        }
-    }
+    private PromptService promptService;
 
     @Override
     public Flux<String> handleStream(String question) {
         try {
-            // 获取所有文档作为上下文
-            String context = materialsContextService.getAllDocumentsAsContext();
-            
-            // 构建包含上下文的问题
-            String contextualQuestion = "基于以下材料文档内容，请回答用户的问题：\n\n" +
-                                      "材料文档内容：\n" + context + "\n\n" +
-                                      "用户问题：" + question + "\n\n" +
-                                      "请根据上述材料文档内容来回答用户的问题。\n" +
-                                      "重要提示：如果材料文档中完全没有与用户问题相关的信息，请只返回 \"__SKIP__\"（不要返回任何其他内容）。如果有相关信息，请正常回答。";
-
-            // 使用OpenAI服务进行问答
-            return openAIService.streamChat(contextualQuestion)
+            // 按 token 预算组装包含相关文档片段的提示词
+            return promptService.buildPrompt(question, getAgentCode(), PROMPT_TEMPLATE)
+                    // 使用OpenAI服务进行问答
+                    .flatMapMany(prompt -> openAIService.streamChat(prompt.getSystemMessage(), prompt.getUserMessage(),
+                            prompt.getCompletionTokens()))
                     .map(content -> {
                         if (content == null || content.trim().isEmpty()) {
                             return "";
@@ -84,18 +58,11 @@ public class MaterialsScoutHandler implements BusinessChainHandler {
     @Override
     public String handleSync(String question) {
         try {
-            // 获取所有文档作为上下文
-            String context = materialsContextService.getAllDocumentsAsContext();
-            
-            // 构建包含上下文的问题
-            String contextualQuestion = "基于以下材料文档内容，请回答用户的问题：\n\n" +
-                                      "材料文档内容：\n" + context + "\n\n" +
-                                      "用户问题：" + question + "\n\n" +
-                                      "请根据上述材料文档内容来回答用户的问题。\n" +
-                                      "重要提示：如果材料文档中完全没有与用户问题相关的信息，请只返回 \"__SKIP__\"（不要返回任何其他内容）。如果有相关信息，请正常回答。";
+            // 按 token 预算组装包含相关文档片段的提示词
+            AssembledPrompt prompt = promptService.buildPrompt(question, getAgentCode(), PROMPT_TEMPLATE).block();
 
             // 使用OpenAI服务进行问答
-            return openAIService.chat(contextualQuestion);
+            return openAIService.chat(prompt.getSystemMessage(), prompt.getUserMessage(), prompt.getCompletionTokens());
 
         } catch (Exception e) {
             return "处理材料问题时出现错误：" + e.getMessage();
@@ -107,6 +74,11 @@ public class MaterialsScoutHandler implements BusinessChainHandler {
         return "material_scout";
     }
 
+    @Override
+    public String getAgentCode() {
+        return "material_scout";
+    }
+
     @Override
     public int getPriority() {
         return 20; // 材料问题优先级中等
@@ -0,0 +1,72 @@
+package com.example.qa.prompt;
+
+/**
+ * 组装好的提示词及其 token 估计
+ */
+public class AssembledPrompt {
+
+    private final String systemMessage;
+    private final String userMessage;
+    private final int promptTokens;
+    private final int completionTokens;
+    private final int includedChunks;
+    private final int droppedChunks;
+    private final boolean truncated;
+
+    public AssembledPrompt(String systemMessage, String userMessage, int promptTokens, int completionTokens,
+                           int includedChunks, int droppedChunks, boolean truncated) {
+        this.systemMessage = systemMessage;
+        this.userMessage = userMessage;
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.includedChunks = includedChunks;
+        this.droppedChunks = droppedChunks;
+        this.truncated = truncated;
+    }
+
+    /**
+     * 系统消息：固定的系统说明 + 材料上下文
+     */
+    public String getSystemMessage() {
+        return systemMessage;
+    }
+
+    /**
+     * 用户消息：用户问题
+     */
+    public String getUserMessage() {
+        return userMessage;
+    }
+
+    /**
+     * 提示词的 token 数（含消息格式开销）
+     */
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    /**
+     * 回答最多可用的 token 数，作为请求的 max_tokens
+     */
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public int getIncludedChunks() {
+        return includedChunks;
+    }
+
+    /**
+     * 因预算不足被丢弃的片段数
+     */
+    public int getDroppedChunks() {
+        return droppedChunks;
+    }
+
+    /**
+     * 唯一入选的片段是否被截断
+     */
+    public boolean isTruncated() {
+        return truncated;
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.qa.prompt;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 字节级 BPE 分词器（与 tiktoken 的 cl100k_base 编码一致）
+ *
+ * 词表为 tiktoken 格式：每行一个 "base64(字节序列) 编号"，编号同时是合并优先级（越小越先合并）。
+ * 文本先按 cl100k 的正则切成预分词片段，每个片段的 UTF-8 字节再按优先级反复合并相邻的字节对。
+ * 不处理 <|endoftext|> 等特殊 token，它们按普通文本计数。
+ *
+ * 词表加载后只读，线程安全。
+ */
+public class BpeTokenizer {
+
+    // cl100k_base 的预分词正则
+    static final Pattern CL100K_PATTERN = Pattern.compile(
+            "(?i:'s|'t|'re|'ve|'m|'ll|'d)|[^\\r\\n\\p{L}\\p{N}]?\\p{L}+|\\p{N}{1,3}"
+                    + "| ?[^\\s\\p{L}\\p{N}]+[\\r\\n]*|\\s*[\\r\\n]+|\\s+(?!\\S)|\\s+",
+            Pattern.UNICODE_CHARACTER_CLASS);
+
+    // 字节序列 -> 编号；字节序列以 ISO-8859-1 字符串表示（每个字符对应一个字节），便于做哈希键和截取
+    private final Map<String, Integer> ranks;
+    private final Pattern pattern;
+
+    public BpeTokenizer(Map<String, Integer> ranks) {
+        this(ranks, CL100K_PATTERN);
+    }
+
+    BpeTokenizer(Map<String, Integer> ranks, Pattern pattern) {
+        this.ranks = ranks;
+        this.pattern = pattern;
+    }
+
+    /**
+     * 读取 tiktoken 格式的词表
+     */
+    public static BpeTokenizer load(InputStream in) throws IOException {
+        Map<String, Integer> ranks = new HashMap<>(131072);
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int space = line.indexOf(' ');
+                if (space <= 0) {
+                    continue;
+                }
+                byte[] bytes = Base64.getDecoder().decode(line.substring(0, space));
+                ranks.put(new String(bytes, StandardCharsets.ISO_8859_1),
+                        Integer.parseInt(line.substring(space + 1).trim()));
+            }
+        }
+        if (ranks.isEmpty()) {
+            throw new IOException("BPE 词表为空");
+        }
+        return new BpeTokenizer(ranks);
+    }
+
+    /**
+     * 编码为 token 编号
+     */
+    public List<Integer> encode(String text) {
+        List<Integer> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = toBytes(matcher.group());
+            Integer rank = ranks.get(piece);
+            if (rank != null) {
+                tokens.add(rank);
+                continue;
+            }
+            for (String part : merge(piece)) {
+                Integer id = ranks.get(part);
+                // 词表包含全部单字节时不会出现未知片段；不完整的词表按 0 占位，只影响编号不影响计数
+                tokens.add(id != null ? id : 0);
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * token 数（不构建编号列表）
+     */
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        int count = 0;
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) {
+            String piece = toBytes(matcher.group());
+            count += ranks.containsKey(piece) ? 1 : merge(piece).size();
+        }
+        return count;
+    }
+
+    public int vocabularySize() {
+        return ranks.size();
+    }
+
+    /**
+     * 对一个预分词片段做 BPE 合并：每次合并优先级最高（编号最小、同编号取最左）的相邻字节对，直到没有可合并的对
+     *
+     * 一段连续的中文是一个片段，逐轮扫描所有相邻对是 O(n²)；这里用链表维护当前的片段边界，
+     * 候选对按 (编号, 位置) 放入小顶堆，每次合并只更新两侧的两个相邻对，过期的候选在出堆时丢弃，总体 O(n log n)
+     */
+    private List<String> merge(String piece) {
+        int n = piece.length();
+        // next[i]：起点为 i 的片段之后的下一个片段起点；merged[i]：位置 i 已并入左侧的片段
+        int[] next = new int[n];
+        int[] prev = new int[n];
+        boolean[] merged = new boolean[n];
+        for (int i = 0; i < n; i++) {
+            next[i] = i + 1;
+            prev[i] = i - 1;
+        }
+        // 候选对编码为 (编号 << 32) | 左侧片段起点，按数值排序即先编号后位置
+        PriorityQueue<Long> candidates = new PriorityQueue<>();
+        for (int i = 0; i + 1 < n; i++) {
+            offer(candidates, piece, i, i + 2);
+        }
+        while (!candidates.isEmpty()) {
+            long candidate = candidates.poll();
+            int rank = (int) (candidate >>> 32);
+            int left = (int) candidate;
+            if (merged[left] || next[left] >= n) {
+                continue;
+            }
+            int end = next[next[left]];
+            Integer current = ranks.get(piece.substring(left, end));
+            if (current == null || current != rank) {
+                // 左侧或右侧片段已经变化，候选对过期
+                continue;
+            }
+            merged[next[left]] = true;
+            next[left] = end;
+            if (end < n) {
+                prev[end] = left;
+                offer(candidates, piece, left, next[end]);
+            }
+            if (prev[left] >= 0) {
+                offer(candidates, piece, prev[left], end);
+            }
+        }
+
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < n; i = next[i]) {
+            parts.add(piece.substring(i, next[i]));
+        }
+        return parts;
+    }
+
+    private void offer(PriorityQueue<Long> candidates, String piece, int start, int end) {
+        Integer rank = ranks.get(piece.substring(start, end));
+        if (rank != null) {
+            candidates.add(((long) rank << 32) | start);
+        }
+    }
+
+    private static String toBytes(String text) {
+        return new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.qa.prompt;
+
+/**
+ * 提示词中的一段上下文（通常是一个文档片段或一个完整文档）
+ * 放入提示词的文本为 header + content + 空行，header 包含标题、分类等说明
+ */
+public class ContextChunk {
+
+    private final long documentId;
+    private final int chunkIndex;
+    private final String title;
+    private final String header;
+    private final String content;
+    private final double score;
+
+    /**
+     * @param chunkIndex 片段在文档中的序号（完整文档为 0）
+     * @param score 与问题的相关度，预算不足时先去掉相关度最低的片段
+     */
+    public ContextChunk(long documentId, int chunkIndex, String title, String header, String content, double score) {
+        this.documentId = documentId;
+        this.chunkIndex = chunkIndex;
+        this.title = title;
+        this.header = header;
+        this.content = content;
+        this.score = score;
+    }
+
+    /**
+     * 替换正文（如压缩后），其余信息不变
+     */
+    public ContextChunk withContent(String content) {
+        return new ContextChunk(documentId, chunkIndex, title, header, content, score);
+    }
+
+    public long getDocumentId() {
+        return documentId;
+    }
+
+    public int getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getHeader() {
+        return header;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    /**
+     * 放入提示词的完整文本
+     */
+    public String getText() {
+        return header + content + "\n\n";
+    }
+
+    public double getScore() {
+        return score;
+    }
+}
@@ -0,0 +1,278 @@
+package com.example.qa.prompt;
+
+import com.example.qa.retrieval.TextChunker;
+import com.example.qa.router.LocalNgramEmbedder;
+import com.example.qa.router.SimHash;
+import com.example.qa.router.TextNormalizer;
+import com.example.vector.VectorMath;
+
+import java.util.*;
+
+/**
+ * 上下文压缩（抽取式句子选择）
+ *
+ * 位于检索与提示词组装之间：把各片段正文切成句子，按与问题的相关度给每个句子打分，
+ * 去掉与已选句子近似重复的句子，再按分数从高到低选句子直到用完 token 预算。
+ * 入选句子在各自片段内保持原顺序，不连续的句子之间用省略号隔开；没有句子入选的片段整体去掉。
+ *
+ * 句子得分 = lexicalWeight * 问题词覆盖率 + embeddingWeight * 向量相似度 + retrievalWeight * 片段检索得分。
+ * 问题词覆盖率为问题的中文二字组和英文/数字整词在句子中出现的比例；
+ * 向量相似度使用以本次候选句子为语料拟合 idf 的 LocalNgramEmbedder，不调用远程接口。
+ * 近似重复用 SimHash 判断：汉明距离不超过 duplicateDistance 的句子只保留得分最高的一个。
+ *
+ * 正文本身不超过预算时只去重、不丢弃句子。实例无状态，线程安全。
+ */
+public class ContextCompressor {
+
+    private static final int EMBEDDING_DIMENSION = 256;
+
+    // 去掉标点和空白后短于该长度的句子 SimHash 特征太少，只判断完全相同
+    private static final int MIN_SIMHASH_LENGTH = 8;
+
+    private static final String ELLIPSIS = "……";
+
+    private final TokenCounter counter;
+    private final TextChunker splitter;
+    private final double lexicalWeight;
+    private final double embeddingWeight;
+    private final double retrievalWeight;
+    private final int duplicateDistance;
+
+    public ContextCompressor(TokenCounter counter, double lexicalWeight, double embeddingWeight,
+                             double retrievalWeight, int duplicateDistance) {
+        this.counter = counter;
+        // 只用来切句子，超长句子按 1000 字硬切分
+        this.splitter = new TextChunker(1000);
+        this.lexicalWeight = lexicalWeight;
+        this.embeddingWeight = embeddingWeight;
+        this.retrievalWeight = retrievalWeight;
+        this.duplicateDistance = duplicateDistance;
+    }
+
+    /**
+     * @param maxTokens 压缩后正文的 token 上限（不含片段标题等说明）
+     */
+    public Result compress(String question, List<ContextChunk> chunks, int maxTokens) {
+        List<Candidate> candidates = new ArrayList<>();
+        int inputTokens = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            List<String> sentences = splitter.splitSentences(chunks.get(c).getContent());
+            for (int s = 0; s < sentences.size(); s++) {
+                Candidate candidate = new Candidate(c, s, sentences.get(s), counter.count(sentences.get(s)));
+                inputTokens += candidate.tokens;
+                candidates.add(candidate);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return new Result(chunks, 0, 0, 0, 0);
+        }
+
+        boolean overBudget = inputTokens > maxTokens;
+        if (overBudget) {
+            score(question, chunks, candidates);
+        }
+        // 按得分降序（不超预算时保持原顺序），先出现的句子在去重时保留
+        List<Candidate> ranked = new ArrayList<>(candidates);
+        if (overBudget) {
+            ranked.sort((a, b) -> Double.compare(b.score, a.score));
+        }
+
+        Set<String> seenTexts = new HashSet<>();
+        List<Long> seenFingerprints = new ArrayList<>();
+        int outputTokens = 0;
+        int duplicates = 0;
+        for (Candidate candidate : ranked) {
+            // 放不下的长句子跳过，继续尝试后面较短的句子
+            if (outputTokens + candidate.tokens > maxTokens) {
+                continue;
+            }
+            if (isDuplicate(compact(candidate.text), seenTexts, seenFingerprints)) {
+                duplicates++;
+                continue;
+            }
+            candidate.selected = true;
+            outputTokens += candidate.tokens;
+        }
+
+        return new Result(rebuild(chunks, candidates), inputTokens, outputTokens, candidates.size(), duplicates);
+    }
+
+    private void score(String question, List<ContextChunk> chunks, List<Candidate> candidates) {
+        Set<String> questionTerms = terms(question);
+        List<String> corpus = new ArrayList<>(candidates.size() + 1);
+        for (Candidate candidate : candidates) {
+            corpus.add(candidate.text);
+        }
+        corpus.add(question);
+        LocalNgramEmbedder embedder = LocalNgramEmbedder.fit(corpus, EMBEDDING_DIMENSION);
+        float[] questionVector = embedder.embed(question);
+
+        for (Candidate candidate : candidates) {
+            double lexical = 0;
+            if (!questionTerms.isEmpty()) {
+                Set<String> sentenceTerms = terms(candidate.text);
+                int matched = 0;
+                for (String term : questionTerms) {
+                    if (sentenceTerms.contains(term)) {
+                        matched++;
+                    }
+                }
+                lexical = (double) matched / questionTerms.size();
+            }
+            double similarity = Math.max(0, VectorMath.dot(questionVector, embedder.embed(candidate.text)));
+            candidate.score = lexicalWeight * lexical + embeddingWeight * similarity
+                    + retrievalWeight * chunks.get(candidate.chunk).getScore();
+        }
+    }
+
+    // 与已选句子相同或近似重复；不重复时记录该句子
+    private boolean isDuplicate(String compact, Set<String> seenTexts, List<Long> seenFingerprints) {
+        if (!seenTexts.add(compact)) {
+            return true;
+        }
+        if (compact.length() < MIN_SIMHASH_LENGTH) {
+            return false;
+        }
+        long fingerprint = SimHash.fingerprint(compact);
+        for (long seen : seenFingerprints) {
+            if (SimHash.distance(fingerprint, seen) <= duplicateDistance) {
+                return true;
+            }
+        }
+        seenFingerprints.add(fingerprint);
+        return false;
+    }
+
+    // 入选句子按原顺序拼回各自的片段
+    private static List<ContextChunk> rebuild(List<ContextChunk> chunks, List<Candidate> candidates) {
+        List<ContextChunk> compressed = new ArrayList<>();
+        int index = 0;
+        for (int c = 0; c < chunks.size(); c++) {
+            StringBuilder content = new StringBuilder();
+            int previous = -1;
+            for (; index < candidates.size() && candidates.get(index).chunk == c; index++) {
+                Candidate candidate = candidates.get(index);
+                if (!candidate.selected) {
+                    continue;
+                }
+                if (previous >= 0) {
+                    if (candidate.sentence != previous + 1) {
+                        content.append(ELLIPSIS);
+                    } else if (needsSpace(content, candidate.text)) {
+                        content.append(' ');
+                    }
+                }
+                content.append(candidate.text);
+                previous = candidate.sentence;
+            }
+            if (content.length() > 0) {
+                compressed.add(chunks.get(c).withContent(content.toString()));
+            }
+        }
+        return compressed;
+    }
+
+    // 英文句子之间补一个空格
+    private static boolean needsSpace(StringBuilder content, String next) {
+        return content.charAt(content.length() - 1) < 128 && next.charAt(0) < 128;
+    }
+
+    /**
+     * 文本中的检索词：中文按相邻两字，英文和数字按整词（小写）
+     */
+    static Set<String> terms(String text) {
+        String normalized = TextNormalizer.normalize(text).toLowerCase(Locale.ROOT);
+        Set<String> terms = new HashSet<>();
+        int i = 0;
+        while (i < normalized.length()) {
+            char c = normalized.charAt(i);
+            if (c < 128 && Character.isLetterOrDigit(c)) {
+                int end = i;
+                while (end < normalized.length() && normalized.charAt(end) < 128
+                        && Character.isLetterOrDigit(normalized.charAt(end))) {
+                    end++;
+                }
+                terms.add(normalized.substring(i, end));
+                i = end;
+            } else if (Character.isLetter(c)) {
+                if (i + 1 < normalized.length() && normalized.charAt(i + 1) >= 128
+                        && Character.isLetter(normalized.charAt(i + 1))) {
+                    terms.add(normalized.substring(i, i + 2));
+                }
+                i++;
+            } else {
+                i++;
+            }
+        }
+        return terms;
+    }
+
+    private static String compact(String text) {
+        return TextNormalizer.normalize(text).replaceAll("[^\\p{L}\\p{N}]+", "").toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Candidate {
+        final int chunk;
+        final int sentence;
+        final String text;
+        final int tokens;
+        double score;
+        boolean selected;
+
+        Candidate(int chunk, int sentence, String text, int tokens) {
+            this.chunk = chunk;
+            this.sentence = sentence;
+            this.text = text;
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * 压缩结果
+     */
+    public static class Result {
+        private final List<ContextChunk> chunks;
+        private final int inputTokens;
+        private final int outputTokens;
+        private final int sentences;
+        private final int duplicates;
+
+        Result(List<ContextChunk> chunks, int inputTokens, int outputTokens, int sentences, int duplicates) {
+            this.chunks = chunks;
+            this.inputTokens = inputTokens;
+            this.outputTokens = outputTokens;
+            this.sentences = sentences;
+            this.duplicates = duplicates;
+        }
+
+        public List<ContextChunk> getChunks() {
+            return chunks;
+        }
+
+        public int getInputTokens() {
+            return inputTokens;
+        }
+
+        public int getOutputTokens() {
+            return outputTokens;
+        }
+
+        public int getSentences() {
+            return sentences;
+        }
+
+        /**
+         * 因近似重复被去掉的句子数
+         */
+        public int getDuplicates() {
+            return duplicates;
+        }
+
+        /**
+         * 压缩比：压缩后 / 压缩前的正文 token 数，没有正文时为 1
+         */
+        public double getRatio() {
+            return inputTokens == 0 ? 1.0 : (double) outputTokens / inputTokens;
+        }
+    }
+}
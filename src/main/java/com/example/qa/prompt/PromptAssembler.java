@@ -0,0 +1,121 @@
+package com.example.qa.prompt;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 按 token 预算组装提示词
+ *
+ * 提示词由系统消息（固定的系统说明 + 材料上下文）和用户消息（用户问题）组成。
+ * 系统说明和用户消息必须完整保留；上下文片段按相关度从高到低依次放入，放不下时丢弃剩下的（即相关度最低的）片段。
+ * 一个片段都放不下时截断相关度最高的片段，保证上下文不为空。
+ * 入选片段按文档 id、片段序号排序输出，同一组片段总是得到相同的上下文文本，便于服务商缓存提示词前缀。
+ *
+ * 预算 = 模型上下文窗口 - 预留的回答 token 数 - 消息格式开销；
+ * 回答的 token 估计为预留数与窗口剩余空间中的较小值，可直接作为请求的 max_tokens。
+ */
+public class PromptAssembler {
+
+    // chat 消息格式本身的开销（角色标记、分隔符等）
+    static final int MESSAGE_OVERHEAD = 8;
+
+    // 截断片段时至少保留的 token 数，剩余预算更少时不截断
+    static final int MIN_TRUNCATED_TOKENS = 32;
+
+    static final String CONTEXT_HEADER = "以下是数据库中与问题相关的材料文档，可以作为回答问题的参考：\n\n";
+    static final String EMPTY_CONTEXT = "当前数据库中没有与问题相关的材料文档。";
+
+    private final TokenCounter counter;
+
+    public PromptAssembler(TokenCounter counter) {
+        this.counter = counter;
+    }
+
+    // 上下文中片段的输出顺序
+    static final Comparator<ContextChunk> CONTEXT_ORDER = Comparator.comparingLong(ContextChunk::getDocumentId)
+            .thenComparingInt(ContextChunk::getChunkIndex);
+
+    /**
+     * @param systemPreamble 系统消息中上下文之前的固定说明
+     * @param userMessage 用户消息
+     * @param contextWindow 模型的上下文窗口（token 数）
+     * @param maxCompletionTokens 为回答预留的 token 数
+     */
+    public AssembledPrompt assemble(String systemPreamble, List<ContextChunk> chunks, String userMessage,
+                                    int contextWindow, int maxCompletionTokens) {
+        int budget = contextWindow - maxCompletionTokens - MESSAGE_OVERHEAD;
+        int fixed = counter.count(systemPreamble) + counter.count(userMessage);
+
+        List<Integer> order = new ArrayList<>(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            order.add(i);
+        }
+        // 稳定排序：相关度相同时保持原顺序，靠后的先被丢弃
+        order.sort(Comparator.comparingDouble((Integer i) -> chunks.get(i).getScore()).reversed());
+
+        boolean[] selected = new boolean[chunks.size()];
+        int headerTokens = counter.count(CONTEXT_HEADER);
+        int used = fixed + headerTokens;
+        int included = 0;
+        for (int i : order) {
+            int tokens = counter.count(chunks.get(i).getText());
+            if (used + tokens > budget) {
+                break;
+            }
+            selected[i] = true;
+            used += tokens;
+            included++;
+        }
+
+        StringBuilder context = new StringBuilder();
+        boolean truncated = false;
+        if (included > 0) {
+            List<ContextChunk> ordered = new ArrayList<>(included);
+            for (int i = 0; i < chunks.size(); i++) {
+                if (selected[i]) {
+                    ordered.add(chunks.get(i));
+                }
+            }
+            ordered.sort(CONTEXT_ORDER);
+            context.append(CONTEXT_HEADER);
+            for (ContextChunk chunk : ordered) {
+                context.append(chunk.getText());
+            }
+        } else if (!chunks.isEmpty() && budget - used >= MIN_TRUNCATED_TOKENS) {
+            String text = truncate(chunks.get(order.get(0)).getText(), budget - used);
+            context.append(CONTEXT_HEADER).append(text);
+            used += counter.countUncached(text);
+            truncated = true;
+            included = 1;
+        } else {
+            context.append(EMPTY_CONTEXT);
+            used = fixed + counter.count(EMPTY_CONTEXT);
+        }
+
+        int promptTokens = used + MESSAGE_OVERHEAD;
+        int completionTokens = Math.max(0, Math.min(maxCompletionTokens, contextWindow - promptTokens));
+        return new AssembledPrompt(systemPreamble + context, userMessage, promptTokens, completionTokens,
+                included, chunks.size() - included, truncated);
+    }
+
+    /**
+     * 截取不超过 maxTokens 的最长前缀（按字符二分）
+     */
+    private String truncate(String text, int maxTokens) {
+        int low = 0;
+        int high = text.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (counter.countUncached(text.substring(0, mid)) <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (low > 0 && low < text.length() && Character.isHighSurrogate(text.charAt(low - 1))) {
+            low--;
+        }
+        return text.substring(0, low);
+    }
+}
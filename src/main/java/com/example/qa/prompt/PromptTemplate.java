@@ -0,0 +1,29 @@
+package com.example.qa.prompt;
+
+/**
+ * 处理器的提示词模板
+ *
+ * 提示词按变化频率从低到高排列，便于模型服务商缓存相同的前缀：
+ * 系统消息 = 固定的系统说明（角色、回答要求）+ 材料上下文（按文档 id、片段序号排序），
+ * 用户消息 = 用户问题，放在最后。
+ * 系统说明中不能出现问题、时间等每次请求都不同的内容。
+ */
+public class PromptTemplate {
+
+    private final String systemPreamble;
+
+    /**
+     * @param systemPreamble 固定的系统说明，其后直接接材料上下文
+     */
+    public PromptTemplate(String systemPreamble) {
+        this.systemPreamble = systemPreamble;
+    }
+
+    public String getSystemPreamble() {
+        return systemPreamble;
+    }
+
+    public String userMessage(String question) {
+        return "用户问题：" + question;
+    }
+}
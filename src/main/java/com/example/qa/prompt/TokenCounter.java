@@ -0,0 +1,115 @@
+package com.example.qa.prompt;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * token 计数器（带缓存）
+ *
+ * 有词表时用 BpeTokenizer 精确计数；没有词表时按字符粗略估算：
+ * ASCII 约 4 个字符一个 token，其它字符（主要是中文）按 UTF-8 字节数的一半计，与 cl100k 对中文的实际结果相比略偏多。
+ * 文档片段、提示词模板等文本会反复出现，计数结果按文本缓存，条目数超过上限时按最近最少使用淘汰。
+ */
+public class TokenCounter {
+
+    private final BpeTokenizer tokenizer;
+    private final int maxEntries;
+
+    // 按访问顺序排列，用于 LRU 淘汰
+    private final LinkedHashMap<String, Integer> cache;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param tokenizer BPE 分词器，为 null 时使用估算
+     * @param maxEntries 缓存的最大条目数，<= 0 表示不缓存
+     */
+    public TokenCounter(BpeTokenizer tokenizer, int maxEntries) {
+        this.tokenizer = tokenizer;
+        this.maxEntries = maxEntries;
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > TokenCounter.this.maxEntries;
+            }
+        };
+    }
+
+    public int count(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        if (maxEntries <= 0) {
+            return compute(text);
+        }
+        synchronized (cache) {
+            Integer cached = cache.get(text);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        int count = compute(text);
+        synchronized (cache) {
+            cache.put(text, count);
+        }
+        return count;
+    }
+
+    /**
+     * 计数但不读写缓存，用于不会再次出现的文本（如截断过程中的中间结果）
+     */
+    public int countUncached(String text) {
+        return text == null || text.isEmpty() ? 0 : compute(text);
+    }
+
+    /**
+     * 是否使用 BPE 精确计数
+     */
+    public boolean isExact() {
+        return tokenizer != null;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private int compute(String text) {
+        return tokenizer != null ? tokenizer.count(text) : estimate(text);
+    }
+
+    /**
+     * 不依赖词表的粗略估算
+     */
+    static int estimate(String text) {
+        int ascii = 0;
+        int otherBytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                ascii++;
+            } else if (c < 0x800) {
+                otherBytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                otherBytes += 4;
+                i++;
+            } else {
+                otherBytes += 3;
+            }
+        }
+        return (ascii + 3) / 4 + (otherBytes + 1) / 2;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.qa.repository;
+
+import com.example.qa.entity.DocumentIndexEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * 文档索引事件数据访问层
+ */
+@Repository
+public interface DocumentIndexEventRepository extends JpaRepository<DocumentIndexEvent, Long> {
+
+    /**
+     * 按写入顺序获取已到重试时间的待处理事件（不含死信）
+     */
+    @Query("SELECT e FROM DocumentIndexEvent e WHERE e.processedAt IS NULL AND e.deadLetteredAt IS NULL " +
+           "AND (e.nextAttemptAt IS NULL OR e.nextAttemptAt <= :now) ORDER BY e.id ASC")
+    List<DocumentIndexEvent> findDueEvents(@Param("now") LocalDateTime now, Pageable pageable);
+
+    /**
+     * 下一个等待重试的事件（按重试时间），用于安排下一次轮询
+     */
+    Optional<DocumentIndexEvent> findFirstByProcessedAtIsNullAndDeadLetteredAtIsNullOrderByNextAttemptAtAsc();
+
+    /**
+     * 待处理事件数（积压量，含等待重试的事件，不含死信）
+     */
+    long countByProcessedAtIsNullAndDeadLetteredAtIsNull();
+
+    /**
+     * 最早的待处理事件，用于计算索引延迟
+     */
+    Optional<DocumentIndexEvent> findFirstByProcessedAtIsNullAndDeadLetteredAtIsNullOrderByIdAsc();
+
+    /**
+     * 死信事件数
+     */
+    long countByProcessedAtIsNullAndDeadLetteredAtIsNotNull();
+
+    /**
+     * 最近的死信事件
+     */
+    List<DocumentIndexEvent> findTop10ByProcessedAtIsNullAndDeadLetteredAtIsNotNullOrderByIdDesc();
+
+    /**
+     * 将死信事件重新入队，清零重试次数并立即重试
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE DocumentIndexEvent e SET e.deadLetteredAt = NULL, e.nextAttemptAt = NULL, e.attempts = 0 " +
+           "WHERE e.processedAt IS NULL AND e.deadLetteredAt IS NOT NULL")
+    int requeueDeadLetters();
+
+    /**
+     * 清理早于指定时间处理完成的事件
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM DocumentIndexEvent e WHERE e.processedAt < :before")
+    int deleteProcessedBefore(@Param("before") LocalDateTime before);
+}
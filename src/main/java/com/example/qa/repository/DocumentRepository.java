@@ -4,6 +4,7 @@ import com.example.qa.entity.Document;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -94,12 +95,14 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     /**
      * 软删除：将文档标记为非活跃状态
      */
+    @Modifying(clearAutomatically = true)
     @Query("UPDATE Document d SET d.isActive = false, d.updatedAt = :updatedAt WHERE d.id = :id")
     int softDeleteById(@Param("id") Long id, @Param("updatedAt") LocalDateTime updatedAt);
     
     /**
      * 恢复软删除的文档
      */
+    @Modifying(clearAutomatically = true)
     @Query("UPDATE Document d SET d.isActive = true, d.updatedAt = :updatedAt WHERE d.id = :id")
     int restoreById(@Param("id") Long id, @Param("updatedAt") LocalDateTime updatedAt);
 }
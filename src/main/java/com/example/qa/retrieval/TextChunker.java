@@ -0,0 +1,160 @@
+package com.example.qa.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 文档切分器（按句子切分，适配中文）
+ *
+ * 先按句末标点（。！？；!?; 以及后跟空白的英文句点）和换行把文本切成句子，句末的右引号、右括号归入前一句；
+ * 再把相邻句子合并到不超过 maxChars 的片段中。相邻片段之间保留不超过 overlapChars 的重叠：
+ * 新片段以上一个片段末尾的若干完整句子开头，避免答案恰好被切在两个片段之间。
+ * 单句超过 maxChars 时按 maxChars 硬切分。
+ */
+public class TextChunker {
+
+    private static final String SENTENCE_END = "。！？；!?;";
+    private static final String CLOSING = "”’」』）)】\"'";
+
+    private final int maxChars;
+    private final int overlapChars;
+
+    public TextChunker(int maxChars) {
+        this(maxChars, 0);
+    }
+
+    public TextChunker(int maxChars, int overlapChars) {
+        this.maxChars = Math.max(1, maxChars);
+        this.overlapChars = Math.max(0, Math.min(overlapChars, this.maxChars / 2));
+    }
+
+    public List<String> split(String text) {
+        List<String> chunks = new ArrayList<>();
+        if (text == null) {
+            return chunks;
+        }
+
+        List<Sentence> current = new ArrayList<>();
+        int length = 0;
+        for (Sentence sentence : sentenceList(text)) {
+            if (!current.isEmpty() && length + sentence.length() > maxChars) {
+                chunks.add(join(current));
+                current = overlap(current);
+                length = totalLength(current);
+                // 重叠部分加上新句子仍然超长时放弃重叠
+                if (length + sentence.length() > maxChars) {
+                    current.clear();
+                    length = 0;
+                }
+            }
+            current.add(sentence);
+            length += sentence.length();
+        }
+        if (!current.isEmpty()) {
+            chunks.add(join(current));
+        }
+        return chunks;
+    }
+
+    /**
+     * 只切分句子，不合并为片段；超长句子按 maxChars 硬切分为多段
+     */
+    public List<String> splitSentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        if (text == null) {
+            return sentences;
+        }
+        for (Sentence sentence : sentenceList(text)) {
+            sentences.add(sentence.text);
+        }
+        return sentences;
+    }
+
+    /**
+     * 切分句子；超长句子按 maxChars 硬切分为多段
+     */
+    private List<Sentence> sentenceList(String text) {
+        List<Sentence> sentences = new ArrayList<>();
+        for (String line : text.split("\\r?\\n")) {
+            String paragraph = line.trim();
+            int start = 0;
+            int i = 0;
+            while (i < paragraph.length()) {
+                char c = paragraph.charAt(i++);
+                boolean end = SENTENCE_END.indexOf(c) >= 0
+                        || (c == '.' && (i == paragraph.length() || Character.isWhitespace(paragraph.charAt(i))));
+                if (end) {
+                    while (i < paragraph.length() && CLOSING.indexOf(paragraph.charAt(i)) >= 0) {
+                        i++;
+                    }
+                    addSentence(sentences, paragraph.substring(start, i).trim());
+                    start = i;
+                }
+            }
+            addSentence(sentences, paragraph.substring(start).trim());
+            if (!paragraph.isEmpty()) {
+                sentences.get(sentences.size() - 1).paragraphEnd = true;
+            }
+        }
+        return sentences;
+    }
+
+    private void addSentence(List<Sentence> sentences, String text) {
+        while (text.length() > maxChars) {
+            sentences.add(new Sentence(text.substring(0, maxChars)));
+            text = text.substring(maxChars);
+        }
+        if (!text.isEmpty()) {
+            sentences.add(new Sentence(text));
+        }
+    }
+
+    // 上一个片段末尾总长不超过 overlapChars 的完整句子
+    private List<Sentence> overlap(List<Sentence> previous) {
+        List<Sentence> tail = new ArrayList<>();
+        int length = 0;
+        for (int i = previous.size() - 1; i > 0; i--) {
+            Sentence sentence = previous.get(i);
+            if (length + sentence.length() > overlapChars) {
+                break;
+            }
+            tail.add(0, sentence);
+            length += sentence.length();
+        }
+        return tail;
+    }
+
+    private static int totalLength(List<Sentence> sentences) {
+        int length = 0;
+        for (Sentence sentence : sentences) {
+            length += sentence.length();
+        }
+        return length;
+    }
+
+    // 同一段落内的句子直接拼接，段落之间换行
+    private static String join(List<Sentence> sentences) {
+        StringBuilder sb = new StringBuilder();
+        for (Sentence sentence : sentences) {
+            sb.append(sentence.text);
+            if (sentence.paragraphEnd) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    private static final class Sentence {
+        final String text;
+        boolean paragraphEnd;
+
+        Sentence(String text) {
+            this.text = text;
+        }
+
+        // 段落结尾的换行也计入长度
+        int length() {
+            return text.length() + (paragraphEnd ? 1 : 0);
+        }
+    }
+}
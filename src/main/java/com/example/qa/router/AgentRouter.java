@@ -1,24 +1,37 @@
 package com.example.qa.router;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.BufferedReader;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.http.HttpHeaders;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.JsonNode;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import com.example.vector.EmbeddingSnapshot;
 import com.example.vector.LocalVectorStore;
+import com.example.vector.PersistentEmbeddingCache;
 import com.example.vector.LocalVectorStore.Item;
 import com.example.vector.LocalVectorStore.Result;
 import java.sql.SQLException;
@@ -31,11 +44,21 @@ import java.sql.SQLException;
  * - 支持多 Agent 示例集合的相似度计算
  * - 使用向量数据库存储和查询
  * - 缓存机制减少 API 调用
+ * - 示例文件变更时增量同步向量库（仅向量化新增示例），无需重启
+ * - 本地 n-gram Embedding 模型，可作为主路由模型或 API 不可用时的后备
+ * - 关键词快速路由：关键词信号明确时直接返回，不调用 Embedding
+ * - 路由结果缓存：近似重复的问题（SimHash 汉明距离足够小）直接复用之前的路由结果
+ * - 后台预热：启动时不等待示例向量化，预热期间使用关键词/本地模型路由，完成后切换到语义路由
+ * - 构建时生成的示例向量快照：模型和示例一致时直接复用，启动无需调用 embeddings 接口
+ * - 多标签路由（可选）：返回所有达到阈值且与第一名接近的 Agent，由多个处理器共同回答
  * - 异常处理和日志记录
  *
  * 使用示例：
  *   String agent = agentRouter.route("帮我分析一下这个文档内容");
  *   System.out.println(agent);
+ *
+ *   RoutingDecision decision = agentRouter.routeDecision("帮我分析一下这个文档内容");
+ *   System.out.println(decision.getAgentCode() + " " + decision.getScore());
  */
 
 @Component
@@ -48,77 +71,186 @@ public class AgentRouter {
     @Value("${openai.base-url}")
     private String baseUrl;
 
-    private static final String EMBEDDING_MODEL = "text-embedding-3-small";
+    // 路由模式：knn（逐条示例比较）或 prototype（先比较 Agent 原型）
+    @Value("${agent-router.mode:knn}")
+    private String routingMode;
+    // 每个 Agent 的原型数量，1 表示只使用质心
+    @Value("${agent-router.prototypes-per-agent:1}")
+    private int prototypesPerAgent;
+    // 原型模式下前两名 Agent 的分差小于该值时回退到示例级 kNN
+    @Value("${agent-router.prototype-margin:0.05}")
+    private double prototypeMargin;
+
+    // Embedding 缓存字节预算（默认 32MB）与存活时间
+    @Value("${agent-router.cache.max-bytes:33554432}")
+    private long cacheMaxBytes;
+    @Value("${agent-router.cache.ttl-seconds:86400}")
+    private long cacheTtlSeconds;
+
+    // 持久化 Embedding 缓存，重启后仍可命中
+    @Value("${agent-router.disk-cache.enabled:true}")
+    private boolean diskCacheEnabled;
+    @Value("${agent-router.disk-cache.path:embedding_cache.db}")
+    private String diskCachePath;
+    @Value("${agent-router.disk-cache.max-entries:100000}")
+    private long diskCacheMaxEntries;
+    // 文档片段等批量文本的向量单独存放并单独限量，不挤占问题与示例的向量
+    @Value("${agent-router.disk-cache.chunk-path:chunk_embedding_cache.db}")
+    private String chunkCachePath;
+    @Value("${agent-router.disk-cache.chunk-max-entries:200000}")
+    private long chunkCacheMaxEntries;
+
+    // 初始化时批量调用 Embedding API 的批大小与并发批数
+    @Value("${agent-router.init.batch-size:64}")
+    private int initBatchSize;
+    @Value("${agent-router.init.concurrency:4}")
+    private int initConcurrency;
+
+    // 并发 embedding 请求的合并窗口（毫秒，0 表示不合并）与单批上限
+    @Value("${agent-router.batching.window-ms:5}")
+    private long batchingWindowMs;
+    @Value("${agent-router.batching.max-batch-size:32}")
+    private int batchingMaxBatchSize;
+
+    // 向量检索与磁盘缓存读取使用的线程数上限
+    @Value("${agent-router.search.threads:4}")
+    private int searchThreads;
+
+    // 示例文件配置：为空时读取 classpath 中的 agent_examples.txt；
+    // 指定外部文件路径且开启 watch 时，文件变更后自动重新加载
+    @Value("${agent-router.examples-path:}")
+    private String examplesPath;
+    @Value("${agent-router.examples-watch:true}")
+    private boolean examplesWatch;
+
+    // 本地 Embedding 配置：embedder=local 时只使用本地模型路由；
+    // embedder=openai 时在 API 失败或未配置时回退到本地模型（local.fallback=true）
+    @Value("${agent-router.embedder:openai}")
+    private String embedderMode;
+    @Value("${agent-router.local.fallback:true}")
+    private boolean localFallback;
+    @Value("${agent-router.local.dimension:512}")
+    private int localDimension;
+    @Value("${agent-router.local.threshold:0.25}")
+    private double localThreshold;
+
+    // 关键词快速路由配置（关键词文件格式同示例文件，每行可在关键词后跟权重，默认 1.0）
+    @Value("${agent-router.lexical.enabled:true}")
+    private boolean lexicalEnabled;
+    @Value("${agent-router.lexical.min-score:1.0}")
+    private double lexicalMinScore;
+    @Value("${agent-router.lexical.dominance:0.8}")
+    private double lexicalDominance;
+
+    // 多标签路由配置：启用后返回所有达到阈值、且与第一名分差不超过 margin 的 Agent（最多 max-agents 个）
+    @Value("${agent-router.multi-label.enabled:false}")
+    private boolean multiLabelEnabled;
+    @Value("${agent-router.multi-label.max-agents:3}")
+    private int multiLabelMaxAgents;
+    @Value("${agent-router.multi-label.margin:0.08}")
+    private double multiLabelMargin;
+
+    // 示例向量数据库文件，以及构建时生成的示例向量快照位置（不存在时所有示例都调用 embeddings 接口）
+    @Value("${agent-router.vector-db-path:agent_embeddings.db}")
+    private String vectorDbPath;
+    @Value("${agent-router.snapshot-location:classpath:" + SNAPSHOT_RESOURCE + "}")
+    private Resource snapshotLocation;
+
+    // 是否在后台线程中预热向量索引（false 时在启动阶段同步完成）
+    @Value("${agent-router.warmup.async:true}")
+    private boolean asyncWarmup;
+
+    // 路由结果缓存配置
+    @Value("${agent-router.decision-cache.enabled:true}")
+    private boolean decisionCacheEnabled;
+    @Value("${agent-router.decision-cache.max-distance:" + RoutingDecisionCache.DEFAULT_MAX_DISTANCE + "}")
+    private int decisionCacheMaxDistance;
+    @Value("${agent-router.decision-cache.max-entries:10000}")
+    private int decisionCacheMaxEntries;
+    @Value("${agent-router.decision-cache.ttl-seconds:3600}")
+    private long decisionCacheTtlSeconds;
+
+    public static final String EMBEDDING_MODEL = "text-embedding-3-small";
+    // 构建时生成的示例向量快照（见 EmbeddingSnapshotBuilder）
+    static final String SNAPSHOT_RESOURCE = "agent_embeddings.snapshot";
     private static final double THRESHOLD = 0.50; // 置信度阈值
-    private static final String VECTOR_DB_PATH = "agent_embeddings.db";
 
     // WebClient for HTTP requests (延迟初始化)
     private WebClient webClient;
+
+    // Embedding 客户端，合并并发请求
+    private EmbeddingClient embeddingClient;
     
-    // 缓存机制
-    private final Map<String, double[]> embeddingCache;
-    
-    // Jackson ObjectMapper
-    private final ObjectMapper objectMapper;
+    // 缓存机制（有界分段 LRU，键为归一化后的文本），在 init 中按 agent-router.cache.* 配置创建
+    private EmbeddingCache embeddingCache;
+
+    // 磁盘缓存（内存缓存未命中时查询）
+    private PersistentEmbeddingCache diskCache;
+
+    // 批量文本（embedBatch）的磁盘缓存
+    private PersistentEmbeddingCache chunkCache;
+
+    // 进行中的 embedding 请求（键为归一化文本），用于合并相同文本的并发请求
+    private final ConcurrentHashMap<String, CompletableFuture<float[]>> inFlight = new ConcurrentHashMap<>();
+    // 被合并（未单独发起调用）的请求数
+    private final AtomicLong coalescedRequests = new AtomicLong();
+
+    // 有界调度器：向量检索等阻塞/CPU 密集操作不占用事件循环线程
+    private Scheduler searchScheduler = Schedulers.boundedElastic();
     
-    // 向量数据库
-    private LocalVectorStore vectorStore;
+    // 向量数据库（由预热线程打开）
+    private volatile LocalVectorStore vectorStore;
+
+    // Agent 原型索引（仅 prototype 模式下构建）
+    private volatile PrototypeIndex prototypeIndex;
+
+    // 本地模型及其示例向量集合（内存数据库），重新加载时整体替换
+    private volatile LocalIndex localIndex;
+    private final AtomicLong localRoutes = new AtomicLong();
+
+    // 关键词路由器，重新加载时整体替换
+    private volatile LexicalRouter lexicalRouter;
+    private final AtomicLong lexicalRoutes = new AtomicLong();
+    private final AtomicLong lexicalAmbiguous = new AtomicLong();
+    private final AtomicLong embeddingRoutes = new AtomicLong();
+
+    // 路由结果缓存，未启用时为 null
+    private RoutingDecisionCache decisionCache;
+
+    /**
+     * 路由器就绪状态
+     * WARMING_UP：语义索引构建中；READY：语义路由可用；
+     * PARTIAL：部分示例向量化失败，语义路由使用不完整的索引，重新加载示例可重试；
+     * LOCAL_ONLY：只使用本地模型路由（配置如此或未配置 API Key）；FAILED：语义索引构建失败
+     */
+    public enum Readiness { WARMING_UP, READY, PARTIAL, LOCAL_ONLY, FAILED }
+
+    private volatile Readiness readiness = Readiness.WARMING_UP;
+    private volatile String warmupError;
+    private volatile long warmupMillis = -1;
+    private Thread warmupThread;
+
+    // 快照中的示例向量（(agent, 示例) 哈希 -> 向量），没有可用快照时为空
+    private volatile Map<String, float[]> snapshotVectors = Collections.emptyMap();
     
-    // Agent 到示例的映射（用于初始化）
-    private Map<String, List<String>> AGENT_EXAMPLES;
+    // Agent 到示例的映射（重新加载时整体替换）
+    private volatile Map<String, List<String>> AGENT_EXAMPLES;
+
+    // 示例文件监听线程
+    private WatchService examplesWatcher;
 
     /**
-     * 从配置文件读取 Agent 示例
-     * 文件格式：agent_code 后跟多行示例，agent 之间用空行分隔
+     * 从配置文件读取 Agent 示例，读取失败或为空时使用默认配置
      */
     private Map<String, List<String>> createAgentExamples() {
-        Map<String, List<String>> examples = new HashMap<>();
+        Map<String, List<String>> examples;
         
         try {
-            ClassPathResource resource = new ClassPathResource("agent_examples.txt");
-            
-            if (!resource.exists()) {
-                logger.warn("agent_examples.txt 文件不存在，使用默认配置");
-                return getDefaultExamples();
-            }
-            
-            try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
-                
-                String currentAgent = null;
-                List<String> currentExamples = new ArrayList<>();
-                String line;
-                
-                while ((line = reader.readLine()) != null) {
-                    line = line.trim();
-                    
-                    // 空行表示一个 agent 的结束，保存当前 agent
-                    if (line.isEmpty()) {
-                        if (currentAgent != null && !currentExamples.isEmpty()) {
-                            examples.put(currentAgent, new ArrayList<>(currentExamples));
-                            currentExamples.clear();
-                            currentAgent = null;
-                        }
-                        continue;
-                    }
-                    
-                    // 如果当前没有 agent，说明这是新的 agent code
-                    if (currentAgent == null) {
-                        currentAgent = line;
-                    } else {
-                        // 否则这是示例内容
-                        currentExamples.add(line);
-                    }
-                }
-                
-                // 处理文件末尾的 agent（没有空行结尾的情况）
-                if (currentAgent != null && !currentExamples.isEmpty()) {
-                    examples.put(currentAgent, new ArrayList<>(currentExamples));
-                }
-            }
-            
+            examples = readAgentExamples();
             logger.info("成功从配置文件加载 {} 个 Agent 的示例", examples.size());
-            
+        } catch (FileNotFoundException e) {
+            logger.warn("{}，使用默认配置", e.getMessage());
+            return getDefaultExamples();
         } catch (Exception e) {
             logger.error("读取 agent_examples.txt 配置文件失败: {}", e.getMessage(), e);
             logger.warn("使用默认 Agent 示例配置");
@@ -131,9 +263,115 @@ public class AgentRouter {
             return getDefaultExamples();
         }
         
+        return examples;
+    }
+
+    /**
+     * 解析示例文件
+     * 文件格式：agent_code 后跟多行示例，agent 之间用空行分隔
+     */
+    private Map<String, List<String>> readAgentExamples() throws IOException {
+        Resource resource = (examplesPath == null || examplesPath.trim().isEmpty())
+                ? new ClassPathResource("agent_examples.txt")
+                : new FileSystemResource(examplesPath.trim());
+        if (!resource.exists()) {
+            throw new FileNotFoundException(resource.getDescription() + " 不存在");
+        }
+
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            return parseExamples(reader);
+        }
+    }
+
+    /**
+     * 按示例文件格式解析（构建时生成向量快照也使用此方法）
+     */
+    static Map<String, List<String>> parseExamples(BufferedReader reader) throws IOException {
+        Map<String, List<String>> examples = new LinkedHashMap<>();
+        String currentAgent = null;
+        List<String> currentExamples = new ArrayList<>();
+        String line;
+        
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            
+            // 空行表示一个 agent 的结束，保存当前 agent
+            if (line.isEmpty()) {
+                if (currentAgent != null && !currentExamples.isEmpty()) {
+                    examples.put(currentAgent, new ArrayList<>(currentExamples));
+                    currentExamples.clear();
+                    currentAgent = null;
+                }
+                continue;
+            }
+            
+            // 如果当前没有 agent，说明这是新的 agent code
+            if (currentAgent == null) {
+                currentAgent = line;
+            } else {
+                // 否则这是示例内容
+                currentExamples.add(line);
+            }
+        }
+        
+        // 处理文件末尾的 agent（没有空行结尾的情况）
+        if (currentAgent != null && !currentExamples.isEmpty()) {
+            examples.put(currentAgent, new ArrayList<>(currentExamples));
+        }
         return Collections.unmodifiableMap(examples);
     }
     
+    /**
+     * 读取 agent_keywords.txt 并构建关键词路由器
+     * 文件格式与示例文件相同：agent_code 后跟多行关键词，每行可用空格分隔附加权重
+     */
+    private void loadLexicalRouter() {
+        ClassPathResource resource = new ClassPathResource("agent_keywords.txt");
+        if (!resource.exists()) {
+            logger.warn("agent_keywords.txt 文件不存在，关键词路由未启用");
+            return;
+        }
+
+        Map<String, Map<String, Double>> keywords = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(resource.getInputStream(), StandardCharsets.UTF_8))) {
+            String currentAgent = null;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    currentAgent = null;
+                    continue;
+                }
+                if (currentAgent == null) {
+                    currentAgent = line;
+                    continue;
+                }
+
+                String keyword = line;
+                double weight = 1.0;
+                int space = line.lastIndexOf(' ');
+                if (space > 0) {
+                    try {
+                        weight = Double.parseDouble(line.substring(space + 1));
+                        keyword = line.substring(0, space).trim();
+                    } catch (NumberFormatException e) {
+                        // 最后一段不是数字，整行都是关键词
+                    }
+                }
+                keywords.computeIfAbsent(currentAgent, k -> new LinkedHashMap<>()).put(keyword, weight);
+            }
+        } catch (IOException e) {
+            logger.error("读取 agent_keywords.txt 失败: {}", e.getMessage(), e);
+            return;
+        }
+
+        LexicalRouter router = LexicalRouter.build(keywords, lexicalMinScore, lexicalDominance);
+        this.lexicalRouter = router;
+        logger.info("构建关键词路由完成: {} 个 Agent, {} 个关键词", keywords.size(), router.getKeywordCount());
+    }
+    
     /**
      * 获取默认的 Agent 示例（作为后备方案）
      */
@@ -147,85 +385,427 @@ public class AgentRouter {
         return Collections.unmodifiableMap(examples);
     }
 
-    public AgentRouter() {
-        this.embeddingCache = new ConcurrentHashMap<>();
-        this.objectMapper = new ObjectMapper();
-    }
-
     @PostConstruct
     public void init() {
+        this.searchScheduler = Schedulers.newBoundedElastic(
+                Math.max(1, searchThreads), Schedulers.DEFAULT_BOUNDED_ELASTIC_QUEUESIZE, "agent-router-search");
+        this.embeddingCache = new EmbeddingCache(cacheMaxBytes, cacheTtlSeconds * 1000);
+        if (decisionCacheEnabled) {
+            this.decisionCache = new RoutingDecisionCache(decisionCacheMaxDistance,
+                    decisionCacheMaxEntries, decisionCacheTtlSeconds * 1000);
+        }
+        if (diskCacheEnabled) {
+            try {
+                this.diskCache = new PersistentEmbeddingCache(diskCachePath, diskCacheMaxEntries);
+                this.chunkCache = new PersistentEmbeddingCache(chunkCachePath, chunkCacheMaxEntries);
+            } catch (SQLException e) {
+                logger.error("初始化持久化 Embedding 缓存失败，仅使用内存缓存: {}", e.getMessage(), e);
+            }
+        }
+
         // 首先加载 Agent 示例配置
         this.AGENT_EXAMPLES = createAgentExamples();
+        if (isLocalPrimary() || localFallback) {
+            buildLocalIndex(AGENT_EXAMPLES);
+        }
+        if (lexicalEnabled) {
+            loadLexicalRouter();
+        }
 
         this.webClient = WebClient.builder()
                 .baseUrl(baseUrl)
                 .defaultHeader(HttpHeaders.CONTENT_TYPE, "application/json")
                 .build();
+        this.embeddingClient = new EmbeddingClient(webClient, apiKey, EMBEDDING_MODEL,
+                batchingWindowMs, batchingMaxBatchSize);
         
-        if (apiKey == null || apiKey.trim().isEmpty()) {
-            logger.warn("OpenAI API Key 未配置，AgentRouter 可能无法正常工作");
-            return;
+        if (isLocalPrimary()) {
+            logger.info("使用本地 Embedding 模型路由，跳过 OpenAI 向量数据库初始化");
+            this.readiness = Readiness.LOCAL_ONLY;
+        } else if (apiKey == null || apiKey.trim().isEmpty()) {
+            logger.warn("OpenAI API Key 未配置，{}", localFallback
+                    ? "仅使用本地 Embedding 模型路由" : "AgentRouter 可能无法正常工作");
+            this.warmupError = "OpenAI API Key 未配置";
+            this.readiness = localIndex != null ? Readiness.LOCAL_ONLY : Readiness.FAILED;
+        } else if (asyncWarmup) {
+            // 在后台构建语义索引，应用无需等待即可启动
+            this.warmupThread = new Thread(this::warmUp, "agent-router-warmup");
+            warmupThread.setDaemon(true);
+            warmupThread.start();
+        } else {
+            warmUp();
         }
-        
-        // 初始化向量数据库
+
+        if (examplesWatch && examplesPath != null && !examplesPath.trim().isEmpty()) {
+            startExamplesWatcher(Paths.get(examplesPath.trim()).toAbsolutePath());
+        }
+    }
+
+    /**
+     * 打开向量数据库并与示例同步，完成后切换到语义路由
+     * 预热期间的请求由关键词路由、本地模型或 fallback 处理
+     */
+    private void warmUp() {
+        long start = System.currentTimeMillis();
+        logger.info("开始预热语义路由索引...");
         try {
-            this.vectorStore = new LocalVectorStore(VECTOR_DB_PATH);
-            
-            if (!hasDataInVectorStore()) {
-                logger.info("初始化向量数据库，插入 Agent 示例...");
-                initializeVectorStore();
+            this.snapshotVectors = loadSnapshot();
+            this.vectorStore = new LocalVectorStore(vectorDbPath);
+            Map<String, Object> summary = syncVectorStore(AGENT_EXAMPLES);
+            this.warmupMillis = System.currentTimeMillis() - start;
+            // 预热期间由本地模型得出的路由结果不再缓存复用
+            if (decisionCache != null) {
+                decisionCache.clear();
             }
-            
+            updateReadiness(summary);
+            logger.info("语义路由索引预热完成，耗时 {} ms，状态 {}", warmupMillis, readiness);
         } catch (Exception e) {
+            this.warmupError = e.getMessage();
+            this.readiness = Readiness.FAILED;
             logger.error("初始化向量数据库失败: {}", e.getMessage(), e);
         }
     }
-    
+
+    public Readiness getReadiness() {
+        return readiness;
+    }
+
+    /**
+     * 根据示例同步结果更新就绪状态：全部示例都已向量化时才是 READY；
+     * 有失败时索引不完整（PARTIAL），一条示例都没有时视为失败
+     */
+    private void updateReadiness(Map<String, Object> summary) {
+        int failed = (Integer) summary.get("failed");
+        if (failed == 0) {
+            this.warmupError = null;
+            this.readiness = Readiness.READY;
+            return;
+        }
+        int indexed = (Integer) summary.get("added") + (Integer) summary.get("unchanged");
+        this.warmupError = failed + " 条示例向量化失败，可重新加载示例重试";
+        this.readiness = indexed > 0 ? Readiness.PARTIAL : Readiness.FAILED;
+        logger.warn("语义路由索引不完整: {}", warmupError);
+    }
+
+    /**
+     * 加载构建时生成的向量快照（默认在 classpath 中），模型不一致或不存在时返回空
+     */
+    private Map<String, float[]> loadSnapshot() {
+        Resource resource = snapshotLocation;
+        if (resource == null || !resource.exists()) {
+            return Collections.emptyMap();
+        }
+        try (InputStream in = resource.getInputStream()) {
+            EmbeddingSnapshot snapshot = EmbeddingSnapshot.read(in);
+            if (!EMBEDDING_MODEL.equals(snapshot.getModel())) {
+                logger.warn("向量快照模型 {} 与当前模型 {} 不一致，忽略快照", snapshot.getModel(), EMBEDDING_MODEL);
+                return Collections.emptyMap();
+            }
+            boolean exact = snapshot.getExamplesHash().equals(EmbeddingSnapshot.examplesHash(AGENT_EXAMPLES));
+            logger.info("加载向量快照: {} 条示例{}", snapshot.getItems().size(),
+                    exact ? "，与当前示例完全一致" : "，与当前示例不完全一致，仅复用相同的示例");
+            return snapshot.byContentHash();
+        } catch (IOException e) {
+            logger.warn("读取向量快照失败: {}", e.getMessage());
+            return Collections.emptyMap();
+        }
+    }
+
+    /**
+     * 语义路由是否可用（索引不完整时仍使用已向量化的示例）
+     */
+    public boolean isSemanticReady() {
+        return readiness == Readiness.READY || readiness == Readiness.PARTIAL;
+    }
+
+    /**
+     * 获取路由器状态
+     */
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("readiness", readiness.name());
+        status.put("semanticReady", isSemanticReady());
+        status.put("embedder", embedderMode);
+        status.put("routingMode", routingMode);
+        status.put("lexicalRouter", lexicalRouter != null);
+        status.put("localIndex", localIndex != null);
+        status.put("agents", getAvailableAgents().size());
+        if (warmupMillis >= 0) {
+            status.put("warmupMillis", warmupMillis);
+        }
+        if (warmupError != null) {
+            status.put("error", warmupError);
+        }
+        return status;
+    }
+
     /**
-     * 检查向量数据库是否已有数据
+     * 重新读取示例文件并增量同步向量库
+     * 文件不存在或为空时保留当前索引不变
+     *
+     * @return 同步结果（新增、删除、未变化的示例数）
      */
-    private boolean hasDataInVectorStore() {
-        if (vectorStore == null) {
-            return false;
+    public Map<String, Object> reloadExamples() throws Exception {
+        if (vectorStore == null && localIndex == null) {
+            throw new IllegalStateException("向量数据库未初始化");
+        }
+        Map<String, List<String>> examples = readAgentExamples();
+        if (examples.isEmpty()) {
+            throw new IllegalStateException("示例文件为空或格式错误，保留当前索引");
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        if (lexicalEnabled) {
+            loadLexicalRouter();
+        }
+        if (localIndex != null) {
+            summary.put("localExamples", buildLocalIndex(examples));
         }
+        if (vectorStore != null) {
+            summary.putAll(syncVectorStore(examples));
+            // 预热失败（如 API 暂时不可用）后可通过重新加载恢复语义路由；预热中的状态由预热线程更新
+            if (readiness != Readiness.WARMING_UP) {
+                updateReadiness(summary);
+            }
+        } else {
+            this.AGENT_EXAMPLES = examples;
+        }
+        // 示例变化后之前的路由结果不再可靠
+        if (decisionCache != null) {
+            decisionCache.clear();
+        }
+        return summary;
+    }
+
+    private boolean isLocalPrimary() {
+        return "local".equalsIgnoreCase(embedderMode);
+    }
+
+    /**
+     * 用示例语料训练本地模型并构建其向量集合，完成后整体替换当前本地索引
+     *
+     * @return 本地索引中的示例数
+     */
+    private synchronized int buildLocalIndex(Map<String, List<String>> examples) {
+        long start = System.nanoTime();
+        List<String> corpus = new ArrayList<>();
+        List<Item> items = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : examples.entrySet()) {
+            corpus.addAll(entry.getValue());
+        }
+        LocalNgramEmbedder embedder = LocalNgramEmbedder.fit(corpus, localDimension);
+        for (Map.Entry<String, List<String>> entry : examples.entrySet()) {
+            for (String example : entry.getValue()) {
+                items.add(new Item(example, entry.getKey(), embedder.embed(example)));
+            }
+        }
+
         try {
-            return vectorStore.hasData();
+            LocalVectorStore store = new LocalVectorStore(":memory:");
+            store.insertBatch(items);
+            LocalIndex previous = this.localIndex;
+            this.localIndex = new LocalIndex(embedder, store);
+            // 先替换再退役旧索引，旧索引在进行中的查询结束后关闭
+            if (previous != null) {
+                previous.retire();
+            }
         } catch (SQLException e) {
-            logger.error("检查向量数据库数据失败: {}", e.getMessage(), e);
-            return false;
+            logger.error("构建本地 Embedding 索引失败: {}", e.getMessage(), e);
+            return 0;
         }
+        logger.info("构建本地 Embedding 索引完成: {} 条示例, 模型 {}, 耗时 {} ms",
+                items.size(), embedder.getName(), (System.nanoTime() - start) / 1_000_000);
+        return items.size();
     }
-    
+
     /**
-     * 初始化向量数据库，插入所有 Agent 示例
+     * 将向量库与示例集合对齐：按 (agent, 示例) 哈希比对，
+     * 只向量化新增示例、删除已移除的示例，在一个事务中提交后替换内存快照和原型索引。
+     * 同步期间的查询继续使用旧索引。
      */
-    private void initializeVectorStore() throws Exception {
-        List<Item> items = new ArrayList<>();
-        
-        // 遍历所有 Agent 示例并生成 embeddings
-        for (Map.Entry<String, List<String>> entry : AGENT_EXAMPLES.entrySet()) {
-            String agentCode = entry.getKey();
-            List<String> examples = entry.getValue();
-            
-            for (String example : examples) {
-                // 获取 embedding
-                double[] embeddingDouble = getEmbedding(example);
-                // 转换为 float[]
-                float[] embeddingFloat = new float[embeddingDouble.length];
-                for (int i = 0; i < embeddingDouble.length; i++) {
-                    embeddingFloat[i] = (float) embeddingDouble[i];
+    private synchronized Map<String, Object> syncVectorStore(Map<String, List<String>> examples) throws Exception {
+        Map<String, Item> desired = new LinkedHashMap<>();
+        for (Map.Entry<String, List<String>> entry : examples.entrySet()) {
+            for (String example : entry.getValue()) {
+                desired.putIfAbsent(LocalVectorStore.hashOf(entry.getKey(), example),
+                        new Item(example, entry.getKey(), null));
+            }
+        }
+
+        // 已存在的哈希保留第一条，其余（已移除的示例或重复行）删除
+        Set<String> stored = new HashSet<>();
+        List<Integer> toDelete = new ArrayList<>();
+        for (Map.Entry<Integer, String> row : vectorStore.listHashes().entrySet()) {
+            if (desired.containsKey(row.getValue()) && stored.add(row.getValue())) {
+                continue;
+            }
+            toDelete.add(row.getKey());
+        }
+        List<Item> toAdd = new ArrayList<>();
+        for (Map.Entry<String, Item> entry : desired.entrySet()) {
+            if (!stored.contains(entry.getKey())) {
+                toAdd.add(entry.getValue());
+            }
+        }
+
+        // 快照中已有的示例直接复用向量，其余的调用 embeddings 接口
+        List<Item> embedded = new ArrayList<>();
+        List<Item> remaining = new ArrayList<>();
+        Map<String, float[]> snapshot = snapshotVectors;
+        for (Item item : toAdd) {
+            float[] vector = snapshot.get(LocalVectorStore.hashOf(item.agentCode, item.content));
+            if (vector != null) {
+                cacheEmbedding(TextNormalizer.normalize(item.content), vector);
+                embedded.add(new Item(item.content, item.agentCode, vector));
+            } else {
+                remaining.add(item);
+            }
+        }
+        int fromSnapshot = embedded.size();
+        if (!remaining.isEmpty()) {
+            embedded.addAll(embedAll(remaining));
+        }
+        boolean changed = !embedded.isEmpty() || !toDelete.isEmpty();
+        if (changed) {
+            vectorStore.applyChanges(embedded, toDelete);
+        }
+        if ("prototype".equalsIgnoreCase(routingMode) && (changed || prototypeIndex == null)) {
+            buildPrototypeIndex();
+        }
+        this.AGENT_EXAMPLES = examples;
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("added", embedded.size());
+        summary.put("fromSnapshot", fromSnapshot);
+        summary.put("removed", toDelete.size());
+        summary.put("unchanged", stored.size());
+        summary.put("failed", toAdd.size() - embedded.size());
+        logger.info("Agent 示例同步完成: {}", summary);
+        return summary;
+    }
+
+    /**
+     * 监听示例文件所在目录，文件变更后稍作等待（合并编辑器的多次写入）再重新加载
+     */
+    private void startExamplesWatcher(Path file) {
+        Path dir = file.getParent();
+        try {
+            this.examplesWatcher = FileSystems.getDefault().newWatchService();
+            dir.register(examplesWatcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("监听示例文件失败: {}", e.getMessage(), e);
+            return;
+        }
+
+        Thread watcher = new Thread(() -> {
+            while (true) {
+                try {
+                    WatchKey key = examplesWatcher.take();
+                    boolean touched = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (file.getFileName().equals(event.context())) {
+                            touched = true;
+                        }
+                    }
+                    key.reset();
+                    if (!touched) {
+                        continue;
+                    }
+                    Thread.sleep(500);
+                    WatchKey more;
+                    while ((more = examplesWatcher.poll()) != null) {
+                        more.pollEvents();
+                        more.reset();
+                    }
+                    logger.info("检测到示例文件变更，重新加载: {}", file);
+                    reloadExamples();
+                } catch (InterruptedException | ClosedWatchServiceException e) {
+                    return;
+                } catch (Exception e) {
+                    logger.error("重新加载示例文件失败: {}", e.getMessage(), e);
                 }
-                
-                // 存储示例内容，agent_code 单独存储
-                items.add(new Item(example, agentCode, embeddingFloat));
             }
+        }, "agent-examples-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.info("开始监听示例文件: {}", file);
+    }
+    
+    /**
+     * 向量化一组示例
+     * 示例按批发送（embeddings 接口的数组 input），最多 initConcurrency 个批次并发；
+     * 某个批次失败时逐条重试该批次的示例，仍失败的示例不返回
+     */
+    private List<Item> embedAll(List<Item> pending) {
+
+        List<List<Item>> batches = new ArrayList<>();
+        int batchSize = Math.max(1, initBatchSize);
+        for (int i = 0; i < pending.size(); i += batchSize) {
+            batches.add(pending.subList(i, Math.min(i + batchSize, pending.size())));
         }
-        
-        // 批量插入
-        if (!items.isEmpty()) {
-            vectorStore.insertBatch(items);
-            logger.info("成功插入 {} 条 Agent 示例", items.size());
+
+        int total = pending.size();
+        AtomicInteger done = new AtomicInteger();
+        long start = System.currentTimeMillis();
+
+        List<Item> items = Flux.fromIterable(batches)
+                .flatMap(batch -> embedItems(batch)
+                        .doOnNext(embedded -> logger.info("Agent 示例向量化进度: {}/{}",
+                                done.addAndGet(embedded.size()), total)),
+                        Math.max(1, initConcurrency))
+                .flatMapIterable(embedded -> embedded)
+                .collectList()
+                .block();
+
+        if (items == null) {
+            items = Collections.emptyList();
+        }
+        logger.info("向量化 {} 条 Agent 示例（{} 个批次，耗时 {} ms）",
+                items.size(), batches.size(), System.currentTimeMillis() - start);
+        if (items.size() < total) {
+            logger.warn("{} 条 Agent 示例向量化失败，已跳过", total - items.size());
+        }
+        return items;
+    }
+
+    /**
+     * 向量化一个批次的示例，批量请求失败时逐条重试，逐条仍失败的示例被丢弃
+     */
+    private Mono<List<Item>> embedItems(List<Item> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Item item : batch) {
+            texts.add(TextNormalizer.normalize(item.content));
         }
+        return embeddingClient.embedBatch(texts)
+                .map(vectors -> {
+                    List<Item> embedded = new ArrayList<>(batch.size());
+                    for (int i = 0; i < batch.size(); i++) {
+                        cacheEmbedding(texts.get(i), vectors.get(i));
+                        embedded.add(new Item(batch.get(i).content, batch.get(i).agentCode, vectors.get(i)));
+                    }
+                    return embedded;
+                })
+                .onErrorResume(e -> {
+                    logger.warn("批量向量化失败，逐条重试 {} 条示例: {}", batch.size(), e.getMessage());
+                    return Flux.fromIterable(batch)
+                            .concatMap(item -> embed(item.content)
+                                    .map(vector -> new Item(item.content, item.agentCode, vector))
+                                    .onErrorResume(single -> {
+                                        logger.error("示例向量化失败: {} - {}", item.content, single.getMessage());
+                                        return Mono.empty();
+                                    }))
+                            .collectList();
+                });
+    }
+
+    /**
+     * 根据向量数据库中的示例构建 Agent 原型索引
+     */
+    private void buildPrototypeIndex() throws SQLException {
+        PrototypeIndex index = PrototypeIndex.build(vectorStore.listAll(), prototypesPerAgent, 42L);
+        this.prototypeIndex = index;
+        logger.info("构建原型索引完成: {} 个 Agent, {} 个原型", index.getAgentCount(), index.getPrototypeCount());
     }
 
     /**
@@ -235,120 +815,454 @@ public class AgentRouter {
      * @return 最匹配的 Agent Code，如果置信度低于阈值则返回 fallback_agent
      */
     public String route(String userQuery) {
+        return routeDecision(userQuery).getAgentCode();
+    }
+
+    /**
+     * 根据用户问题计算完整的路由结果（Agent Code、置信度、top-K 近邻）
+     * 每个请求应只调用一次，结果在各处理器之间共享
+     * 阻塞版本，仅为 routeAsync 的薄封装，不能在事件循环线程中调用
+     * 
+     * @param userQuery 用户查询
+     * @return 路由结果，置信度低于阈值或出错时返回 fallback
+     */
+    public RoutingDecision routeDecision(String userQuery) {
+        return routeAsync(userQuery).block();
+    }
+
+    /**
+     * 非阻塞路由：embedding 通过 WebClient 异步获取，向量检索在有界调度器上执行
+     * 
+     * @param userQuery 用户查询
+     * @return 路由结果，置信度低于阈值或出错时返回 fallback
+     */
+    public Mono<RoutingDecision> routeAsync(String userQuery) {
+        return route(userQuery, true);
+    }
+
+    /**
+     * 预取路由：与 routeAsync 走同一条路径（关键词、路由决策缓存、向量检索），
+     * 结果同样写入路由决策缓存和内存 embedding 缓存；但计算出的向量不写入磁盘缓存，
+     * 输入过程中的半截问题不会挤占持久化缓存
+     */
+    public Mono<RoutingDecision> prefetchRoute(String userQuery) {
+        return route(userQuery, false);
+    }
+
+    /**
+     * @param persistent 新计算的向量是否写入磁盘缓存
+     */
+    private Mono<RoutingDecision> route(String userQuery, boolean persistent) {
         if (userQuery == null || userQuery.trim().isEmpty()) {
-            return "fallback_agent";
+            return Mono.just(RoutingDecision.fallback());
         }
 
-        try {
-            // 检查向量数据库是否可用
-            if (vectorStore == null) {
-                logger.error("向量数据库未初始化");
-                return "fallback_agent";
+        // 关键词信号明确时直接返回，不需要计算 Embedding
+        LexicalRouter lexical = lexicalRouter;
+        if (lexical != null) {
+            RoutingDecision decision = lexical.route(userQuery);
+            if (decision != null) {
+                lexicalRoutes.incrementAndGet();
+                logger.info("关键词匹配到 Agent: {} (置信度: {})",
+                        decision.getAgentCode(), String.format("%.2f", decision.getScore()));
+                return Mono.just(decision);
             }
-            
-            // 获取用户查询的 embedding
-            double[] queryVecDouble = getEmbedding(userQuery);
-            // 转换为 float[]
-            float[] queryVec = new float[queryVecDouble.length];
-            for (int i = 0; i < queryVecDouble.length; i++) {
-                queryVec[i] = (float) queryVecDouble[i];
+            lexicalAmbiguous.incrementAndGet();
+        }
+
+        // 近似重复的问题直接复用缓存的路由结果，跳过 Embedding 和向量检索
+        RoutingDecisionCache cache = decisionCache;
+        long fingerprint = cache != null ? SimHash.fingerprint(userQuery) : 0L;
+        if (cache != null) {
+            RoutingDecision cached = cache.get(fingerprint);
+            if (cached != null) {
+                return Mono.just(cached);
             }
-            
-            // 从向量数据库查询最相似的示例 (查询 top 5)
-            List<Result> results = vectorStore.queryTopK(queryVec, 5);
-            
-            if (results.isEmpty()) {
-                return "fallback_agent";
+        }
+
+        if (isLocalPrimary()) {
+            return routeLocally(userQuery).doOnNext(decision -> cacheDecision(fingerprint, decision));
+        }
+
+        // 语义索引尚未就绪（预热中或失败）时使用本地模型
+        if (!isSemanticReady()) {
+            if (localIndex != null) {
+                return routeLocally(userQuery).doOnNext(decision -> cacheDecision(fingerprint, decision));
             }
-            
-            // 获取相似度最高的结果
-            Result topResult = results.get(0);
-            double bestScore = topResult.sim;
-            
-            // 检查置信度阈值
-            if (bestScore < THRESHOLD) {
-                logger.debug("置信度 {} 低于阈值 {}，返回 fallback_agent", bestScore, THRESHOLD);
-                return "fallback_agent";
+            logger.warn("语义路由索引未就绪（{}），返回 fallback_agent", readiness);
+            return Mono.just(RoutingDecision.fallback());
+        }
+
+        embeddingRoutes.incrementAndGet();
+        return embed(userQuery, persistent)
+                .flatMap(queryVec -> Mono.fromCallable(() -> routeByVector(queryVec))
+                        .subscribeOn(searchScheduler)
+                        // 缓存的路由结果会被近似重复的问题复用，不附带本问题的向量
+                        .doOnNext(decision -> cacheDecision(fingerprint, decision))
+                        .map(decision -> decision.withQueryVector(queryVec)))
+                .onErrorResume(e -> {
+                    if (localIndex != null) {
+                        logger.warn("OpenAI 路由失败，回退到本地 Embedding 模型: {}", e.getMessage());
+                        return routeLocally(userQuery);
+                    }
+                    logger.error("路由失败: {}", e.getMessage(), e);
+                    return Mono.just(RoutingDecision.fallback());
+                });
+    }
+
+    /**
+     * 缓存路由结果；fallback 结果不缓存，避免把临时性的低置信度结果固定下来
+     */
+    private void cacheDecision(long fingerprint, RoutingDecision decision) {
+        if (decisionCache != null && !decision.isFallback()) {
+            decisionCache.put(fingerprint, decision);
+        }
+    }
+
+    /**
+     * 使用本地模型路由，进程内计算，不访问网络
+     */
+    private Mono<RoutingDecision> routeLocally(String userQuery) {
+        return Mono.fromCallable(() -> {
+                    LocalIndex index = acquireLocalIndex();
+                    if (index == null) {
+                        return RoutingDecision.fallback();
+                    }
+                    try {
+                        localRoutes.incrementAndGet();
+                        float[] queryVec = index.embedder.embed(userQuery);
+                        return decideByNeighbours(index.store.queryTopK(queryVec, neighbourCount()), localThreshold);
+                    } finally {
+                        index.release();
+                    }
+                })
+                .onErrorResume(e -> {
+                    logger.error("本地路由失败: {}", e.getMessage(), e);
+                    return Mono.just(RoutingDecision.fallback());
+                });
+    }
+
+    /**
+     * 取得当前本地索引的使用权，用完后需调用 release；没有本地索引时返回 null
+     * 索引恰好在取得前被替换时重新读取（新索引总是先于旧索引退役发布）
+     */
+    private LocalIndex acquireLocalIndex() {
+        while (true) {
+            LocalIndex index = localIndex;
+            if (index == null || index.acquire()) {
+                return index;
             }
-            
-            // 直接从结果中获取 agent code
-            String agentCode = topResult.agentCode;
-            
-            if (agentCode == null || agentCode.trim().isEmpty()) {
-                return "fallback_agent";
+        }
+    }
+
+    /**
+     * 根据查询向量路由（CPU 密集，需在检索调度器上执行）
+     */
+    private RoutingDecision routeByVector(float[] queryVec) throws SQLException {
+        // 原型模式：只与各 Agent 原型比较，结果明确时直接返回
+        PrototypeIndex index = prototypeIndex;
+        if (index != null) {
+            RoutingDecision decision = routeByPrototypes(index, queryVec);
+            if (decision != null) {
+                return decision;
             }
-            
-            logger.info("匹配到 Agent: {} (置信度: {})", agentCode, String.format("%.2f", bestScore));
-            return agentCode;
-            
-        } catch (Exception e) {
-            logger.error("路由失败: {}", e.getMessage(), e);
-            return "fallback_agent";
         }
+
+        return routeByNeighbours(queryVec);
     }
     
 
     /**
-     * 调用 OpenAI Embedding API，返回向量
-     * 使用缓存机制避免重复调用
+     * 按原型打分路由
+     * 前两名 Agent 分差小于 prototypeMargin 或最高分低于阈值时返回 null，交由示例级 kNN 决定
      */
-    private double[] getEmbedding(String text) throws Exception {
-        // 检查缓存
-        if (embeddingCache.containsKey(text)) {
-            return embeddingCache.get(text);
+    private RoutingDecision routeByPrototypes(PrototypeIndex index, float[] queryVec) {
+        List<PrototypeIndex.AgentScore> scores = index.score(queryVec);
+        if (scores.isEmpty()) {
+            return null;
         }
-
-        if (apiKey == null || apiKey.trim().isEmpty()) {
-            throw new IllegalStateException("OpenAI API Key 未配置");
+        PrototypeIndex.AgentScore top = scores.get(0);
+        if (top.score < THRESHOLD) {
+            return null;
+        }
+        if (multiLabelEnabled) {
+            Map<String, Double> best = new LinkedHashMap<>();
+            for (PrototypeIndex.AgentScore score : scores) {
+                best.put(score.agentCode, score.score);
+            }
+            return multiLabelDecision(best, THRESHOLD, Collections.emptyList());
         }
+        if (scores.size() > 1 && top.score - scores.get(1).score < prototypeMargin) {
+            logger.debug("原型得分接近 ({} vs {})，回退到示例级 kNN", top.agentCode, scores.get(1).agentCode);
+            return null;
+        }
+        logger.info("原型匹配到 Agent: {} (置信度: {})", top.agentCode, String.format("%.2f", top.score));
+        return new RoutingDecision(top.agentCode, top.score, Collections.emptyList());
+    }
 
-        Map<String, Object> body = new HashMap<>();
-        body.put("input", text);
-        body.put("model", EMBEDDING_MODEL);
+    /**
+     * 按示例级 kNN 路由：取最相似的 top 5 示例，以第一名的 Agent 为结果
+     * 多标签模式下多取一些近邻，以便覆盖所有相关的 Agent
+     */
+    private RoutingDecision routeByNeighbours(float[] queryVec) throws SQLException {
+        return decideByNeighbours(vectorStore.queryTopK(queryVec, neighbourCount()), THRESHOLD);
+    }
 
-        try {
-            @SuppressWarnings("unchecked")
-            Map<String, Object> response = webClient.post()
-                    .uri("/embeddings")
-                    .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
-                    .bodyValue(body)
-                    .retrieve()
-                    .onStatus(status -> status.isError(), resp -> {
-                        logger.error("OpenAI API 返回错误状态: {}", resp.statusCode());
-                        return resp.bodyToMono(String.class)
-                                .flatMap(bodyContent -> {
-                                    logger.error("错误响应: {}", bodyContent);
-                                    return Mono.error(
-                                        new RuntimeException("OpenAI API 调用失败: " + resp.statusCode() + " - " + bodyContent));
-                                });
-                    })
-                    .bodyToMono(Map.class)
-                    .block();
-
-            if (response == null) {
-                throw new RuntimeException("OpenAI API 返回空响应");
+    private int neighbourCount() {
+        return multiLabelEnabled ? 20 : 5;
+    }
+
+    /**
+     * 多标签路由结果：按得分降序取达到阈值且与第一名分差不超过 multiLabelMargin 的 Agent
+     *
+     * @param bestScores 每个 Agent 的最高得分（按得分降序）
+     */
+    private RoutingDecision multiLabelDecision(Map<String, Double> bestScores, double threshold,
+                                               List<Result> neighbours) {
+        List<String> agents = new ArrayList<>();
+        String top = null;
+        double topScore = 0;
+        for (Map.Entry<String, Double> entry : bestScores.entrySet()) {
+            if (top == null) {
+                top = entry.getKey();
+                topScore = entry.getValue();
+            }
+            if (entry.getValue() < threshold || topScore - entry.getValue() > multiLabelMargin
+                    || agents.size() >= Math.max(1, multiLabelMaxAgents)) {
+                break;
             }
+            agents.add(entry.getKey());
+        }
+        if (agents.isEmpty()) {
+            return new RoutingDecision(RoutingDecision.FALLBACK_AGENT, topScore, neighbours);
+        }
+        logger.info("多标签匹配到 Agent: {} (最高置信度: {})", agents, String.format("%.2f", topScore));
+        return new RoutingDecision(agents.get(0), topScore, neighbours, agents);
+    }
 
-            JsonNode json = objectMapper.valueToTree(response);
-            
-            if (!json.has("data") || !json.get("data").isArray() || json.get("data").size() == 0) {
-                throw new RuntimeException("OpenAI API 返回数据异常: " + json.toString());
+    /**
+     * 以相似度第一名的示例所属 Agent 为结果，低于阈值时返回 fallback
+     */
+    private RoutingDecision decideByNeighbours(List<Result> results, double threshold) {
+        if (results.isEmpty()) {
+            return RoutingDecision.fallback();
+        }
+        
+        // 获取相似度最高的结果
+        Result topResult = results.get(0);
+        double bestScore = topResult.sim;
+        
+        // 检查置信度阈值
+        if (bestScore < threshold) {
+            logger.debug("置信度 {} 低于阈值 {}，返回 fallback_agent", bestScore, threshold);
+            return new RoutingDecision(RoutingDecision.FALLBACK_AGENT, bestScore, results);
+        }
+        
+        // 直接从结果中获取 agent code
+        String agentCode = topResult.agentCode;
+        
+        if (agentCode == null || agentCode.trim().isEmpty()) {
+            return RoutingDecision.fallback();
+        }
+
+        if (multiLabelEnabled) {
+            // 结果已按相似度降序，每个 Agent 第一次出现时即为其最高得分
+            Map<String, Double> best = new LinkedHashMap<>();
+            for (Result result : results) {
+                if (result.agentCode != null) {
+                    best.putIfAbsent(result.agentCode, result.sim);
+                }
             }
+            return multiLabelDecision(best, threshold, results);
+        }
+        
+        logger.info("匹配到 Agent: {} (置信度: {})", agentCode, String.format("%.2f", bestScore));
+        return new RoutingDecision(agentCode, bestScore, results);
+    }
+
+    /**
+     * 非阻塞获取文本向量
+     * 使用缓存机制避免重复调用，文本先归一化以提高命中率；
+     * 同一文本的并发请求只会发起一次调用（single-flight），后到的请求等待第一个请求的结果
+     */
+    public Mono<float[]> embed(String rawText) {
+        return embed(rawText, true);
+    }
+
+    /**
+     * 预取时计算文本向量：只写入内存缓存，不写入磁盘缓存
+     */
+    public Mono<float[]> prefetchEmbedding(String rawText) {
+        return embed(rawText, false);
+    }
+
+    /**
+     * @param persistent 新计算的向量是否写入磁盘缓存；与进行中的同一文本请求合并时沿用先发起者的设置
+     */
+    private Mono<float[]> embed(String rawText, boolean persistent) {
+        String text = TextNormalizer.normalize(rawText);
+
+        // 检查内存缓存
+        float[] cached = embeddingCache.get(text);
+        if (cached != null) {
+            return Mono.just(cached);
+        }
 
-            JsonNode embeddingArray = json.get("data").get(0).get("embedding");
-            double[] embedding = new double[embeddingArray.size()];
-            for (int i = 0; i < embeddingArray.size(); i++) {
-                embedding[i] = embeddingArray.get(i).asDouble();
+        return Mono.defer(() -> {
+            // 已有相同文本的请求在进行中，直接等待其结果
+            CompletableFuture<float[]> flight = new CompletableFuture<>();
+            CompletableFuture<float[]> existing = inFlight.putIfAbsent(text, flight);
+            if (existing != null) {
+                coalescedRequests.incrementAndGet();
+                return Mono.fromFuture(existing, true);
             }
 
-            // 存入缓存
-            embeddingCache.put(text, embedding);
-            
-            return embedding;
-        } catch (Exception e) {
-            logger.error("调用 OpenAI API 失败: {}", e.getMessage(), e);
-            throw e;
+            // 加载过程独立订阅，单个调用方取消不会影响其他等待者
+            flight.whenComplete((v, e) -> inFlight.remove(text, flight));
+            loadEmbedding(text, persistent).subscribe(flight::complete, flight::completeExceptionally);
+            return Mono.fromFuture(flight, true);
+        });
+    }
+
+    /**
+     * 向量检索使用的有界调度器，其他服务的暴力向量扫描也应在其上执行，不占用事件循环线程
+     */
+    public Scheduler getSearchScheduler() {
+        return searchScheduler;
+    }
+
+    /**
+     * 内存缓存中的文本向量（如预取时已计算），未缓存时返回 null，不访问磁盘和网络
+     */
+    public float[] getCachedEmbedding(String rawText) {
+        return embeddingCache.get(TextNormalizer.normalize(rawText));
+    }
+
+    /**
+     * 批量计算文本向量（用于文档片段等大量文本），返回的向量与输入顺序一致
+     * 先查片段磁盘缓存，未命中的文本按 init.batch-size 分批调用 embeddings 接口；
+     * 结果只写入片段磁盘缓存（chunk-path，单独限量），不占用路由使用的内存缓存和磁盘缓存
+     */
+    public Mono<List<float[]>> embedBatch(List<String> rawTexts) {
+        List<String> texts = new ArrayList<>(rawTexts.size());
+        for (String raw : rawTexts) {
+            texts.add(TextNormalizer.normalize(raw));
         }
+        float[][] vectors = new float[texts.size()][];
+        int batchSize = Math.max(1, initBatchSize);
+
+        return Mono.fromCallable(() -> {
+                    List<Integer> missing = new ArrayList<>();
+                    for (int i = 0; i < texts.size(); i++) {
+                        vectors[i] = chunkCache != null
+                                ? chunkCache.get(PersistentEmbeddingCache.key(EMBEDDING_MODEL, texts.get(i)))
+                                : null;
+                        if (vectors[i] == null) {
+                            missing.add(i);
+                        }
+                    }
+                    return missing;
+                })
+                .subscribeOn(searchScheduler)
+                .flatMapMany(missing -> Flux.range(0, (missing.size() + batchSize - 1) / batchSize)
+                        .map(b -> missing.subList(b * batchSize, Math.min((b + 1) * batchSize, missing.size()))))
+                .concatMap(batch -> {
+                    List<String> batchTexts = new ArrayList<>(batch.size());
+                    for (Integer i : batch) {
+                        batchTexts.add(texts.get(i));
+                    }
+                    return embeddingClient.embedBatch(batchTexts)
+                            .doOnNext(result -> {
+                                for (int j = 0; j < batch.size(); j++) {
+                                    vectors[batch.get(j)] = result.get(j);
+                                    if (chunkCache != null) {
+                                        chunkCache.putAsync(PersistentEmbeddingCache.key(EMBEDDING_MODEL, batchTexts.get(j)),
+                                                result.get(j));
+                                    }
+                                }
+                            });
+                })
+                .then(Mono.fromSupplier(() -> Arrays.asList(vectors)));
+    }
+
+    /**
+     * 依次查询内存缓存、磁盘缓存和 API（调用方已持有该文本的 single-flight）
+     */
+    private Mono<float[]> loadEmbedding(String text, boolean persistent) {
+        // 获得 single-flight 前可能已有其他请求写入缓存
+        Mono<float[]> memory = Mono.fromSupplier(() -> embeddingCache.get(text));
+
+        // 检查磁盘缓存（SQLite 读取，放到检索调度器上）
+        Mono<float[]> disk = diskCache == null ? Mono.empty()
+                : Mono.fromCallable(() -> diskCache.get(PersistentEmbeddingCache.key(EMBEDDING_MODEL, text)))
+                        .subscribeOn(searchScheduler)
+                        .doOnNext(vector -> embeddingCache.put(text, vector));
+
+        // 存入缓存（磁盘缓存异步写入）
+        Mono<float[]> remote = embeddingClient.embed(text)
+                .doOnNext(vector -> {
+                    if (persistent) {
+                        cacheEmbedding(text, vector);
+                    } else {
+                        embeddingCache.put(text, vector);
+                    }
+                })
+                .doOnError(e -> logger.error("调用 OpenAI API 失败: {}", e.getMessage(), e));
+
+        return memory.switchIfEmpty(disk).switchIfEmpty(remote);
+    }
+
+    /**
+     * 将 embedding 写入内存缓存和磁盘缓存
+     */
+    private void cacheEmbedding(String normalizedText, float[] embedding) {
+        embeddingCache.put(normalizedText, embedding);
+        if (diskCache != null) {
+            diskCache.putAsync(PersistentEmbeddingCache.key(EMBEDDING_MODEL, normalizedText), embedding);
+        }
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (warmupThread != null) {
+            warmupThread.interrupt();
+        }
+        if (examplesWatcher != null) {
+            try {
+                examplesWatcher.close();
+            } catch (IOException e) {
+                logger.warn("关闭示例文件监听失败: {}", e.getMessage());
+            }
+        }
+        if (embeddingClient != null) {
+            embeddingClient.close();
+        }
+        searchScheduler.dispose();
+        for (PersistentEmbeddingCache cache : Arrays.asList(diskCache, chunkCache)) {
+            if (cache != null) {
+                try {
+                    cache.close();
+                } catch (SQLException e) {
+                    logger.warn("关闭持久化 Embedding 缓存失败: {}", e.getMessage());
+                }
+            }
+        }
+        LocalIndex index = localIndex;
+        if (index != null) {
+            this.localIndex = null;
+            index.retire();
+        }
+    }
+
+    private static Map<String, Object> diskCacheStats(PersistentEmbeddingCache cache) {
+        Map<String, Object> disk = new LinkedHashMap<>();
+        disk.put("hits", cache.getHitCount());
+        disk.put("misses", cache.getMissCount());
+        disk.put("writes", cache.getWriteCount());
+        disk.put("pendingWrites", cache.getPendingWrites());
+        disk.put("droppedWrites", cache.getDroppedWrites());
+        disk.put("droppedTouches", cache.getDroppedTouches());
+        return disk;
     }
 
     /**
@@ -356,6 +1270,9 @@ public class AgentRouter {
      */
     public void clearCache() {
         embeddingCache.clear();
+        if (decisionCache != null) {
+            decisionCache.clear();
+        }
     }
 
     /**
@@ -365,6 +1282,34 @@ public class AgentRouter {
         return embeddingCache.size();
     }
 
+    /**
+     * 获取缓存统计信息（命中、未命中、淘汰次数等）
+     */
+    public Map<String, Object> getCacheStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(embeddingCache.getStats());
+        stats.put("coalescedRequests", coalescedRequests.get());
+        stats.put("inFlight", inFlight.size());
+        if (diskCache != null) {
+            stats.put("disk", diskCacheStats(diskCache));
+        }
+        if (chunkCache != null) {
+            stats.put("chunkDisk", diskCacheStats(chunkCache));
+        }
+        if (embeddingClient != null) {
+            stats.put("batching", embeddingClient.getStats());
+        }
+        Map<String, Object> routing = new LinkedHashMap<>();
+        routing.put("lexical", lexicalRoutes.get());
+        routing.put("lexicalAmbiguous", lexicalAmbiguous.get());
+        routing.put("embedding", embeddingRoutes.get());
+        routing.put("local", localRoutes.get());
+        stats.put("routing", routing);
+        if (decisionCache != null) {
+            stats.put("decisions", decisionCache.getStats());
+        }
+        return stats;
+    }
+
     /**
      * 设置置信度阈值
      */
@@ -382,6 +1327,50 @@ public class AgentRouter {
         return AGENT_EXAMPLES.keySet();
     }
 
+    // 本地模型与用它计算的示例向量必须成对替换
+    /**
+     * 本地模型及其向量集合，按引用计数关闭：发布时持有一个引用，每个查询各持有一个引用，
+     * 退役（被替换或应用关闭）后最后一个引用释放时关闭向量集合
+     */
+    private static final class LocalIndex {
+        final TextEmbedder embedder;
+        final LocalVectorStore store;
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        LocalIndex(TextEmbedder embedder, LocalVectorStore store) {
+            this.embedder = embedder;
+            this.store = store;
+        }
+
+        // 已关闭时返回 false
+        boolean acquire() {
+            while (true) {
+                int count = references.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                try {
+                    store.close();
+                } catch (SQLException e) {
+                    logger.warn("关闭本地 Embedding 索引失败: {}", e.getMessage());
+                }
+            }
+        }
+
+        // 释放发布时持有的引用
+        void retire() {
+            release();
+        }
+    }
+
     /**
      * 示例测试
      */
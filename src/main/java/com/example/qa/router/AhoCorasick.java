@@ -0,0 +1,111 @@
+package com.example.qa.router;
+
+import java.util.*;
+
+/**
+ * Aho-Corasick 多模式匹配自动机
+ * 构建后不可变，线程安全；一次扫描即可找出文本中出现的所有模式串，耗时与文本长度成正比
+ */
+public class AhoCorasick {
+
+    private final List<String> patterns;
+    // 每个节点的子节点（字符 -> 节点编号）
+    private final List<Map<Character, Integer>> children = new ArrayList<>();
+    private final int[] fail;
+    // 以该节点结尾的模式串编号（包含沿失败链可达的模式串）
+    private final int[][] outputs;
+
+    public AhoCorasick(Collection<String> patterns) {
+        this.patterns = new ArrayList<>(new LinkedHashSet<>(patterns));
+        List<List<Integer>> out = new ArrayList<>();
+        children.add(new HashMap<>());
+        out.add(new ArrayList<>());
+
+        // 构建 trie
+        for (int p = 0; p < this.patterns.size(); p++) {
+            String pattern = this.patterns.get(p);
+            if (pattern.isEmpty()) {
+                continue;
+            }
+            int node = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = children.get(node).get(pattern.charAt(i));
+                if (next == null) {
+                    next = children.size();
+                    children.add(new HashMap<>());
+                    out.add(new ArrayList<>());
+                    children.get(node).put(pattern.charAt(i), next);
+                }
+                node = next;
+            }
+            out.get(node).add(p);
+        }
+
+        // BFS 计算失败指针，并合并失败链上的输出
+        this.fail = new int[children.size()];
+        Deque<Integer> queue = new ArrayDeque<>(children.get(0).values());
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (Map.Entry<Character, Integer> edge : children.get(node).entrySet()) {
+                int child = edge.getValue();
+                int f = fail[node];
+                while (f != 0 && !children.get(f).containsKey(edge.getKey())) {
+                    f = fail[f];
+                }
+                Integer target = children.get(f).get(edge.getKey());
+                fail[child] = (target == null || target == child) ? 0 : target;
+                out.get(child).addAll(out.get(fail[child]));
+                queue.add(child);
+            }
+        }
+
+        this.outputs = new int[out.size()][];
+        for (int i = 0; i < out.size(); i++) {
+            outputs[i] = out.get(i).stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    /**
+     * 查找文本中出现的所有模式串（每次出现都会返回）
+     */
+    public List<Match> findAll(CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != 0 && !children.get(node).containsKey(c)) {
+                node = fail[node];
+            }
+            node = children.get(node).getOrDefault(c, 0);
+            for (int p : outputs[node]) {
+                String pattern = patterns.get(p);
+                matches.add(new Match(pattern, i + 1 - pattern.length(), i + 1));
+            }
+        }
+        return matches;
+    }
+
+    public int getPatternCount() {
+        return patterns.size();
+    }
+
+    /**
+     * 匹配结果：模式串及其在文本中的 [start, end) 位置
+     */
+    public static class Match {
+        public final String pattern;
+        public final int start;
+        public final int end;
+
+        public Match(String pattern, int start, int end) {
+            this.pattern = pattern;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String toString() {
+            return pattern + "[" + start + "," + end + ")";
+        }
+    }
+}
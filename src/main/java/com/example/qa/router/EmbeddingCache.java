@@ -0,0 +1,206 @@
+package com.example.qa.router;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 有界 Embedding 缓存（分段 LRU）
+ *
+ * - 新条目先进入试用段（probation），再次命中后晋升到保护段（protected），
+ *   只被访问一次的长尾问题不会把热点问题挤出缓存
+ * - 按字节预算而不是条目数限制大小，值使用 float[] 存储
+ * - 支持 TTL 过期
+ * - 统计命中、未命中、淘汰次数
+ */
+public class EmbeddingCache {
+
+    // 保护段最多占用总预算的比例
+    private static final double PROTECTED_RATIO = 0.8;
+    // 每个条目的固定开销估算（对象头、Map 节点、引用等）
+    private static final long ENTRY_OVERHEAD = 96;
+
+    private final long maxBytes;
+    private final long protectedMaxBytes;
+    private final long ttlMillis;
+
+    // accessOrder = true：迭代顺序即 LRU 顺序
+    private final LinkedHashMap<String, Entry> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, Entry> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationBytes;
+    private long protectedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param maxBytes 缓存字节预算
+     * @param ttlMillis 条目存活时间，<= 0 表示不过期
+     */
+    public EmbeddingCache(long maxBytes, long ttlMillis) {
+        this.maxBytes = maxBytes;
+        this.protectedMaxBytes = (long) (maxBytes * PROTECTED_RATIO);
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 读取缓存，未命中或已过期返回 null
+     */
+    public synchronized float[] get(String key) {
+        Entry entry = protectedSegment.get(key);
+        if (entry != null) {
+            if (isExpired(entry)) {
+                protectedSegment.remove(key);
+                protectedBytes -= entry.bytes;
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.value;
+        }
+
+        entry = probation.remove(key);
+        if (entry != null) {
+            probationBytes -= entry.bytes;
+            if (isExpired(entry)) {
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            // 第二次命中，晋升到保护段
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.bytes;
+            demoteProtectedOverflow();
+            hits.incrementAndGet();
+            return entry.value;
+        }
+
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * 写入缓存，新条目进入试用段
+     */
+    public synchronized void put(String key, float[] value) {
+        Entry entry = new Entry(value, System.currentTimeMillis(), sizeOf(key, value));
+        if (entry.bytes > maxBytes) {
+            return;
+        }
+
+        Entry old = protectedSegment.get(key);
+        if (old != null) {
+            protectedSegment.put(key, entry);
+            protectedBytes += entry.bytes - old.bytes;
+            demoteProtectedOverflow();
+        } else {
+            old = probation.put(key, entry);
+            probationBytes += entry.bytes - (old != null ? old.bytes : 0);
+        }
+        evictOverflow();
+    }
+
+    public synchronized void clear() {
+        probation.clear();
+        protectedSegment.clear();
+        probationBytes = 0;
+        protectedBytes = 0;
+    }
+
+    public synchronized int size() {
+        return probation.size() + protectedSegment.size();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return probationBytes + protectedBytes;
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    /**
+     * 获取缓存统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long h = hits.get();
+        long m = misses.get();
+        synchronized (this) {
+            stats.put("size", probation.size() + protectedSegment.size());
+            stats.put("probationSize", probation.size());
+            stats.put("protectedSize", protectedSegment.size());
+            stats.put("bytes", probationBytes + protectedBytes);
+        }
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRatio", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.get());
+        stats.put("expirations", expirations.get());
+        return stats;
+    }
+
+    // 保护段超出预算时，将其最久未访问的条目降级回试用段
+    private void demoteProtectedOverflow() {
+        Iterator<Map.Entry<String, Entry>> it = protectedSegment.entrySet().iterator();
+        while (protectedBytes > protectedMaxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            it.remove();
+            protectedBytes -= eldest.getValue().bytes;
+            probation.put(eldest.getKey(), eldest.getValue());
+            probationBytes += eldest.getValue().bytes;
+        }
+        evictOverflow();
+    }
+
+    // 总大小超出预算时，优先淘汰试用段中最久未访问的条目
+    private void evictOverflow() {
+        evictFrom(probation.entrySet().iterator(), true);
+        evictFrom(protectedSegment.entrySet().iterator(), false);
+    }
+
+    private void evictFrom(Iterator<Map.Entry<String, Entry>> it, boolean fromProbation) {
+        while (probationBytes + protectedBytes > maxBytes && it.hasNext()) {
+            Entry eldest = it.next().getValue();
+            it.remove();
+            if (fromProbation) {
+                probationBytes -= eldest.bytes;
+            } else {
+                protectedBytes -= eldest.bytes;
+            }
+            evictions.incrementAndGet();
+        }
+    }
+
+    private boolean isExpired(Entry entry) {
+        return ttlMillis > 0 && System.currentTimeMillis() - entry.createdAt > ttlMillis;
+    }
+
+    private static long sizeOf(String key, float[] value) {
+        return ENTRY_OVERHEAD + 2L * key.length() + 4L * value.length;
+    }
+
+    private static class Entry {
+        final float[] value;
+        final long createdAt;
+        final long bytes;
+        Entry(float[] value, long createdAt, long bytes) {
+            this.value = value;
+            this.createdAt = createdAt;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.example.qa.router;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OpenAI Embedding 客户端（支持请求合并）
+ *
+ * 并发调用 embed 的请求会先进入缓冲区，等待一个很短的窗口（windowMillis）
+ * 或凑满 maxBatchSize 条后，合并为一次批量 embeddings 调用，
+ * 再把各自的向量分发给对应的调用方。用几毫秒的等待换取更少的 HTTP 请求，
+ * 在服务商按请求数限流时可以显著提高吞吐。
+ *
+ * 响应体由 EmbeddingResponseDecoder 边接收边解析，向量直接写入 float[]。
+ *
+ * 合并后的批次若因输入问题（4xx、响应条数不符、解析失败）整体失败，
+ * 会对半拆分后分别重试，直到定位出有问题的那一条，只让它的调用方失败；
+ * 鉴权、限流、5xx 和网络错误属于服务整体不可用，拆分只会放大请求量，直接让整批失败。
+ */
+public class EmbeddingClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingClient.class);
+
+    private final WebClient webClient;
+    private final String apiKey;
+    private final String model;
+    private final long windowMillis;
+    private final int maxBatchSize;
+
+    // 上一次响应的向量维度，用于解码时预分配数组
+    private volatile int dimensionHint;
+
+    private final ScheduledExecutorService scheduler;
+    private final Object lock = new Object();
+    private List<Pending> buffer = new ArrayList<>();
+    private ScheduledFuture<?> scheduledFlush;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong splitRetries = new AtomicLong();
+
+    /**
+     * @param windowMillis 合并窗口，<= 0 表示不合并，每次调用直接请求
+     * @param maxBatchSize 单批最多合并的请求数，达到后立即发送
+     */
+    public EmbeddingClient(WebClient webClient, String apiKey, String model,
+                           long windowMillis, int maxBatchSize) {
+        this.webClient = webClient;
+        this.apiKey = apiKey;
+        this.model = model;
+        this.windowMillis = windowMillis;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "embedding-batcher");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * 获取单条文本的向量，并发请求会被合并为一次批量调用
+     */
+    public Mono<float[]> embed(String text) {
+        requests.incrementAndGet();
+        if (windowMillis <= 0) {
+            batches.incrementAndGet();
+            return embedBatch(Collections.singletonList(text)).map(vectors -> vectors.get(0));
+        }
+
+        Pending pending = new Pending(text);
+        synchronized (lock) {
+            buffer.add(pending);
+            if (buffer.size() >= maxBatchSize) {
+                flushLocked();
+            } else if (scheduledFlush == null) {
+                scheduledFlush = scheduler.schedule(this::flush, windowMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+        return Mono.fromFuture(pending.future);
+    }
+
+    /**
+     * 批量调用 OpenAI Embedding API（input 为数组），按输入顺序返回向量
+     */
+    public Mono<List<float[]>> embedBatch(List<String> texts) {
+        if (apiKey == null || apiKey.trim().isEmpty()) {
+            return Mono.error(new IllegalStateException("OpenAI API Key 未配置"));
+        }
+
+        Map<String, Object> body = new HashMap<>();
+        body.put("input", texts);
+        body.put("model", model);
+
+        return webClient.post()
+                .uri("/embeddings")
+                .header(HttpHeaders.AUTHORIZATION, "Bearer " + apiKey)
+                .bodyValue(body)
+                .retrieve()
+                .onStatus(status -> status.isError(), resp -> {
+                    logger.error("OpenAI API 返回错误状态: {}", resp.statusCode());
+                    return resp.bodyToMono(String.class)
+                            .flatMap(bodyContent -> {
+                                logger.error("错误响应: {}", bodyContent);
+                                return Mono.error(new EmbeddingApiException(resp.statusCode().value(),
+                                        "OpenAI API 调用失败: " + resp.statusCode() + " - " + bodyContent));
+                            });
+                })
+                .bodyToFlux(DataBuffer.class)
+                .as(response -> decode(response, texts.size()));
+    }
+
+    /**
+     * 边接收边解析响应体，每个缓冲区解析完立即释放
+     */
+    private Mono<List<float[]>> decode(Flux<DataBuffer> body, int expected) {
+        return Mono.using(
+                () -> new EmbeddingResponseDecoder(expected, dimensionHint),
+                decoder -> body
+                        .doOnNext(buffer -> {
+                            try {
+                                decoder.feed(buffer);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException("解析 embeddings 响应失败", e);
+                            } finally {
+                                DataBufferUtils.release(buffer);
+                            }
+                        })
+                        .then(Mono.fromCallable(() -> {
+                            List<float[]> vectors = decoder.finish();
+                            dimensionHint = decoder.getDimension();
+                            return vectors;
+                        })),
+                decoder -> {
+                    try {
+                        decoder.close();
+                    } catch (IOException e) {
+                        logger.debug("关闭 embeddings 解析器失败: {}", e.getMessage());
+                    }
+                });
+    }
+
+    /**
+     * 获取合并统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long r = requests.get();
+        long b = batches.get();
+        stats.put("requests", r);
+        stats.put("batches", b);
+        stats.put("averageBatchSize", b == 0 ? 0.0 : (double) r / b);
+        stats.put("splitRetries", splitRetries.get());
+        return stats;
+    }
+
+    public void close() {
+        flush();
+        scheduler.shutdown();
+    }
+
+    private void flush() {
+        synchronized (lock) {
+            flushLocked();
+        }
+    }
+
+    // 取出当前缓冲区并异步发送，调用方需持有 lock
+    private void flushLocked() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        if (buffer.isEmpty()) {
+            return;
+        }
+        List<Pending> batch = buffer;
+        buffer = new ArrayList<>();
+        batches.incrementAndGet();
+
+        send(batch);
+    }
+
+    /**
+     * 发送一批请求并把向量分发给各调用方
+     * 因输入问题失败时对半拆分重试，单条仍失败才让该调用方失败
+     */
+    private void send(List<Pending> batch) {
+        List<String> texts = new ArrayList<>(batch.size());
+        for (Pending p : batch) {
+            texts.add(p.text);
+        }
+        embedBatch(texts).subscribe(
+                vectors -> {
+                    if (vectors.size() != batch.size()) {
+                        retryOrFail(batch, new RuntimeException("OpenAI API 返回数据异常: 期望 "
+                                + batch.size() + " 条向量，实际 " + vectors.size()));
+                        return;
+                    }
+                    for (int i = 0; i < batch.size(); i++) {
+                        batch.get(i).future.complete(vectors.get(i));
+                    }
+                },
+                error -> retryOrFail(batch, error));
+    }
+
+    private void retryOrFail(List<Pending> batch, Throwable error) {
+        if (batch.size() > 1 && isInputError(error)) {
+            int mid = batch.size() / 2;
+            splitRetries.incrementAndGet();
+            logger.warn("合并的 embeddings 请求失败，拆分为 {} + {} 条重试: {}",
+                    mid, batch.size() - mid, error.getMessage());
+            send(batch.subList(0, mid));
+            send(batch.subList(mid, batch.size()));
+            return;
+        }
+        for (Pending p : batch) {
+            p.future.completeExceptionally(error);
+        }
+    }
+
+    // 是否可能只由批次中的个别输入引起（拆分后其余输入可以成功）
+    private static boolean isInputError(Throwable error) {
+        if (error instanceof EmbeddingApiException) {
+            int status = ((EmbeddingApiException) error).status;
+            return status >= 400 && status < 500 && status != 401 && status != 403 && status != 429;
+        }
+        // 未配置 API Key 等本地错误与网络错误，拆分后同样失败
+        return !(error instanceof IllegalStateException || error instanceof WebClientRequestException);
+    }
+
+    /**
+     * embeddings 接口返回错误状态码
+     */
+    static class EmbeddingApiException extends RuntimeException {
+        final int status;
+        EmbeddingApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static class Pending {
+        final String text;
+        final CompletableFuture<float[]> future = new CompletableFuture<>();
+        Pending(String text) { this.text = text; }
+    }
+}
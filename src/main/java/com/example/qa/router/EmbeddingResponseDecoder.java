@@ -0,0 +1,203 @@
+package com.example.qa.router;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * embeddings 响应的流式解码器
+ *
+ * 使用 Jackson 非阻塞解析器，网络缓冲区到达一块就解析一块，
+ * data[].embedding 中的数值直接写入 float[]，不构建 Map / JsonNode，也不装箱。
+ * 1536 维的单条响应每次解码约分配 90KB（主要是解析器为每个数值生成的临时文本），原来的 Map + valueToTree 约 370KB，
+ * 见测试目录下的 EmbeddingDecodeBenchmark。
+ * 向量数组按上一次响应的维度预分配，维度一致时每条向量只分配一次。
+ *
+ * 一个实例只解码一个响应，非线程安全。
+ */
+final class EmbeddingResponseDecoder implements Closeable {
+
+    // 浮点数使用 Jackson 内置的快速解析器
+    private static final JsonFactory JSON_FACTORY = JsonFactory.builder()
+            .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+            .build();
+
+    private static final int DEFAULT_CAPACITY = 256;
+
+    private final JsonParser parser;
+    private final ByteBufferFeeder feeder;
+    private final int expected;
+    private final float[][] vectors;
+
+    private int dimensionHint;
+    private boolean sawData;
+    private int items;
+
+    // 当前 data[] 元素的解析状态
+    private int itemIndex;
+    private float[] itemVector;
+    private float[] values;
+    private int size;
+
+    /**
+     * @param expected 期望的向量条数（即请求中 input 的条数）
+     * @param dimensionHint 预计的向量维度，<= 0 表示未知
+     */
+    EmbeddingResponseDecoder(int expected, int dimensionHint) throws IOException {
+        this.parser = JSON_FACTORY.createNonBlockingByteBufferParser();
+        this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+        this.expected = expected;
+        this.vectors = new float[expected][];
+        this.dimensionHint = dimensionHint;
+    }
+
+    /**
+     * 解析一个响应缓冲区（不会释放该缓冲区）
+     */
+    void feed(DataBuffer buffer) throws IOException {
+        try (DataBuffer.ByteBufferIterator it = buffer.readableByteBuffers()) {
+            while (it.hasNext()) {
+                feed(it.next());
+            }
+        }
+    }
+
+    /**
+     * 解析一段字节，返回前会消费完全部输入
+     */
+    void feed(ByteBuffer bytes) throws IOException {
+        if (!bytes.hasRemaining()) {
+            return;
+        }
+        feeder.feedInput(bytes);
+        drain();
+    }
+
+    /**
+     * 输入结束，返回按 data[].index 排列的向量
+     */
+    List<float[]> finish() throws IOException {
+        feeder.endOfInput();
+        drain();
+        if (!sawData || items != expected) {
+            throw new RuntimeException("OpenAI API 返回数据异常: 期望 " + expected + " 条向量，实际 "
+                    + (sawData ? items : "无 data 字段"));
+        }
+        for (int i = 0; i < expected; i++) {
+            if (vectors[i] == null) {
+                throw new RuntimeException("OpenAI API 返回数据异常: 缺少第 " + i + " 条向量");
+            }
+        }
+        return Arrays.asList(vectors);
+    }
+
+    /**
+     * 本次解析得到的向量维度（用于下一次预分配）
+     */
+    int getDimension() {
+        return dimensionHint;
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    private void drain() throws IOException {
+        JsonToken token;
+        while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+            JsonStreamContext ctx = parser.getParsingContext();
+            switch (token) {
+                case START_ARRAY:
+                    if (isDataArray(ctx)) {
+                        sawData = true;
+                    } else if (isEmbeddingArray(ctx)) {
+                        values = new float[dimensionHint > 0 ? dimensionHint : DEFAULT_CAPACITY];
+                        size = 0;
+                    }
+                    break;
+                case VALUE_NUMBER_FLOAT:
+                case VALUE_NUMBER_INT:
+                    if (isEmbeddingArray(ctx)) {
+                        if (size == values.length) {
+                            values = Arrays.copyOf(values, values.length * 2);
+                        }
+                        values[size++] = parser.getFloatValue();
+                    } else if (isDataItem(ctx) && "index".equals(ctx.getCurrentName())) {
+                        itemIndex = parser.getIntValue();
+                    }
+                    break;
+                case VALUE_STRING:
+                    if (isDataItem(ctx) && "embedding".equals(ctx.getCurrentName())) {
+                        throw new RuntimeException("不支持 base64 编码的向量，请使用 encoding_format=float");
+                    }
+                    break;
+                case START_OBJECT:
+                    if (isDataItem(ctx)) {
+                        itemIndex = items;
+                        itemVector = null;
+                    }
+                    break;
+                case END_ARRAY:
+                    // 刚结束的数组是 embedding 时，当前上下文回到 data[] 元素
+                    if (isDataItem(ctx) && "embedding".equals(ctx.getCurrentName())) {
+                        itemVector = size == values.length ? values : Arrays.copyOf(values, size);
+                        dimensionHint = size;
+                        values = null;
+                    }
+                    break;
+                case END_OBJECT:
+                    // 刚结束的对象是 data[] 元素时，当前上下文回到 data 数组
+                    if (isDataArray(ctx)) {
+                        finishItem();
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private void finishItem() {
+        if (itemVector == null) {
+            throw new RuntimeException("OpenAI API 返回数据异常: 第 " + items + " 个元素缺少 embedding");
+        }
+        if (itemIndex < 0 || itemIndex >= expected) {
+            throw new RuntimeException("OpenAI API 返回数据异常: index " + itemIndex + " 超出范围");
+        }
+        vectors[itemIndex] = itemVector;
+        itemVector = null;
+        items++;
+    }
+
+    // 根对象的 data 数组
+    private static boolean isDataArray(JsonStreamContext ctx) {
+        if (ctx == null || !ctx.inArray()) {
+            return false;
+        }
+        JsonStreamContext parent = ctx.getParent();
+        return parent != null && parent.inObject() && parent.getParent() != null && parent.getParent().inRoot()
+                && "data".equals(parent.getCurrentName());
+    }
+
+    // data 数组中的元素对象
+    private static boolean isDataItem(JsonStreamContext ctx) {
+        return ctx != null && ctx.inObject() && isDataArray(ctx.getParent());
+    }
+
+    // data[].embedding 数组
+    private static boolean isEmbeddingArray(JsonStreamContext ctx) {
+        return ctx != null && ctx.inArray() && isDataItem(ctx.getParent())
+                && "embedding".equals(ctx.getParent().getCurrentName());
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.qa.router;
+
+import com.example.vector.EmbeddingSnapshot;
+import com.example.vector.LocalVectorStore.Item;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.BufferedReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * 构建时生成示例向量快照（由 Maven profile embedding-snapshot 调用）
+ *
+ * 用法：EmbeddingSnapshotBuilder &lt;示例文件&gt; &lt;输出文件&gt; [--mode live|record|recorded] [--recording 文件]
+ *  - live：调用 embeddings 接口生成快照
+ *  - record：调用接口生成快照，并把返回的向量保存到录制文件
+ *  - recorded：只使用录制文件中的向量，不访问网络（适合 CI）；录制文件不存在或缺少示例时构建失败
+ *
+ * API Key 和地址从系统属性 openai.api-key / openai.base-url 或环境变量 OPENAI_API_KEY / OPENAI_BASE_URL 读取
+ */
+public final class EmbeddingSnapshotBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingSnapshotBuilder.class);
+
+    private static final int BATCH_SIZE = 64;
+
+    private EmbeddingSnapshotBuilder() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            throw new IllegalArgumentException(
+                    "用法: EmbeddingSnapshotBuilder <示例文件> <输出文件> [--mode live|record|recorded] [--recording 文件]");
+        }
+        Path examplesPath = Paths.get(args[0]);
+        Path outputPath = Paths.get(args[1]);
+        String mode = "live";
+        Path recordingPath = null;
+        for (int i = 2; i + 1 < args.length; i += 2) {
+            if ("--mode".equals(args[i])) {
+                mode = args[i + 1];
+            } else if ("--recording".equals(args[i])) {
+                recordingPath = Paths.get(args[i + 1]);
+            } else {
+                throw new IllegalArgumentException("未知参数: " + args[i]);
+            }
+        }
+
+        Map<String, List<String>> examples;
+        try (BufferedReader reader = Files.newBufferedReader(examplesPath, StandardCharsets.UTF_8)) {
+            examples = AgentRouter.parseExamples(reader);
+        }
+        Set<String> texts = new LinkedHashSet<>();
+        for (List<String> list : examples.values()) {
+            for (String example : list) {
+                texts.add(TextNormalizer.normalize(example));
+            }
+        }
+
+        Map<String, float[]> vectors;
+        switch (mode) {
+            case "recorded":
+                if (recordingPath == null || !Files.exists(recordingPath)) {
+                    throw new IllegalStateException("录制文件 " + recordingPath
+                            + " 不存在，请先使用 --mode record 录制（-Dembedding.snapshot.mode=record）并提交录制文件");
+                }
+                vectors = readRecording(recordingPath);
+                List<String> missing = new ArrayList<>();
+                for (String text : texts) {
+                    if (!vectors.containsKey(text)) {
+                        missing.add(text);
+                    }
+                }
+                if (!missing.isEmpty()) {
+                    throw new IllegalStateException("录制文件缺少 " + missing.size()
+                            + " 条示例的向量，请使用 --mode record 重新录制，例如: " + missing.get(0));
+                }
+                break;
+            case "live":
+            case "record":
+                vectors = embedLive(new ArrayList<>(texts));
+                if ("record".equals(mode)) {
+                    if (recordingPath == null) {
+                        throw new IllegalArgumentException("record 模式需要指定 --recording");
+                    }
+                    writeRecording(recordingPath, vectors);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("未知模式: " + mode);
+        }
+
+        List<Item> items = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : examples.entrySet()) {
+            for (String example : entry.getValue()) {
+                items.add(new Item(example, entry.getKey(), vectors.get(TextNormalizer.normalize(example))));
+            }
+        }
+        EmbeddingSnapshot snapshot = new EmbeddingSnapshot(AgentRouter.EMBEDDING_MODEL,
+                EmbeddingSnapshot.examplesHash(examples), items);
+        Files.createDirectories(outputPath.toAbsolutePath().getParent());
+        try (OutputStream out = Files.newOutputStream(outputPath)) {
+            snapshot.write(out);
+        }
+        logger.info("生成向量快照 {}: {} 条示例（模式 {}）", outputPath, items.size(), mode);
+    }
+
+    private static Map<String, float[]> embedLive(List<String> texts) {
+        String apiKey = System.getProperty("openai.api-key", System.getenv("OPENAI_API_KEY"));
+        String baseUrl = System.getProperty("openai.base-url",
+                Optional.ofNullable(System.getenv("OPENAI_BASE_URL")).orElse("https://api.openai.com/v1"));
+        WebClient webClient = WebClient.builder()
+                .baseUrl(baseUrl)
+                .defaultHeader(HttpHeaders.CONTENT_TYPE, "application/json")
+                .build();
+        EmbeddingClient client = new EmbeddingClient(webClient, apiKey, AgentRouter.EMBEDDING_MODEL, 0, BATCH_SIZE);
+
+        Map<String, float[]> vectors = new LinkedHashMap<>();
+        try {
+            for (int i = 0; i < texts.size(); i += BATCH_SIZE) {
+                List<String> batch = texts.subList(i, Math.min(i + BATCH_SIZE, texts.size()));
+                List<float[]> result = client.embedBatch(batch).block();
+                for (int j = 0; j < batch.size(); j++) {
+                    vectors.put(batch.get(j), result.get(j));
+                }
+                logger.info("向量化进度: {}/{}", vectors.size(), texts.size());
+            }
+        } finally {
+            client.close();
+        }
+        return vectors;
+    }
+
+    private static Map<String, float[]> readRecording(Path path) throws Exception {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            Recording recording = new Gson().fromJson(reader, Recording.class);
+            if (!AgentRouter.EMBEDDING_MODEL.equals(recording.model)) {
+                throw new IllegalStateException("录制文件模型 " + recording.model
+                        + " 与当前模型 " + AgentRouter.EMBEDDING_MODEL + " 不一致");
+            }
+            return recording.embeddings != null ? recording.embeddings : Collections.emptyMap();
+        }
+    }
+
+    private static void writeRecording(Path path, Map<String, float[]> vectors) throws Exception {
+        Recording recording = new Recording();
+        recording.model = AgentRouter.EMBEDDING_MODEL;
+        recording.embeddings = new TreeMap<>(vectors);
+        Files.createDirectories(path.toAbsolutePath().getParent());
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            new GsonBuilder().disableHtmlEscaping().create().toJson(recording, writer);
+        }
+        logger.info("已录制 {} 条向量到 {}", vectors.size(), path);
+    }
+
+    // 录制文件格式：{"model": "...", "embeddings": {"归一化文本": [向量]}}
+    private static class Recording {
+        String model;
+        Map<String, float[]> embeddings;
+    }
+}
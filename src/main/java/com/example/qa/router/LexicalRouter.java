@@ -0,0 +1,95 @@
+package com.example.qa.router;
+
+import java.util.*;
+
+/**
+ * 基于关键词的快速路由
+ *
+ * 用 Aho-Corasick 自动机一次扫描问题文本，按命中关键词的权重为各 Agent 打分（同一关键词只计一次）。
+ * 只有在信号明确时才给出结果：最高分不低于 minScore，且占所有命中分数的比例不低于 dominance；
+ * 否则返回 null，由调用方继续走 Embedding 路由。
+ */
+public class LexicalRouter {
+
+    private final AhoCorasick matcher;
+    // 关键词 -> 命中的 Agent 及权重（同一关键词可以属于多个 Agent）
+    private final Map<String, Map<String, Double>> weights;
+    private final double minScore;
+    private final double dominance;
+
+    private LexicalRouter(Map<String, Map<String, Double>> weights, double minScore, double dominance) {
+        this.weights = weights;
+        this.matcher = new AhoCorasick(weights.keySet());
+        this.minScore = minScore;
+        this.dominance = dominance;
+    }
+
+    /**
+     * @param keywordsByAgent 每个 Agent 的关键词及权重
+     * @param minScore 给出结果所需的最低得分
+     * @param dominance 最高分占总分的最低比例，用于排除多个 Agent 同时命中的情况
+     */
+    public static LexicalRouter build(Map<String, Map<String, Double>> keywordsByAgent,
+                                      double minScore, double dominance) {
+        Map<String, Map<String, Double>> weights = new HashMap<>();
+        for (Map.Entry<String, Map<String, Double>> agent : keywordsByAgent.entrySet()) {
+            for (Map.Entry<String, Double> keyword : agent.getValue().entrySet()) {
+                String key = normalize(keyword.getKey());
+                if (!key.isEmpty()) {
+                    weights.computeIfAbsent(key, k -> new LinkedHashMap<>())
+                            .merge(agent.getKey(), keyword.getValue(), Math::max);
+                }
+            }
+        }
+        return new LexicalRouter(weights, minScore, dominance);
+    }
+
+    /**
+     * 对问题做关键词路由
+     *
+     * @return 信号明确时返回路由结果（score 为最高分占比），否则返回 null
+     */
+    public RoutingDecision route(String question) {
+        Set<String> matched = new HashSet<>();
+        for (AhoCorasick.Match match : matcher.findAll(normalize(question))) {
+            matched.add(match.pattern);
+        }
+        if (matched.isEmpty()) {
+            return null;
+        }
+
+        Map<String, Double> scores = new HashMap<>();
+        double total = 0;
+        for (String keyword : matched) {
+            for (Map.Entry<String, Double> entry : weights.get(keyword).entrySet()) {
+                scores.merge(entry.getKey(), entry.getValue(), Double::sum);
+                total += entry.getValue();
+            }
+        }
+
+        String best = null;
+        double bestScore = 0;
+        for (Map.Entry<String, Double> entry : scores.entrySet()) {
+            if (entry.getValue() > bestScore) {
+                best = entry.getKey();
+                bestScore = entry.getValue();
+            }
+        }
+        if (best == null || bestScore < minScore) {
+            return null;
+        }
+        double share = bestScore / total;
+        if (share < dominance) {
+            return null;
+        }
+        return new RoutingDecision(best, share, Collections.emptyList());
+    }
+
+    public int getKeywordCount() {
+        return matcher.getPatternCount();
+    }
+
+    private static String normalize(String text) {
+        return TextNormalizer.normalize(text).toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.qa.router;
+
+import java.util.*;
+
+/**
+ * 本地字符 n-gram Embedding 模型
+ *
+ * 将文本切分为字符 1~3-gram（中文按字切分，英文/数字额外保留整词），
+ * 以 (1 + log tf) * idf 加权，再通过带符号的特征哈希投影到固定维度（稀疏随机投影），
+ * 最后做 L2 归一化。idf 由 agent 示例语料统计得到，模型构建后不可变。
+ *
+ * 不依赖网络，单次计算在微秒级，适合作为路由的主模型或 API 不可用时的后备模型。
+ */
+public class LocalNgramEmbedder implements TextEmbedder {
+
+    private static final int MAX_NGRAM = 3;
+    // 每个特征投影到的输出维度数，降低哈希冲突的影响
+    private static final int PROJECTIONS = 2;
+    private static final float PROJECTION_SCALE = (float) (1.0 / Math.sqrt(PROJECTIONS));
+
+    private final int dimension;
+    private final Map<Long, Float> idf;
+    // 未在语料中出现的特征使用最大 idf
+    private final float defaultIdf;
+
+    private LocalNgramEmbedder(int dimension, Map<Long, Float> idf, float defaultIdf) {
+        this.dimension = dimension;
+        this.idf = idf;
+        this.defaultIdf = defaultIdf;
+    }
+
+    /**
+     * 根据语料统计 idf 并构建模型
+     *
+     * @param corpus 语料（通常为所有 agent 示例）
+     * @param dimension 输出向量维度
+     */
+    public static LocalNgramEmbedder fit(Collection<String> corpus, int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("dimension 必须大于 0");
+        }
+        Map<Long, Integer> documentFrequency = new HashMap<>();
+        for (String document : corpus) {
+            for (Long feature : features(document).keySet()) {
+                documentFrequency.merge(feature, 1, Integer::sum);
+            }
+        }
+
+        int n = corpus.size();
+        Map<Long, Float> idf = new HashMap<>(documentFrequency.size() * 2);
+        for (Map.Entry<Long, Integer> entry : documentFrequency.entrySet()) {
+            idf.put(entry.getKey(), smoothIdf(n, entry.getValue()));
+        }
+        return new LocalNgramEmbedder(dimension, idf, smoothIdf(n, 0));
+    }
+
+    @Override
+    public String getName() {
+        return "local-ngram-" + dimension;
+    }
+
+    @Override
+    public int getDimension() {
+        return dimension;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimension];
+        for (Map.Entry<Long, Integer> entry : features(text).entrySet()) {
+            long feature = entry.getKey();
+            float weight = (float) (1.0 + Math.log(entry.getValue()))
+                    * idf.getOrDefault(feature, defaultIdf) * PROJECTION_SCALE;
+            for (int p = 0; p < PROJECTIONS; p++) {
+                long h = mix(feature + p * 0x9E3779B97F4A7C15L);
+                int index = (int) ((h >>> 1) % dimension);
+                vector[index] += (h & 1L) == 0 ? weight : -weight;
+            }
+        }
+
+        double norm = 0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        if (norm > 0) {
+            float inv = (float) (1.0 / Math.sqrt(norm));
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] *= inv;
+            }
+        }
+        return vector;
+    }
+
+    /**
+     * 提取特征哈希及其词频
+     * 文本按非字母数字字符切分成片段，片段内取字符 n-gram；
+     * 单个拉丁字母或数字信息量太低，不作为 1-gram 特征
+     */
+    static Map<Long, Integer> features(String text) {
+        String normalized = TextNormalizer.normalize(text).toLowerCase(Locale.ROOT);
+        Map<Long, Integer> counts = new HashMap<>();
+        int length = normalized.length();
+        int start = 0;
+        while (start < length) {
+            while (start < length && !Character.isLetterOrDigit(normalized.charAt(start))) {
+                start++;
+            }
+            int end = start;
+            boolean ascii = true;
+            while (end < length && Character.isLetterOrDigit(normalized.charAt(end))) {
+                ascii &= normalized.charAt(end) < 128;
+                end++;
+            }
+            if (end > start) {
+                addSegment(normalized, start, end, ascii, counts);
+            }
+            start = end;
+        }
+        return counts;
+    }
+
+    private static void addSegment(String text, int start, int end, boolean ascii, Map<Long, Integer> counts) {
+        if (ascii && end - start > MAX_NGRAM) {
+            counts.merge(hash(text, start, end, 'w'), 1, Integer::sum);
+        }
+        for (int n = 1; n <= MAX_NGRAM; n++) {
+            for (int i = start; i + n <= end; i++) {
+                if (n == 1 && text.charAt(i) < 128) {
+                    continue;
+                }
+                counts.merge(hash(text, i, i + n, (char) ('0' + n)), 1, Integer::sum);
+            }
+        }
+    }
+
+    // FNV-1a 64 位哈希，tag 区分整词和不同长度的 n-gram
+    private static long hash(String text, int start, int end, char tag) {
+        long h = 0xcbf29ce484222325L;
+        h = (h ^ tag) * 0x100000001b3L;
+        for (int i = start; i < end; i++) {
+            h = (h ^ text.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+    // splitmix64 混合函数，用于从特征哈希派生投影位置和符号
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static float smoothIdf(int documents, int frequency) {
+        return (float) (Math.log((documents + 1.0) / (frequency + 1.0)) + 1.0);
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.qa.router;
+
+import com.example.vector.LocalVectorStore.Item;
+import com.example.vector.VectorMath;
+
+import java.util.*;
+
+/**
+ * Agent 原型索引
+ * 在加载时为每个 Agent 预先计算若干原型向量（质心或球面 k-means 聚类中心），
+ * 路由时只需与原型比较，开销随 Agent 数量而不是示例数量增长
+ */
+public class PrototypeIndex {
+
+    private static final int KMEANS_ITERATIONS = 10;
+
+    private final List<String> agentCodes;
+    // 与 agentCodes 一一对应，每个 Agent 的原型向量（已归一化）
+    private final List<float[][]> prototypes;
+    private final int prototypeCount;
+
+    private PrototypeIndex(List<String> agentCodes, List<float[][]> prototypes) {
+        this.agentCodes = agentCodes;
+        this.prototypes = prototypes;
+        int count = 0;
+        for (float[][] p : prototypes) {
+            count += p.length;
+        }
+        this.prototypeCount = count;
+    }
+
+    /**
+     * 根据示例向量构建原型索引
+     *
+     * @param items 所有示例向量
+     * @param prototypesPerAgent 每个 Agent 的原型数量，1 表示只使用质心
+     * @param seed k-means 初始化的随机种子，保证结果可复现
+     */
+    public static PrototypeIndex build(List<Item> items, int prototypesPerAgent, long seed) {
+        Map<String, List<float[]>> byAgent = new LinkedHashMap<>();
+        for (Item item : items) {
+            if (item.agentCode == null || item.embedding == null) {
+                continue;
+            }
+            byAgent.computeIfAbsent(item.agentCode, k -> new ArrayList<>())
+                    .add(VectorMath.normalize(item.embedding));
+        }
+
+        Random random = new Random(seed);
+        List<String> codes = new ArrayList<>();
+        List<float[][]> protos = new ArrayList<>();
+        for (Map.Entry<String, List<float[]>> entry : byAgent.entrySet()) {
+            int k = Math.max(1, Math.min(prototypesPerAgent, entry.getValue().size()));
+            codes.add(entry.getKey());
+            protos.add(k == 1
+                    ? new float[][]{centroid(entry.getValue())}
+                    : sphericalKMeans(entry.getValue(), k, random));
+        }
+        return new PrototypeIndex(codes, protos);
+    }
+
+    /**
+     * 计算查询与各 Agent 的相似度（取该 Agent 最接近的原型），按相似度降序
+     */
+    public List<AgentScore> score(float[] queryVec) {
+        float[] query = VectorMath.normalize(queryVec);
+        List<AgentScore> scores = new ArrayList<>(agentCodes.size());
+        for (int i = 0; i < agentCodes.size(); i++) {
+            double best = Double.NEGATIVE_INFINITY;
+            for (float[] prototype : prototypes.get(i)) {
+                best = Math.max(best, VectorMath.dot(query, prototype));
+            }
+            scores.add(new AgentScore(agentCodes.get(i), best));
+        }
+        scores.sort((a, b) -> Double.compare(b.score, a.score));
+        return scores;
+    }
+
+    public int getAgentCount() {
+        return agentCodes.size();
+    }
+
+    public int getPrototypeCount() {
+        return prototypeCount;
+    }
+
+    public static class AgentScore {
+        public final String agentCode;
+        public final double score;
+        public AgentScore(String agentCode, double score) {
+            this.agentCode = agentCode;
+            this.score = score;
+        }
+    }
+
+    // ========= k-means =========
+
+    /**
+     * 球面 k-means：使用余弦相似度分配，聚类中心重新归一化
+     * 采用 k-means++ 方式选取初始中心
+     */
+    private static float[][] sphericalKMeans(List<float[]> vectors, int k, Random random) {
+        int n = vectors.size();
+        float[][] centers = new float[k][];
+
+        centers[0] = vectors.get(random.nextInt(n)).clone();
+        double[] distance = new double[n];
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < n; i++) {
+                double best = Double.MAX_VALUE;
+                for (int j = 0; j < c; j++) {
+                    best = Math.min(best, 1 - VectorMath.dot(vectors.get(i), centers[j]));
+                }
+                distance[i] = Math.max(best, 0) * Math.max(best, 0);
+                total += distance[i];
+            }
+            int chosen = random.nextInt(n);
+            if (total > 0) {
+                double target = random.nextDouble() * total;
+                for (int i = 0; i < n; i++) {
+                    target -= distance[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            centers[c] = vectors.get(chosen).clone();
+        }
+
+        int[] assignment = new int[n];
+        for (int iter = 0; iter < KMEANS_ITERATIONS; iter++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int best = 0;
+                double bestSim = Double.NEGATIVE_INFINITY;
+                for (int c = 0; c < k; c++) {
+                    double sim = VectorMath.dot(vectors.get(i), centers[c]);
+                    if (sim > bestSim) {
+                        bestSim = sim;
+                        best = c;
+                    }
+                }
+                if (iter == 0 || assignment[i] != best) {
+                    changed = true;
+                }
+                assignment[i] = best;
+            }
+            if (!changed) {
+                break;
+            }
+            for (int c = 0; c < k; c++) {
+                List<float[]> members = new ArrayList<>();
+                for (int i = 0; i < n; i++) {
+                    if (assignment[i] == c) {
+                        members.add(vectors.get(i));
+                    }
+                }
+                // 空簇保留原中心
+                if (!members.isEmpty()) {
+                    centers[c] = centroid(members);
+                }
+            }
+        }
+        return centers;
+    }
+
+    // ========= 工具函数 =========
+
+    private static float[] centroid(List<float[]> vectors) {
+        float[] sum = new float[vectors.get(0).length];
+        for (float[] v : vectors) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += v[i];
+            }
+        }
+        return VectorMath.normalize(sum);
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.qa.router;
+
+import com.example.vector.LocalVectorStore.Result;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 路由结果
+ * 每个请求只路由一次，路由结果在各处理器之间共享。
+ * 多标签模式下 agentCodes 包含所有达到阈值的 Agent（按得分降序，第一个即 agentCode）
+ */
+public class RoutingDecision {
+
+    public static final String FALLBACK_AGENT = "fallback_agent";
+
+    private static final RoutingDecision FALLBACK =
+            new RoutingDecision(FALLBACK_AGENT, 0.0, Collections.emptyList());
+
+    private final String agentCode;
+    private final double score;
+    private final List<Result> neighbours;
+    private final List<String> agentCodes;
+    // 路由时计算的问题向量（OpenAI embedding），关键词、缓存或本地模型路由时为 null
+    private final float[] queryVector;
+
+    public RoutingDecision(String agentCode, double score, List<Result> neighbours) {
+        this(agentCode, score, neighbours, Collections.singletonList(agentCode));
+    }
+
+    public RoutingDecision(String agentCode, double score, List<Result> neighbours, List<String> agentCodes) {
+        this(agentCode, score, neighbours, agentCodes, null);
+    }
+
+    private RoutingDecision(String agentCode, double score, List<Result> neighbours, List<String> agentCodes,
+                            float[] queryVector) {
+        this.agentCode = agentCode;
+        this.score = score;
+        this.neighbours = neighbours != null
+                ? Collections.unmodifiableList(neighbours)
+                : Collections.emptyList();
+        this.agentCodes = agentCodes != null && !agentCodes.isEmpty()
+                ? Collections.unmodifiableList(agentCodes)
+                : Collections.singletonList(agentCode);
+        this.queryVector = queryVector;
+    }
+
+    /**
+     * 附带问题向量的副本，供后续步骤（如回答缓存）复用，避免重复计算
+     */
+    public RoutingDecision withQueryVector(float[] queryVector) {
+        return new RoutingDecision(agentCode, score, neighbours, agentCodes, queryVector);
+    }
+
+    /**
+     * 未匹配到任何 Agent 时的路由结果
+     */
+    public static RoutingDecision fallback() {
+        return FALLBACK;
+    }
+
+    public String getAgentCode() { return agentCode; }
+    public double getScore() { return score; }
+    public List<Result> getNeighbours() { return neighbours; }
+    public List<String> getAgentCodes() { return agentCodes; }
+    public float[] getQueryVector() { return queryVector; }
+
+    /**
+     * 是否命中了多个 Agent
+     */
+    public boolean isMultiAgent() {
+        return agentCodes.size() > 1;
+    }
+
+    public boolean isFallback() {
+        return FALLBACK_AGENT.equals(agentCode);
+    }
+
+    @Override
+    public String toString() {
+        return "RoutingDecision{" +
+                "agentCode='" + agentCode + '\'' +
+                ", score=" + String.format("%.2f", score) +
+                ", agentCodes=" + agentCodes +
+                ", neighbours=" + neighbours.size() +
+                '}';
+    }
+}
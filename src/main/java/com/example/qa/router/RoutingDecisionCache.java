@@ -0,0 +1,171 @@
+package com.example.qa.router;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 路由结果缓存（近似重复问题匹配）
+ *
+ * 以问题的 SimHash 指纹为键，查询时返回汉明距离不超过 maxDistance 的缓存结果。
+ * 指纹被切成 maxDistance + 1 段分别建索引：距离不超过 maxDistance 的两个指纹
+ * 至少有一段完全相同（抽屉原理），因此只需比较同段命中的候选，而不是扫描全部条目。
+ * 条目数超过上限时按最近最少使用淘汰，过期条目在访问时移除。
+ */
+public class RoutingDecisionCache {
+
+    // agent-router.decision-cache.max-distance 的默认值
+    static final int DEFAULT_MAX_DISTANCE = 3;
+
+    private final int maxDistance;
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final int bands;
+
+    // 按访问顺序排列，用于 LRU 淘汰
+    private final LinkedHashMap<Long, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // 每段的值 -> 该段取此值的指纹
+    private final List<Map<Long, Set<Long>>> bandIndex = new ArrayList<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong nearHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxDistance 视为同一问题的最大汉明距离
+     * @param maxEntries 最大条目数
+     * @param ttlMillis 条目有效期，<= 0 表示不过期
+     */
+    public RoutingDecisionCache(int maxDistance, int maxEntries, long ttlMillis) {
+        this.maxDistance = Math.max(0, Math.min(maxDistance, 63));
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlMillis = ttlMillis;
+        this.bands = this.maxDistance + 1;
+        for (int i = 0; i < bands; i++) {
+            bandIndex.add(new HashMap<>());
+        }
+    }
+
+    /**
+     * 查找指纹相同或相近的缓存结果，未命中返回 null
+     */
+    public synchronized RoutingDecision get(long fingerprint) {
+        long now = System.currentTimeMillis();
+        Entry exact = entries.get(fingerprint);
+        if (exact != null) {
+            if (!isExpired(exact, now)) {
+                hits.incrementAndGet();
+                return exact.decision;
+            }
+            remove(fingerprint);
+        }
+
+        Entry best = null;
+        int bestDistance = Integer.MAX_VALUE;
+        Set<Long> seen = new HashSet<>();
+        for (int band = 0; band < bands; band++) {
+            Set<Long> candidates = bandIndex.get(band).get(bandValue(fingerprint, band));
+            if (candidates == null) {
+                continue;
+            }
+            for (Long candidate : candidates) {
+                if (!seen.add(candidate)) {
+                    continue;
+                }
+                int distance = SimHash.distance(fingerprint, candidate);
+                if (distance <= maxDistance && distance < bestDistance) {
+                    best = entries.get(candidate);
+                    bestDistance = distance;
+                }
+            }
+        }
+
+        if (best != null && isExpired(best, now)) {
+            remove(best.fingerprint);
+            best = null;
+        }
+        if (best == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        // 刷新 LRU 顺序
+        entries.get(best.fingerprint);
+        hits.incrementAndGet();
+        nearHits.incrementAndGet();
+        return best.decision;
+    }
+
+    public synchronized void put(long fingerprint, RoutingDecision decision) {
+        if (entries.containsKey(fingerprint)) {
+            remove(fingerprint);
+        }
+        entries.put(fingerprint, new Entry(fingerprint, decision, System.currentTimeMillis()));
+        for (int band = 0; band < bands; band++) {
+            bandIndex.get(band).computeIfAbsent(bandValue(fingerprint, band), k -> new HashSet<>()).add(fingerprint);
+        }
+
+        while (entries.size() > maxEntries) {
+            remove(entries.keySet().iterator().next());
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        for (Map<Long, Set<Long>> index : bandIndex) {
+            index.clear();
+        }
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("hits", hits.get());
+        stats.put("nearHits", nearHits.get());
+        stats.put("misses", misses.get());
+        stats.put("maxDistance", maxDistance);
+        return stats;
+    }
+
+    private void remove(long fingerprint) {
+        if (entries.remove(fingerprint) == null) {
+            return;
+        }
+        for (int band = 0; band < bands; band++) {
+            long value = bandValue(fingerprint, band);
+            Set<Long> members = bandIndex.get(band).get(value);
+            if (members != null) {
+                members.remove(fingerprint);
+                if (members.isEmpty()) {
+                    bandIndex.get(band).remove(value);
+                }
+            }
+        }
+    }
+
+    private long bandValue(long fingerprint, int band) {
+        // 64 位尽量均分到各段
+        int start = band * 64 / bands;
+        int width = (band + 1) * 64 / bands - start;
+        long mask = width >= 64 ? -1L : (1L << width) - 1;
+        return (fingerprint >>> start) & mask;
+    }
+
+    private boolean isExpired(Entry entry, long now) {
+        return ttlMillis > 0 && now - entry.createdAt > ttlMillis;
+    }
+
+    private static class Entry {
+        final long fingerprint;
+        final RoutingDecision decision;
+        final long createdAt;
+
+        Entry(long fingerprint, RoutingDecision decision, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.decision = decision;
+            this.createdAt = createdAt;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.qa.router;
+
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * 64 位 SimHash 指纹
+ * 先去掉所有标点和空白，再取字符 n-gram（与 LocalNgramEmbedder 相同）作为特征，
+ * 仅在标点、空白或全半角上不同的问题指纹完全相同；相似文本的指纹只有少数位不同，
+ * 可以用汉明距离判断近似重复
+ */
+public final class SimHash {
+
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private SimHash() {
+    }
+
+    public static long fingerprint(String text) {
+        int[] votes = new int[64];
+        String compact = NON_WORD.matcher(TextNormalizer.normalize(text)).replaceAll("");
+        for (Map.Entry<Long, Integer> feature : LocalNgramEmbedder.features(compact).entrySet()) {
+            long h = mix(feature.getKey());
+            int weight = feature.getValue();
+            for (int bit = 0; bit < 64; bit++) {
+                votes[bit] += ((h >>> bit) & 1L) != 0 ? weight : -weight;
+            }
+        }
+
+        long fingerprint = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (votes[bit] > 0) {
+                fingerprint |= 1L << bit;
+            }
+        }
+        return fingerprint;
+    }
+
+    public static int distance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // murmur3 fmix64，让 n-gram 哈希的各位分布更均匀
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.qa.router;
+
+/**
+ * 同步文本向量化接口
+ * 用于在进程内计算向量的本地模型，实现需线程安全
+ */
+public interface TextEmbedder {
+
+    /**
+     * 模型名称，用于日志和统计
+     */
+    String getName();
+
+    /**
+     * 向量维度
+     */
+    int getDimension();
+
+    /**
+     * 计算文本向量（已 L2 归一化）
+     */
+    float[] embed(String text);
+}
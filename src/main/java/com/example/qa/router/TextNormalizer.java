@@ -0,0 +1,24 @@
+package com.example.qa.router;
+
+import java.text.Normalizer;
+import java.util.regex.Pattern;
+
+/**
+ * 文本归一化工具
+ * 用于生成缓存键：NFKC 归一化（全角转半角等）、去除首尾空白、合并连续空白
+ */
+public final class TextNormalizer {
+
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+    private TextNormalizer() {
+    }
+
+    public static String normalize(String text) {
+        if (text == null) {
+            return "";
+        }
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        return WHITESPACE.matcher(normalized.trim()).replaceAll(" ");
+    }
+}
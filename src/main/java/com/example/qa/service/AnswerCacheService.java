@@ -0,0 +1,137 @@
+package com.example.qa.service;
+
+import com.example.qa.cache.SemanticAnswerCache;
+import com.example.qa.router.AgentRouter;
+import com.example.qa.router.LocalNgramEmbedder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 回答缓存服务
+ * 对语义相同、路由到同一 Agent 且材料上下文未变化的问题，直接回放之前生成的回答，不再调用大模型。
+ * 问题向量优先复用路由时已计算的 OpenAI 向量（或预取时缓存的向量），没有时使用本地模型，
+ * 查缓存本身不会发起 embedding 请求
+ */
+@Service
+public class AnswerCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnswerCacheService.class);
+
+    // 各处理器出错时以 "data: " 开头输出错误提示，这类回答不缓存
+    private static final String ERROR_CHUNK_PREFIX = "data: ";
+
+    @Value("${qa.answer-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${qa.answer-cache.similarity-threshold:0.95}")
+    private double similarityThreshold;
+
+    @Value("${qa.answer-cache.max-entries:500}")
+    private int maxEntries;
+
+    @Value("${qa.answer-cache.ttl-seconds:86400}")
+    private long ttlSeconds;
+
+    // 没有 OpenAI 向量时使用的本地模型维度
+    @Value("${qa.answer-cache.local-dimension:512}")
+    private int localDimension;
+
+    @Autowired
+    private AgentRouter agentRouter;
+
+    @Autowired
+    private MaterialsContextService materialsContextService;
+
+    private SemanticAnswerCache cache;
+
+    // 不依赖示例语料（各特征 idf 相同），示例重新加载后已缓存的向量仍可比较
+    private LocalNgramEmbedder localEmbedder;
+
+    @PostConstruct
+    public void init() {
+        this.cache = new SemanticAnswerCache(similarityThreshold, maxEntries, ttlSeconds * 1000);
+        this.localEmbedder = LocalNgramEmbedder.fit(Collections.emptyList(), localDimension);
+    }
+
+    /**
+     * 获取回答：命中缓存时回放缓存的回答，否则调用 producer 生成并在正常结束后写入缓存
+     *
+     * @param question 用户问题
+     * @param agentCode 路由结果
+     * @param routingVector 路由时计算的问题向量，没有时为 null
+     * @param producer 生成回答的流（未命中时才会订阅）
+     */
+    public Flux<String> answer(String question, String agentCode, float[] routingVector,
+                               Supplier<Flux<String>> producer) {
+        if (!enabled) {
+            return producer.get();
+        }
+        return Flux.defer(() -> {
+            long contextVersion = materialsContextService.getContextVersion();
+            float[] vector = routingVector != null ? routingVector : agentRouter.getCachedEmbedding(question);
+            String embedder = AgentRouter.EMBEDDING_MODEL;
+            if (vector == null) {
+                vector = localEmbedder.embed(question);
+                embedder = localEmbedder.getName();
+            }
+
+            List<String> cached = cache.find(question, vector, embedder, agentCode, contextVersion);
+            if (cached != null) {
+                logger.info("命中回答缓存: agent={}, 上下文版本={}", agentCode, contextVersion);
+                return Flux.fromIterable(cached);
+            }
+            return record(producer.get(), question, vector, embedder, agentCode, contextVersion);
+        });
+    }
+
+    /**
+     * 记录回答的所有片段，正常结束（未取消、未出错）时写入缓存
+     */
+    private Flux<String> record(Flux<String> answer, String question, float[] vector, String embedder,
+                                String agentCode, long contextVersion) {
+        return Flux.defer(() -> {
+            List<String> chunks = new ArrayList<>();
+            return answer
+                    .doOnNext(chunks::add)
+                    .doOnComplete(() -> {
+                        if (isCacheable(chunks)) {
+                            cache.put(question, vector, embedder, agentCode, contextVersion, chunks);
+                        }
+                    });
+        });
+    }
+
+    private static boolean isCacheable(List<String> chunks) {
+        if (chunks.isEmpty()) {
+            return false;
+        }
+        for (String chunk : chunks) {
+            if (chunk.startsWith(ERROR_CHUNK_PREFIX)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = cache.getStats();
+        stats.put("enabled", enabled);
+        stats.put("contextVersion", materialsContextService.getContextVersion());
+        return stats;
+    }
+
+    public void clear() {
+        cache.clear();
+    }
+}
@@ -0,0 +1,429 @@
+package com.example.qa.service;
+
+import com.example.qa.entity.Document;
+import com.example.qa.entity.DocumentIndexEvent;
+import com.example.qa.repository.DocumentIndexEventRepository;
+import com.example.qa.retrieval.TextChunker;
+import com.example.qa.router.AgentRouter;
+import com.example.vector.DocumentChunkStore;
+import com.example.vector.DocumentChunkStore.Chunk;
+import com.example.vector.DocumentChunkStore.DocumentChunks;
+import com.example.vector.LocalVectorStore;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文档片段索引服务
+ *
+ * DocumentService 在文档写操作的同一事务中写入索引事件（发件箱表 document_index_outbox），
+ * 后台索引线程按写入顺序批量读取事件：同一文档的多个事件只处理最后一个，
+ * 变更的文档按句子切分、批量向量化后替换其全部片段，删除的文档删除其片段，处理成功的事件标记为已完成。
+ * 失败的事件按指数退避重试（retry-initial-delay-ms 起每次翻倍，不超过 retry-max-delay-ms），
+ * 失败 max-attempts 次后标记为死信：不再自动重试，但计入统计（deadLetters），可通过 retryDeadLetters 重新入队。
+ *
+ * 启动时先按文档内容哈希全量对账一次，补齐发件箱引入之前或丢失事件的文档。
+ * 对账与事件处理都只在单线程的索引调度器上执行，二者不会交错：
+ * 否则较慢的对账可能用旧内容覆盖新事件刚写入的片段，而该事件已标记为完成，索引将一直停留在旧内容。
+ */
+@Service
+public class DocumentIndexService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIndexService.class);
+
+    @Value("${qa.retrieval.db-path:document_chunks.db}")
+    private String dbPath;
+
+    @Value("${qa.retrieval.chunk-size:500}")
+    private int chunkSize;
+
+    // 相邻片段之间重叠的字符数（以完整句子为单位）
+    @Value("${qa.retrieval.chunk-overlap:80}")
+    private int chunkOverlap;
+
+    @Value("${qa.indexer.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${qa.indexer.batch-size:50}")
+    private int batchSize;
+
+    @Value("${qa.indexer.max-attempts:10}")
+    private int maxAttempts;
+
+    // 第一次重试前的等待时间，之后每次失败翻倍
+    @Value("${qa.indexer.retry-initial-delay-ms:5000}")
+    private long retryInitialDelayMs;
+
+    @Value("${qa.indexer.retry-max-delay-ms:300000}")
+    private long retryMaxDelayMs;
+
+    // 已处理事件的保留时间
+    @Value("${qa.indexer.retention-hours:24}")
+    private long retentionHours;
+
+    @Autowired
+    private DocumentService documentService;
+
+    @Autowired
+    private DocumentIndexEventRepository eventRepository;
+
+    @Autowired
+    private AgentRouter agentRouter;
+
+    private DocumentChunkStore store;
+    private TextChunker chunker;
+    private ScheduledExecutorService scheduler;
+
+    // 上次轮询时的文档数据版本；版本未变化、没有遗留事件且未到重试时间时跳过查询发件箱
+    private long polledVersion = -1;
+    private volatile boolean pending = true;
+    // 最早一个等待重试的事件的重试时间（毫秒），没有等待重试的事件时为 Long.MAX_VALUE
+    private long retryAt = Long.MAX_VALUE;
+
+    // 片段索引版本号，索引器每次修改片段后加一；rag 模式下的回答缓存以此为上下文版本
+    private final AtomicLong indexVersion = new AtomicLong();
+
+    private final AtomicLong processedEvents = new AtomicLong();
+    private final AtomicLong failedEvents = new AtomicLong();
+    private final AtomicLong deadLetteredEvents = new AtomicLong();
+    private final AtomicLong indexedDocuments = new AtomicLong();
+    private final AtomicLong embeddedChunks = new AtomicLong();
+    private volatile long lastLagMillis;
+    private volatile long lastIndexedAt;
+
+    @PostConstruct
+    public void init() {
+        this.chunker = new TextChunker(chunkSize, chunkOverlap);
+        try {
+            this.store = new DocumentChunkStore(dbPath);
+        } catch (SQLException e) {
+            logger.error("打开文档片段向量库失败: {}", e.getMessage(), e);
+            return;
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "document-indexer");
+            t.setDaemon(true);
+            return t;
+        });
+        scheduler.execute(() -> {
+            try {
+                reconcile();
+            } catch (Exception e) {
+                logger.error("文档片段索引对账失败: {}", e.getMessage(), e);
+            }
+        });
+        scheduler.scheduleWithFixedDelay(this::poll, pollIntervalMs, Math.max(100, pollIntervalMs),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 按 MMR 查询与向量相关且彼此不重复的片段（按选中顺序）
+     *
+     * @param fetchK 候选池大小
+     * @param lambda 相关性权重，1.0 等价于普通 top-K
+     */
+    public List<DocumentChunkStore.Result> query(float[] vector, int topK, int fetchK, double lambda,
+                                                 double minSimilarity) {
+        if (store == null) {
+            throw new IllegalStateException("文档片段向量库不可用");
+        }
+        return store.queryMMR(vector, topK, fetchK, lambda, minSimilarity);
+    }
+
+    /**
+     * 片段索引版本号：文档变更提交后，要等索引器替换了相应片段才会递增，
+     * 因此基于检索片段生成的结果按该版本号缓存时，不会把旧片段生成的结果记在新版本下
+     */
+    public long getIndexVersion() {
+        return indexVersion.get();
+    }
+
+    /**
+     * 在索引调度器上执行一次全量对账，完成后返回索引统计；不阻塞调用线程
+     */
+    public Mono<Map<String, Object>> reindex() {
+        if (scheduler == null) {
+            return Mono.error(new IllegalStateException("文档片段向量库不可用"));
+        }
+        CompletableFuture<Map<String, Object>> done = new CompletableFuture<>();
+        scheduler.execute(() -> {
+            try {
+                reconcile();
+                done.complete(getStats());
+            } catch (Throwable e) {
+                done.completeExceptionally(e);
+            }
+        });
+        return Mono.fromFuture(done);
+    }
+
+    /**
+     * 按文档内容哈希全量对账：重新索引有变化的文档，删除已不存在的文档的片段
+     * 只能在索引调度器上调用
+     */
+    private void reconcile() throws Exception {
+        long start = System.currentTimeMillis();
+        List<Document> documents = documentService.getAllActiveDocuments();
+        Map<Long, String> indexed = store.listSourceHashes();
+        Set<Long> removed = new HashSet<>(indexed.keySet());
+        List<Document> changed = new ArrayList<>();
+        for (Document document : documents) {
+            removed.remove(document.getId());
+            if (!sourceHash(document).equals(indexed.get(document.getId()))) {
+                changed.add(document);
+            }
+        }
+        applyChanges(embedDocuments(changed), removed);
+        logger.info("文档片段索引对账完成: 更新 {} 个文档，删除 {} 个，共 {} 个片段（耗时 {} ms）",
+                changed.size(), removed.size(), store.size(), System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 轮询发件箱，处理完所有待处理事件
+     */
+    private void poll() {
+        try {
+            long version = documentService.getDataVersion();
+            if (version == polledVersion && !pending && System.currentTimeMillis() < retryAt) {
+                return;
+            }
+            polledVersion = version;
+            pending = false;
+            // 失败的事件已推迟到重试时间之后，不会在本轮再次取到
+            int processed;
+            do {
+                processed = processBatch();
+            } while (processed > 0);
+            eventRepository.deleteProcessedBefore(LocalDateTime.now().minusHours(retentionHours));
+        } catch (Exception e) {
+            pending = true;
+            logger.error("处理文档索引事件失败: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * 将死信事件重新入队，在下一次轮询时立即重试，返回重新入队的事件数
+     */
+    public int retryDeadLetters() {
+        int requeued = eventRepository.requeueDeadLetters();
+        if (requeued > 0) {
+            logger.info("{} 个死信索引事件已重新入队", requeued);
+            pending = true;
+        }
+        return requeued;
+    }
+
+    /**
+     * 处理一批已到重试时间的事件，返回本批事件数
+     */
+    private int processBatch() throws SQLException {
+        List<DocumentIndexEvent> events = eventRepository.findDueEvents(LocalDateTime.now(),
+                PageRequest.of(0, Math.max(1, batchSize)));
+        if (events.isEmpty()) {
+            retryAt = eventRepository.findFirstByProcessedAtIsNullAndDeadLetteredAtIsNullOrderByNextAttemptAtAsc()
+                    .map(event -> event.getNextAttemptAt() != null
+                            ? event.getNextAttemptAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                            : 0L)
+                    .orElse(Long.MAX_VALUE);
+            return 0;
+        }
+
+        // 同一文档的多个事件只处理一次；以文档的当前状态为准，而不是事件的操作类型，
+        // 这样重试中的旧事件（如删除后又恢复的文档的 DELETE 事件）不会覆盖更新的变更
+        Set<Long> documentIds = new LinkedHashSet<>();
+        for (DocumentIndexEvent event : events) {
+            documentIds.add(event.getDocumentId());
+        }
+
+        Map<Long, String> indexed = store.listSourceHashes();
+        List<Long> deletes = new ArrayList<>();
+        List<Document> upserts = new ArrayList<>();
+        for (Long documentId : documentIds) {
+            Optional<Document> document = documentService.getDocumentById(documentId);
+            if (document.isEmpty() || !Boolean.TRUE.equals(document.get().getIsActive())) {
+                if (indexed.containsKey(documentId)) {
+                    deletes.add(documentId);
+                }
+            } else if (!sourceHash(document.get()).equals(indexed.get(documentId))) {
+                upserts.add(document.get());
+            }
+        }
+
+        // 向量化失败时仍然提交删除；片段库写入失败时整批回滚
+        Set<Long> failed = new HashSet<>();
+        String error = null;
+        List<DocumentChunks> embedded = Collections.emptyList();
+        try {
+            embedded = embedDocuments(upserts);
+        } catch (Exception e) {
+            upserts.forEach(document -> failed.add(document.getId()));
+            error = e.getMessage();
+        }
+        try {
+            applyChanges(embedded, deletes);
+        } catch (SQLException e) {
+            deletes.forEach(failed::add);
+            embedded.forEach(document -> failed.add(document.documentId));
+            error = e.getMessage();
+        }
+        if (!failed.isEmpty()) {
+            logger.warn("{} 个文档索引失败，稍后重试: {}", failed.size(), error);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        for (DocumentIndexEvent event : events) {
+            if (failed.contains(event.getDocumentId())) {
+                int attempts = event.getAttempts() + 1;
+                event.setAttempts(attempts);
+                event.setLastError(error != null && error.length() > 500 ? error.substring(0, 500) : error);
+                failedEvents.incrementAndGet();
+                if (attempts >= maxAttempts) {
+                    event.setDeadLetteredAt(now);
+                    event.setNextAttemptAt(null);
+                    deadLetteredEvents.incrementAndGet();
+                    logger.error("文档 {} 的索引事件 {} 已失败 {} 次，标记为死信: {}",
+                            event.getDocumentId(), event.getId(), attempts, error);
+                } else {
+                    event.setNextAttemptAt(now.plus(Duration.ofMillis(retryDelayMillis(attempts))));
+                }
+            } else {
+                event.setProcessedAt(now);
+                processedEvents.incrementAndGet();
+                lastLagMillis = Duration.between(event.getCreatedAt(), now).toMillis();
+            }
+        }
+        eventRepository.saveAll(events);
+        return events.size();
+    }
+
+    /**
+     * 第 attempts 次失败后的重试等待时间：retry-initial-delay-ms * 2^(attempts - 1)，不超过 retry-max-delay-ms
+     */
+    private long retryDelayMillis(int attempts) {
+        long delay = Math.max(1, retryInitialDelayMs);
+        for (int i = 1; i < attempts && delay < retryMaxDelayMs; i++) {
+            delay *= 2;
+        }
+        return Math.min(delay, Math.max(1, retryMaxDelayMs));
+    }
+
+    /**
+     * 切分并向量化文档（所有文档的片段合并为批量请求）
+     */
+    private List<DocumentChunks> embedDocuments(List<Document> documents) {
+        if (documents.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<List<String>> parts = new ArrayList<>(documents.size());
+        List<String> texts = new ArrayList<>();
+        for (Document document : documents) {
+            List<String> split = chunker.split(document.getContent());
+            parts.add(split);
+            for (String part : split) {
+                // 标题一起向量化，片段脱离全文后仍能与问题中的主题匹配
+                texts.add(titleOf(document) + "\n" + part);
+            }
+        }
+        List<float[]> vectors = texts.isEmpty() ? Collections.emptyList() : agentRouter.embedBatch(texts).block();
+
+        List<DocumentChunks> embedded = new ArrayList<>(documents.size());
+        int offset = 0;
+        for (int d = 0; d < documents.size(); d++) {
+            Document document = documents.get(d);
+            List<Chunk> chunks = new ArrayList<>(parts.get(d).size());
+            for (int i = 0; i < parts.get(d).size(); i++) {
+                chunks.add(new Chunk(i, titleOf(document), parts.get(d).get(i), vectors.get(offset + i)));
+            }
+            offset += chunks.size();
+            embedded.add(new DocumentChunks(document.getId(), sourceHash(document), chunks));
+        }
+        embeddedChunks.addAndGet(texts.size());
+        return embedded;
+    }
+
+    /**
+     * 在一个事务中替换和删除一批文档的片段，成功后递增片段索引版本号
+     */
+    private void applyChanges(List<DocumentChunks> upserts, Collection<Long> deletes) throws SQLException {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        store.applyChanges(upserts, deletes);
+        indexVersion.incrementAndGet();
+        indexedDocuments.addAndGet(upserts.size());
+        lastIndexedAt = System.currentTimeMillis();
+    }
+
+    private static String titleOf(Document document) {
+        return document.getTitle() != null ? document.getTitle() : "";
+    }
+
+    private static String sourceHash(Document document) {
+        return LocalVectorStore.hashOf(document.getTitle(), document.getContent());
+    }
+
+    /**
+     * 索引统计：backlog 为待处理事件数（含等待重试的事件），lagMillis 为最早的待处理事件已等待的时间，
+     * deadLetters 为重试次数用尽、需要人工处理的事件数
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("chunks", store != null ? store.size() : 0);
+        stats.put("indexVersion", indexVersion.get());
+        stats.put("backlog", eventRepository.countByProcessedAtIsNullAndDeadLetteredAtIsNull());
+        stats.put("lagMillis", eventRepository.findFirstByProcessedAtIsNullAndDeadLetteredAtIsNullOrderByIdAsc()
+                .map(event -> Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis())
+                .orElse(0L));
+        stats.put("lastLagMillis", lastLagMillis);
+        stats.put("deadLetters", eventRepository.countByProcessedAtIsNullAndDeadLetteredAtIsNotNull());
+        List<Map<String, Object>> recentDeadLetters = new ArrayList<>();
+        for (DocumentIndexEvent event : eventRepository.findTop10ByProcessedAtIsNullAndDeadLetteredAtIsNotNullOrderByIdDesc()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", event.getId());
+            item.put("documentId", event.getDocumentId());
+            item.put("attempts", event.getAttempts());
+            item.put("deadLetteredAt", event.getDeadLetteredAt());
+            item.put("lastError", event.getLastError());
+            recentDeadLetters.add(item);
+        }
+        stats.put("recentDeadLetters", recentDeadLetters);
+        stats.put("processedEvents", processedEvents.get());
+        stats.put("failedEvents", failedEvents.get());
+        stats.put("deadLetteredEvents", deadLetteredEvents.get());
+        stats.put("indexedDocuments", indexedDocuments.get());
+        stats.put("embeddedChunks", embeddedChunks.get());
+        stats.put("lastIndexedAt", lastIndexedAt);
+        return stats;
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (store != null) {
+            try {
+                store.close();
+            } catch (SQLException e) {
+                logger.warn("关闭文档片段向量库失败: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.qa.service;
+
+import com.example.qa.router.AgentRouter;
+import com.example.vector.DocumentChunkStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 文档检索服务
+ * 按问题向量检索最相关的文档片段；片段索引由 DocumentIndexService 在后台根据文档变更增量维护
+ *
+ * 问题向量优先复用路由时已计算的向量：调用方把 RoutingDecision 的查询向量写入 Reactor Context（QUERY_VECTOR），
+ * 其次使用内存缓存中的向量；两者都没有时（如由关键词或路由决策缓存命中而未计算向量）才单独计算，
+ * 这部分开销单独计入统计（queryEmbeds），不会混在路由的统计中
+ */
+@Service
+public class DocumentRetrievalService {
+
+    /**
+     * Reactor Context 中路由查询向量（float[]）的键
+     */
+    public static final String QUERY_VECTOR = "qa.retrieval.query-vector";
+
+    @Autowired
+    private DocumentIndexService documentIndexService;
+
+    @Autowired
+    private AgentRouter agentRouter;
+
+    // MMR 相关性权重：1.0 等价于普通 top-K，越小越排斥与已选片段相似的片段（如相邻的重叠片段）
+    @Value("${qa.retrieval.mmr-lambda:0.7}")
+    private double mmrLambda;
+
+    // MMR 候选池大小，小于 top-K 时按 top-K 计
+    @Value("${qa.retrieval.fetch-k:20}")
+    private int fetchK;
+
+    private final AtomicLong routingVectorReuses = new AtomicLong();
+    private final AtomicLong cachedVectorHits = new AtomicLong();
+    private final AtomicLong queryEmbeds = new AtomicLong();
+    private final AtomicLong prefetchEmbeds = new AtomicLong();
+
+    /**
+     * 检索与问题最相关、彼此不重复的片段（MMR，按选中顺序，相关度最高的片段在前）
+     *
+     * @param topK 最多返回的片段数
+     * @param minSimilarity 最低相似度，低于该值的片段不返回
+     */
+    public Mono<List<DocumentChunkStore.Result>> retrieve(String question, int topK, double minSimilarity) {
+        // 片段扫描是 CPU 密集操作，放到路由器的检索调度器上，不在完成 embedding 请求的网络线程上执行
+        return Mono.deferContextual(context -> queryVector(question, context.getOrDefault(QUERY_VECTOR, null)))
+                .flatMap(vector -> Mono.fromCallable(
+                                () -> documentIndexService.query(vector, topK, fetchK, mmrLambda, minSimilarity))
+                        .subscribeOn(agentRouter.getSearchScheduler()));
+    }
+
+    /**
+     * 预取检索所需的问题向量：路由已计算向量或内存缓存中已有时无需处理，
+     * 否则按预取方式计算（只写入内存缓存），正式提问时 retrieve 直接命中缓存，不计入 queryEmbeds
+     */
+    public Mono<Void> prefetch(String question, float[] routingVector) {
+        if (routingVector != null || agentRouter.getCachedEmbedding(question) != null) {
+            return Mono.empty();
+        }
+        prefetchEmbeds.incrementAndGet();
+        return agentRouter.prefetchEmbedding(question).then();
+    }
+
+    private Mono<float[]> queryVector(String question, float[] routingVector) {
+        if (routingVector != null) {
+            routingVectorReuses.incrementAndGet();
+            return Mono.just(routingVector);
+        }
+        float[] cached = agentRouter.getCachedEmbedding(question);
+        if (cached != null) {
+            cachedVectorHits.incrementAndGet();
+            return Mono.just(cached);
+        }
+        queryEmbeds.incrementAndGet();
+        return agentRouter.embed(question);
+    }
+
+    /**
+     * 片段索引版本号，索引器替换或删除片段后递增
+     */
+    public long getIndexVersion() {
+        return documentIndexService.getIndexVersion();
+    }
+
+    /**
+     * 索引统计以及问题向量的来源：routingVectorReuses 复用路由向量，cachedVectorHits 命中内存缓存，
+     * queryEmbeds 为检索单独发起的向量计算（可能命中磁盘缓存，否则调用 embeddings 接口），
+     * prefetchEmbeds 为输入预取时提前计算的向量
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(documentIndexService.getStats());
+        stats.put("routingVectorReuses", routingVectorReuses.get());
+        stats.put("cachedVectorHits", cachedVectorHits.get());
+        stats.put("queryEmbeds", queryEmbeds.get());
+        stats.put("prefetchEmbeds", prefetchEmbeds.get());
+        return stats;
+    }
+}
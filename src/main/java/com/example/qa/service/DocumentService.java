@@ -1,16 +1,22 @@
 package com.example.qa.service;
 
 import com.example.qa.entity.Document;
+import com.example.qa.entity.DocumentIndexEvent;
+import com.example.qa.repository.DocumentIndexEventRepository;
 import com.example.qa.repository.DocumentRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * 文档服务层
@@ -22,6 +28,15 @@ public class DocumentService {
     
     @Autowired
     private DocumentRepository documentRepository;
+
+    @Autowired
+    private DocumentIndexEventRepository documentIndexEventRepository;
+
+    /**
+     * 文档数据版本号，每次写操作提交后加一，用于判断全部文档的上下文快照是否过期，以及唤醒后台索引器
+     * （rag 模式下回答缓存使用的是片段索引版本号，见 DocumentIndexService.getIndexVersion）
+     */
+    private final AtomicLong dataVersion = new AtomicLong();
     
     /**
      * 创建新文档
@@ -31,7 +46,9 @@ public class DocumentService {
             document.setCreatedAt(LocalDateTime.now());
         }
         document.setIsActive(true);
-        return documentRepository.save(document);
+        Document saved = documentRepository.save(document);
+        recordChange(saved.getId(), DocumentIndexEvent.UPSERT);
+        return saved;
     }
     
     /**
@@ -159,7 +176,9 @@ public class DocumentService {
             // 设置更新时间
             document.setUpdatedAt(LocalDateTime.now());
             
-            return documentRepository.save(document);
+            Document saved = documentRepository.save(document);
+            recordChange(id, DocumentIndexEvent.UPSERT);
+            return saved;
         }
         throw new RuntimeException("Document not found with id: " + id);
     }
@@ -169,6 +188,9 @@ public class DocumentService {
      */
     public boolean softDeleteDocument(Long id) {
         int updatedRows = documentRepository.softDeleteById(id, LocalDateTime.now());
+        if (updatedRows > 0) {
+            recordChange(id, DocumentIndexEvent.DELETE);
+        }
         return updatedRows > 0;
     }
     
@@ -177,6 +199,9 @@ public class DocumentService {
      */
     public boolean restoreDocument(Long id) {
         int updatedRows = documentRepository.restoreById(id, LocalDateTime.now());
+        if (updatedRows > 0) {
+            recordChange(id, DocumentIndexEvent.UPSERT);
+        }
         return updatedRows > 0;
     }
     
@@ -186,6 +211,7 @@ public class DocumentService {
     public boolean deleteDocument(Long id) {
         if (documentRepository.existsById(id)) {
             documentRepository.deleteById(id);
+            recordChange(id, DocumentIndexEvent.DELETE);
             return true;
         }
         return false;
@@ -238,4 +264,36 @@ public class DocumentService {
     public long getActiveDocumentCount() {
         return documentRepository.findByIsActiveTrue().size();
     }
+
+    /**
+     * 获取文档数据版本号
+     */
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public long getDataVersion() {
+        return dataVersion.get();
+    }
+
+    /**
+     * 记录文档变更：在同一事务中写入索引事件（发件箱），并在提交后递增数据版本号
+     */
+    private void recordChange(Long documentId, String operation) {
+        documentIndexEventRepository.save(new DocumentIndexEvent(documentId, operation));
+        markDataChanged();
+    }
+
+    /**
+     * 在事务提交后递增数据版本号；回滚的写操作不会使缓存失效
+     */
+    private void markDataChanged() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    dataVersion.incrementAndGet();
+                }
+            });
+        } else {
+            dataVersion.incrementAndGet();
+        }
+    }
 }
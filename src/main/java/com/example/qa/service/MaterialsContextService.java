@@ -1,10 +1,24 @@
 package com.example.qa.service;
 
 import com.example.qa.entity.Document;
+import com.example.qa.prompt.ContextChunk;
+import com.example.qa.router.RoutingDecision;
+import com.example.vector.DocumentChunkStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 
 /**
  * 材料上下文服务
@@ -13,42 +27,156 @@ import java.util.List;
 @Service
 public class MaterialsContextService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MaterialsContextService.class);
+
     @Autowired
     private DocumentService documentService;
 
+    @Autowired
+    private DocumentRetrievalService documentRetrievalService;
+
+    @Autowired
+    private Environment environment;
+
+    // 上下文模式：rag 只使用与问题相关的文档片段，all 使用全部文档
+    @Value("${qa.retrieval.mode:rag}")
+    private String retrievalMode;
+
+    // 默认检索片段数与最低相似度，可通过 qa.retrieval.handlers.<agentCode>.top-k / min-similarity 按处理器覆盖
+    @Value("${qa.retrieval.top-k:5}")
+    private int defaultTopK;
+
+    @Value("${qa.retrieval.min-similarity:0.3}")
+    private double defaultMinSimilarity;
+
+    // 当前数据版本的上下文快照，文档变更后在下一次读取时整体替换
+    private volatile ContextSnapshot snapshot;
+
+    /**
+     * 获取上下文版本号，基于材料上下文生成的结果（如缓存的回答）应与该版本号一起保存
+     * rag 模式下为片段索引版本号：文档变更后要等后台索引器替换了片段才递增，
+     * 在此之前检索到的仍是旧片段，生成的回答也记在旧版本下；
+     * all 模式下为文档数据版本号，文档增删改提交后递增，与 getContextSnapshot().getVersion() 一致
+     */
+    public long getContextVersion() {
+        if ("rag".equalsIgnoreCase(retrievalMode)) {
+            return documentRetrievalService.getIndexVersion();
+        }
+        return documentService.getDataVersion();
+    }
+
+    /**
+     * 获取回答问题所用的材料上下文片段，由 PromptService 按 token 预算组装进提示词
+     * rag 模式下只包含与问题最相关的文档片段（按相关度降序，score 为相似度）；
+     * all 模式或检索失败（如向量接口不可用）时为全部文档，每个文档一段，score 均为 0
+     * @param question 用户问题
+     * @param agentCode 处理器的 Agent Code，用于读取该处理器的检索配置
+     */
+    public Mono<List<ContextChunk>> getContextChunks(String question, String agentCode) {
+        Mono<List<ContextChunk>> allDocuments = Mono.fromCallable(() -> getContextSnapshot().getDocumentChunks())
+                .subscribeOn(Schedulers.boundedElastic());
+        if (!"rag".equalsIgnoreCase(retrievalMode)) {
+            return allDocuments;
+        }
+
+        int topK = environment.getProperty("qa.retrieval.handlers." + agentCode + ".top-k",
+                Integer.class, defaultTopK);
+        double minSimilarity = environment.getProperty("qa.retrieval.handlers." + agentCode + ".min-similarity",
+                Double.class, defaultMinSimilarity);
+        return documentRetrievalService.retrieve(question, topK, minSimilarity)
+                .map(this::toContextChunks)
+                .onErrorResume(e -> {
+                    logger.warn("检索相关文档失败，使用全部文档作为上下文: {}", e.getMessage());
+                    return allDocuments;
+                });
+    }
+
+    /**
+     * 输入预取：提前准备 getContextChunks 检索所需的问题向量
+     * 只在 rag 模式且路由到具体 Agent 时需要；路由已计算出向量时检索直接复用，无需额外处理
+     */
+    public Mono<Void> prefetchContext(String question, RoutingDecision decision) {
+        if (!"rag".equalsIgnoreCase(retrievalMode) || decision.isFallback()) {
+            return Mono.empty();
+        }
+        return documentRetrievalService.prefetch(question, decision.getQueryVector());
+    }
+
+    private List<ContextChunk> toContextChunks(List<DocumentChunkStore.Result> results) {
+        List<ContextChunk> chunks = new ArrayList<>(results.size());
+        for (DocumentChunkStore.Result result : results) {
+            String header = "=== " + result.title + " ===\n" + "内容:\n";
+            chunks.add(new ContextChunk(result.documentId, result.chunkIndex, result.title, header, result.content,
+                    result.sim));
+        }
+        return chunks;
+    }
+
+    /**
+     * 获取当前数据版本的上下文快照；版本未变化时直接返回已有快照，只有文档变更后的第一次调用会重新构建
+     */
+    public ContextSnapshot getContextSnapshot() {
+        long version = documentService.getDataVersion();
+        ContextSnapshot current = snapshot;
+        if (current != null && current.getVersion() == version) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.getVersion() != version) {
+                // 先读版本号再读文档：构建期间发生的写操作会使版本号变化，下一次读取时重新构建
+                List<ContextChunk> documents = toDocumentChunks(documentService.getAllActiveDocuments());
+                current = new ContextSnapshot(version, documents, formatAllDocuments(documents),
+                        this::formatCategory);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
     /**
      * 获取所有文档作为材料上下文
      * @return 格式化的文档内容字符串
      */
     public String getAllDocumentsAsContext() {
         try {
-            List<Document> documents = documentService.getAllActiveDocuments();
-            
-            if (documents.isEmpty()) {
-                return "当前数据库中没有材料文档。";
-            }
-            
-            StringBuilder context = new StringBuilder();
-            context.append("以下是数据库中的所有材料文档，可以作为回答问题的参考：\n\n");
-            
-            for (Document doc : documents) {
-                context.append("=== ").append(doc.getTitle()).append(" ===\n");
-                if (doc.getCategory() != null && !doc.getCategory().isEmpty()) {
-                    context.append("分类: ").append(doc.getCategory()).append("\n");
-                }
-                if (doc.getAuthor() != null && !doc.getAuthor().isEmpty()) {
-                    context.append("作者: ").append(doc.getAuthor()).append("\n");
-                }
-                context.append("内容:\n").append(doc.getContent()).append("\n\n");
-            }
-            
-            return context.toString();
-            
+            return getContextSnapshot().getAllDocuments();
         } catch (Exception e) {
             return "获取材料文档时发生错误：" + e.getMessage();
         }
     }
 
+    private String formatAllDocuments(List<ContextChunk> documents) {
+        if (documents.isEmpty()) {
+            return "当前数据库中没有材料文档。";
+        }
+
+        StringBuilder context = new StringBuilder();
+        context.append("以下是数据库中的所有材料文档，可以作为回答问题的参考：\n\n");
+        for (ContextChunk doc : documents) {
+            context.append(doc.getText());
+        }
+        return context.toString();
+    }
+
+    // 每个文档一段
+    private List<ContextChunk> toDocumentChunks(List<Document> documents) {
+        List<ContextChunk> chunks = new ArrayList<>();
+        for (Document doc : documents) {
+            StringBuilder header = new StringBuilder();
+            header.append("=== ").append(doc.getTitle()).append(" ===\n");
+            if (doc.getCategory() != null && !doc.getCategory().isEmpty()) {
+                header.append("分类: ").append(doc.getCategory()).append("\n");
+            }
+            if (doc.getAuthor() != null && !doc.getAuthor().isEmpty()) {
+                header.append("作者: ").append(doc.getAuthor()).append("\n");
+            }
+            header.append("内容:\n");
+            chunks.add(new ContextChunk(doc.getId(), 0, doc.getTitle(), header.toString(), doc.getContent(), 0));
+        }
+        return Collections.unmodifiableList(chunks);
+    }
+
     /**
      * 根据关键词搜索相关文档作为上下文
      * @param keyword 搜索关键词
@@ -81,33 +209,36 @@ public class MaterialsContextService {
     }
 
     /**
-     * 根据分类获取文档作为上下文
+     * 根据分类获取文档作为上下文（在当前上下文快照中按分类缓存）
      * @param category 文档分类
      * @return 格式化的分类文档内容字符串
      */
     public String getDocumentsByCategoryAsContext(String category) {
         try {
-            List<Document> documents = documentService.getDocumentsByCategory(category);
-            
-            if (documents.isEmpty()) {
-                return "没有找到分类为 '" + category + "' 的材料文档。";
-            }
-            
-            StringBuilder context = new StringBuilder();
-            context.append("以下是分类为 '").append(category).append("' 的材料文档：\n\n");
-            
-            for (Document doc : documents) {
-                context.append("=== ").append(doc.getTitle()).append(" ===\n");
-                context.append("内容:\n").append(doc.getContent()).append("\n\n");
-            }
-            
-            return context.toString();
-            
+            return getContextSnapshot().getCategory(category);
         } catch (Exception e) {
             return "获取分类材料文档时发生错误：" + e.getMessage();
         }
     }
 
+    private String formatCategory(String category) {
+        List<Document> documents = documentService.getDocumentsByCategory(category);
+
+        if (documents.isEmpty()) {
+            return "没有找到分类为 '" + category + "' 的材料文档。";
+        }
+
+        StringBuilder context = new StringBuilder();
+        context.append("以下是分类为 '").append(category).append("' 的材料文档：\n\n");
+
+        for (Document doc : documents) {
+            context.append("=== ").append(doc.getTitle()).append(" ===\n");
+            context.append("内容:\n").append(doc.getContent()).append("\n\n");
+        }
+
+        return context.toString();
+    }
+
     /**
      * 获取材料文档统计信息
      * @return 统计信息字符串
@@ -136,4 +267,43 @@ public class MaterialsContextService {
             return "获取材料文档统计信息时发生错误：" + e.getMessage();
         }
     }
+
+    /**
+     * 上下文快照：某个数据版本下格式化好的全部文档上下文，以及按需构建的分类上下文
+     * 快照中的内容在该版本内不再变化，可以直接共享
+     */
+    public static final class ContextSnapshot {
+        private final long version;
+        private final List<ContextChunk> documentChunks;
+        private final String allDocuments;
+        private final Function<String, String> categoryBuilder;
+        private final Map<String, String> categories = new ConcurrentHashMap<>();
+
+        ContextSnapshot(long version, List<ContextChunk> documentChunks, String allDocuments,
+                        Function<String, String> categoryBuilder) {
+            this.version = version;
+            this.documentChunks = documentChunks;
+            this.allDocuments = allDocuments;
+            this.categoryBuilder = categoryBuilder;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * 全部文档，每个文档一段（不可修改）
+         */
+        public List<ContextChunk> getDocumentChunks() {
+            return documentChunks;
+        }
+
+        public String getAllDocuments() {
+            return allDocuments;
+        }
+
+        public String getCategory(String category) {
+            return categories.computeIfAbsent(category, categoryBuilder);
+        }
+    }
 }
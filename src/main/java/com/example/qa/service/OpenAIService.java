@@ -1,5 +1,7 @@
 package com.example.qa.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
@@ -12,6 +14,9 @@ import org.slf4j.LoggerFactory;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * OpenAI服务类
@@ -30,7 +35,21 @@ public class OpenAIService {
     @Value("${openai.model}")
     private String model;
 
+    // 回答的最大 token 数；PromptService 会按上下文窗口剩余空间传入更小的值
+    @Value("${openai.max-tokens:1000}")
+    private int maxTokens;
+
+    // 流式请求是否带 stream_options.include_usage（部分兼容 OpenAI 的服务不支持该参数时关闭）
+    @Value("${openai.stream-usage:true}")
+    private boolean streamUsage;
+
     private final WebClient webClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final AtomicLong usageResponses = new AtomicLong();
+    private final AtomicLong usagePromptTokens = new AtomicLong();
+    private final AtomicLong usageCachedTokens = new AtomicLong();
+    private final AtomicLong usageCompletionTokens = new AtomicLong();
 
     public OpenAIService() {
         this.webClient = WebClient.builder()
@@ -42,17 +61,41 @@ public class OpenAIService {
      * 流式调用OpenAI API
      */
     public Flux<String> streamChat(String question) {
+        return streamChat(question, maxTokens);
+    }
+
+    /**
+     * 流式调用OpenAI API
+     * @param maxTokens 回答的最大 token 数
+     */
+    public Flux<String> streamChat(String question, int maxTokens) {
+        return streamMessages(Arrays.asList(message("user", question)), maxTokens);
+    }
+
+    /**
+     * 流式调用OpenAI API，系统消息和用户消息分开发送
+     * 系统消息放固定说明和材料上下文，用户消息只放问题，使不同问题的请求共享尽可能长的前缀
+     * @param maxTokens 回答的最大 token 数
+     */
+    public Flux<String> streamChat(String systemMessage, String userMessage, int maxTokens) {
+        return streamMessages(Arrays.asList(message("system", systemMessage), message("user", userMessage)),
+                maxTokens);
+    }
+
+    private Flux<String> streamMessages(List<Map<String, String>> messages, int maxTokens) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
-        
-        Map<String, String> message = new HashMap<>();
-        message.put("role", "user");
-        message.put("content", question);
-        requestBody.put("messages", Arrays.asList(message));
+        requestBody.put("messages", messages);
         
         requestBody.put("stream", true);
         requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
+        requestBody.put("max_tokens", maxTokens);
+        if (streamUsage) {
+            // 流结束前额外返回一个只包含 usage 的数据块
+            Map<String, Object> streamOptions = new HashMap<>();
+            streamOptions.put("include_usage", true);
+            requestBody.put("stream_options", streamOptions);
+        }
 
         logger.info("发送流式请求到: {}", baseUrl + "/chat/completions");
         logger.info("请求体: {}", requestBody);
@@ -65,6 +108,7 @@ public class OpenAIService {
                 .retrieve()
                 .bodyToFlux(String.class)
                 .doOnNext(chunk -> logger.info("收到流式数据块: {}", chunk))
+                .doOnNext(this::recordStreamUsage)
                 .map(this::processSSEResponse)
                 .filter(response -> response != null && !response.trim().isEmpty());
     }
@@ -73,16 +117,33 @@ public class OpenAIService {
      * 普通调用OpenAI API
      */
     public String chat(String question) {
+        return chat(question, maxTokens);
+    }
+
+    /**
+     * 普通调用OpenAI API
+     * @param maxTokens 回答的最大 token 数
+     */
+    public String chat(String question, int maxTokens) {
+        return chatMessages(Arrays.asList(message("user", question)), maxTokens);
+    }
+
+    /**
+     * 普通调用OpenAI API，系统消息和用户消息分开发送
+     * @param maxTokens 回答的最大 token 数
+     */
+    public String chat(String systemMessage, String userMessage, int maxTokens) {
+        return chatMessages(Arrays.asList(message("system", systemMessage), message("user", userMessage)),
+                maxTokens);
+    }
+
+    private String chatMessages(List<Map<String, String>> messages, int maxTokens) {
         Map<String, Object> requestBody = new HashMap<>();
         requestBody.put("model", model);
-        
-        Map<String, String> message = new HashMap<>();
-        message.put("role", "user");
-        message.put("content", question);
-        requestBody.put("messages", Arrays.asList(message));
+        requestBody.put("messages", messages);
         
         requestBody.put("temperature", 0.7);
-        requestBody.put("max_tokens", 1000);
+        requestBody.put("max_tokens", maxTokens);
 
         logger.info("发送请求到: {}", baseUrl + "/chat/completions");
         logger.info("请求体: {}", requestBody);
@@ -99,6 +160,9 @@ public class OpenAIService {
                     .block();
 
             logger.info("收到响应: {}", response);
+            if (response != null && response.get("usage") != null) {
+                recordUsage(objectMapper.valueToTree(response.get("usage")));
+            }
 
             if (response != null && response.containsKey("choices")) {
                 Object choicesObj = response.get("choices");
@@ -126,6 +190,67 @@ public class OpenAIService {
         }
     }
 
+    private static Map<String, String> message(String role, String content) {
+        Map<String, String> message = new HashMap<>();
+        message.put("role", role);
+        message.put("content", content);
+        return message;
+    }
+
+    /**
+     * 记录流式响应中 usage 数据块的用量
+     */
+    private void recordStreamUsage(String chunk) {
+        if (!chunk.contains("\"usage\"")) {
+            return;
+        }
+        for (String line : chunk.split("\n")) {
+            String data = line.trim();
+            if (data.startsWith("data:")) {
+                data = data.substring(5).trim();
+            }
+            if (!data.startsWith("{")) {
+                continue;
+            }
+            try {
+                JsonNode usage = objectMapper.readTree(data).path("usage");
+                if (usage.isObject()) {
+                    recordUsage(usage);
+                }
+            } catch (Exception e) {
+                logger.warn("解析 usage 数据失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 记录一次响应的 token 用量；cached_tokens 为服务商提示词缓存命中的 token 数
+     */
+    private void recordUsage(JsonNode usage) {
+        long prompt = usage.path("prompt_tokens").asLong();
+        long completion = usage.path("completion_tokens").asLong();
+        long cached = usage.path("prompt_tokens_details").path("cached_tokens").asLong();
+        usageResponses.incrementAndGet();
+        usagePromptTokens.addAndGet(prompt);
+        usageCompletionTokens.addAndGet(completion);
+        usageCachedTokens.addAndGet(cached);
+        logger.info("OpenAI 用量: 提示词 {} tokens（缓存命中 {}），回答 {} tokens", prompt, cached, completion);
+    }
+
+    /**
+     * 服务商返回的累计用量，cacheHitRate 为缓存命中的提示词 token 占比
+     */
+    public Map<String, Object> getUsageStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long prompt = usagePromptTokens.get();
+        stats.put("responses", usageResponses.get());
+        stats.put("promptTokens", prompt);
+        stats.put("cachedTokens", usageCachedTokens.get());
+        stats.put("completionTokens", usageCompletionTokens.get());
+        stats.put("cacheHitRate", prompt == 0 ? 0.0 : (double) usageCachedTokens.get() / prompt);
+        return stats;
+    }
+
     /**
      * 处理SSE响应，提取内容并重新格式化为正确的SSE格式
      */
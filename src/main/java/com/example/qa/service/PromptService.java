@@ -0,0 +1,239 @@
+package com.example.qa.service;
+
+import com.example.qa.prompt.AssembledPrompt;
+import com.example.qa.prompt.BpeTokenizer;
+import com.example.qa.prompt.ContextChunk;
+import com.example.qa.prompt.ContextCompressor;
+import com.example.qa.prompt.PromptAssembler;
+import com.example.qa.prompt.PromptTemplate;
+import com.example.qa.prompt.TokenCounter;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 提示词服务
+ * 获取与问题相关的材料上下文，压缩为与问题最相关的句子后，按当前模型的上下文窗口和回答预留 token 数组装提示词，
+ * 并记录每次请求的提示词 / 回答 token 估计
+ */
+@Service
+public class PromptService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PromptService.class);
+
+    private static final String DEFAULT_VOCAB = "cl100k_base.tiktoken";
+
+    // 常用模型的上下文窗口，可通过 qa.prompt.models.<model>.context-window 覆盖
+    private static final Map<String, Integer> CONTEXT_WINDOWS = new LinkedHashMap<>();
+
+    static {
+        CONTEXT_WINDOWS.put("gpt-4o", 128000);
+        CONTEXT_WINDOWS.put("gpt-4-turbo", 128000);
+        CONTEXT_WINDOWS.put("gpt-4.1", 1047576);
+        CONTEXT_WINDOWS.put("gpt-4-32k", 32768);
+        CONTEXT_WINDOWS.put("gpt-4", 8192);
+        CONTEXT_WINDOWS.put("gpt-3.5-turbo", 16385);
+    }
+
+    @Value("${openai.model:gpt-3.5-turbo}")
+    private String model;
+
+    // 为回答预留的 token 数（请求的 max_tokens 上限）
+    @Value("${openai.max-tokens:1000}")
+    private int maxTokens;
+
+    // 未知模型的上下文窗口
+    @Value("${qa.prompt.context-window:8192}")
+    private int defaultContextWindow;
+
+    // BPE 词表（tiktoken 格式）：为空时读取 classpath 中的 cl100k_base.tiktoken；找不到词表时按字符估算
+    @Value("${qa.tokenizer.vocab-path:}")
+    private String vocabPath;
+
+    @Value("${qa.tokenizer.cache-size:10000}")
+    private int cacheSize;
+
+    // 上下文压缩：组装提示词前只保留与问题最相关的句子
+    @Value("${qa.compression.enabled:true}")
+    private boolean compressionEnabled;
+
+    // 压缩后材料正文的 token 上限
+    @Value("${qa.compression.max-tokens:1500}")
+    private int compressionMaxTokens;
+
+    @Value("${qa.compression.lexical-weight:0.4}")
+    private double lexicalWeight;
+
+    @Value("${qa.compression.embedding-weight:0.4}")
+    private double embeddingWeight;
+
+    @Value("${qa.compression.retrieval-weight:0.2}")
+    private double retrievalWeight;
+
+    // SimHash 汉明距离不超过该值的句子视为近似重复
+    @Value("${qa.compression.duplicate-distance:3}")
+    private int duplicateDistance;
+
+    @Autowired
+    private MaterialsContextService materialsContextService;
+
+    @Autowired
+    private Environment environment;
+
+    private TokenCounter tokenCounter;
+    private PromptAssembler assembler;
+    private ContextCompressor compressor;
+    private int contextWindow;
+    // 词表来源与加载结果；没有精确分词器时说明原因，随统计信息一起返回
+    private String vocabulary;
+    private String tokenizerWarning;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong completionTokens = new AtomicLong();
+    private final AtomicLong droppedChunks = new AtomicLong();
+    private final AtomicLong truncatedPrompts = new AtomicLong();
+    private final AtomicLong compressionInputTokens = new AtomicLong();
+    private final AtomicLong compressionOutputTokens = new AtomicLong();
+    private final AtomicLong duplicateSentences = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        this.tokenCounter = new TokenCounter(loadTokenizer(), cacheSize);
+        this.assembler = new PromptAssembler(tokenCounter);
+        this.compressor = new ContextCompressor(tokenCounter, lexicalWeight, embeddingWeight, retrievalWeight,
+                duplicateDistance);
+        this.contextWindow = environment.getProperty("qa.prompt.models." + model + ".context-window",
+                Integer.class, lookupContextWindow(model));
+        logger.info("提示词预算: 模型 {}，上下文窗口 {} tokens，回答预留 {} tokens，{}计数",
+                model, contextWindow, maxTokens, tokenCounter.isExact() ? "BPE 精确" : "按字符估算");
+    }
+
+    private BpeTokenizer loadTokenizer() {
+        Resource resource = (vocabPath == null || vocabPath.trim().isEmpty())
+                ? new ClassPathResource(DEFAULT_VOCAB)
+                : new FileSystemResource(vocabPath.trim());
+        vocabulary = resource.getDescription();
+        if (!resource.exists()) {
+            tokenizerWarning = "未找到 BPE 词表 " + vocabulary + "，token 数按字符估算（与 cl100k 不一致）；"
+                    + "下载 cl100k_base.tiktoken 放到 classpath 或设置 qa.tokenizer.vocab-path";
+            logger.warn(tokenizerWarning);
+            return null;
+        }
+        try (InputStream in = resource.getInputStream()) {
+            BpeTokenizer tokenizer = BpeTokenizer.load(in);
+            logger.info("已加载 BPE 词表 {}（{} 个 token）", vocabulary, tokenizer.vocabularySize());
+            return tokenizer;
+        } catch (Exception e) {
+            tokenizerWarning = "加载 BPE 词表 " + vocabulary + " 失败，token 数按字符估算（与 cl100k 不一致）: "
+                    + e.getMessage();
+            logger.warn(tokenizerWarning);
+            return null;
+        }
+    }
+
+    // 按模型名前缀匹配（如 gpt-4o-mini 匹配 gpt-4o），匹配不到时使用默认窗口
+    private int lookupContextWindow(String model) {
+        if (model != null) {
+            for (Map.Entry<String, Integer> entry : CONTEXT_WINDOWS.entrySet()) {
+                if (model.startsWith(entry.getKey())) {
+                    return entry.getValue();
+                }
+            }
+        }
+        return defaultContextWindow;
+    }
+
+    /**
+     * 按模板组装提示词：系统消息为固定说明 + 材料上下文，用户消息为问题；
+     * 上下文先压缩为与问题最相关的句子，再按预算裁剪
+     */
+    public Mono<AssembledPrompt> buildPrompt(String question, String agentCode, PromptTemplate template) {
+        return materialsContextService.getContextChunks(question, agentCode)
+                .map(chunks -> compressionEnabled ? compress(question, agentCode, chunks) : chunks)
+                .map(chunks -> {
+                    AssembledPrompt prompt = assembler.assemble(template.getSystemPreamble(), chunks,
+                            template.userMessage(question), contextWindow, maxTokens);
+                    if (prompt.getCompletionTokens() <= 0) {
+                        throw new IllegalStateException("问题过长，超出模型的上下文窗口（" + contextWindow + " tokens）");
+                    }
+                    record(agentCode, prompt);
+                    return prompt;
+                });
+    }
+
+    private List<ContextChunk> compress(String question, String agentCode, List<ContextChunk> chunks) {
+        ContextCompressor.Result result = compressor.compress(question, chunks, compressionMaxTokens);
+        compressionInputTokens.addAndGet(result.getInputTokens());
+        compressionOutputTokens.addAndGet(result.getOutputTokens());
+        duplicateSentences.addAndGet(result.getDuplicates());
+        logger.info("上下文压缩 [{}]: 正文 {} -> {} tokens（压缩比 {}），{} 个句子中去掉重复 {} 个",
+                agentCode, result.getInputTokens(), result.getOutputTokens(),
+                String.format("%.2f", result.getRatio()), result.getSentences(), result.getDuplicates());
+        return result.getChunks();
+    }
+
+    private void record(String agentCode, AssembledPrompt prompt) {
+        requests.incrementAndGet();
+        promptTokens.addAndGet(prompt.getPromptTokens());
+        completionTokens.addAndGet(prompt.getCompletionTokens());
+        droppedChunks.addAndGet(prompt.getDroppedChunks());
+        if (prompt.isTruncated()) {
+            truncatedPrompts.incrementAndGet();
+        }
+        logger.info("提示词估算 [{}]: 提示词 {} tokens，回答最多 {} tokens，上下文片段 {} 个（丢弃 {} 个{}）",
+                agentCode, prompt.getPromptTokens(), prompt.getCompletionTokens(), prompt.getIncludedChunks(),
+                prompt.getDroppedChunks(), prompt.isTruncated() ? "，已截断" : "");
+    }
+
+    /**
+     * 文本的 token 数
+     */
+    public int countTokens(String text) {
+        return tokenCounter.count(text);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("contextWindow", contextWindow);
+        stats.put("maxTokens", maxTokens);
+        stats.put("exactTokenizer", tokenCounter.isExact());
+        stats.put("tokenizer", tokenCounter.isExact() ? "cl100k_base" : "estimate");
+        stats.put("vocabulary", vocabulary);
+        if (tokenizerWarning != null) {
+            stats.put("tokenizerWarning", tokenizerWarning);
+        }
+        stats.put("requests", requests.get());
+        stats.put("promptTokens", promptTokens.get());
+        stats.put("completionTokens", completionTokens.get());
+        stats.put("avgPromptTokens", requests.get() == 0 ? 0 : promptTokens.get() / requests.get());
+        stats.put("droppedChunks", droppedChunks.get());
+        stats.put("truncatedPrompts", truncatedPrompts.get());
+        stats.put("compressionEnabled", compressionEnabled);
+        stats.put("compressionInputTokens", compressionInputTokens.get());
+        stats.put("compressionOutputTokens", compressionOutputTokens.get());
+        // 累计压缩比：压缩后 / 压缩前的正文 token 数
+        stats.put("compressionRatio", compressionInputTokens.get() == 0 ? 1.0
+                : (double) compressionOutputTokens.get() / compressionInputTokens.get());
+        stats.put("duplicateSentences", duplicateSentences.get());
+        stats.put("tokenCacheSize", tokenCounter.size());
+        stats.put("tokenCacheHits", tokenCounter.getHits());
+        stats.put("tokenCacheMisses", tokenCounter.getMisses());
+        return stats;
+    }
+}
@@ -0,0 +1,241 @@
+package com.example.vector;
+
+import com.google.gson.Gson;
+
+import java.sql.*;
+import java.util.*;
+
+/**
+ * 文档片段向量库（基于 SQLite）
+ * 特点：
+ *  - 每个文档切分为若干片段，每个片段一行，记录所属文档 id、片段序号和向量
+ *  - 每行同时记录文档源文本的哈希，用于判断文档是否需要重新切分和向量化
+ *  - 以文档为单位替换或删除片段，一批文档的变更在一个事务中完成
+ *  - 向量常驻内存，变更提交后原子替换内存快照（只在构造时读取整张表）
+ */
+public class DocumentChunkStore {
+
+    private final Connection conn;
+    private final Gson gson = new Gson();
+
+    // 内存中的片段快照（构造时加载，每次变更后替换）
+    private volatile VectorSnapshot<Row> rows;
+
+    public DocumentChunkStore(String dbPath) throws SQLException {
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        initTable();
+        this.rows = readRows();
+    }
+
+    private void initTable() throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute("CREATE TABLE IF NOT EXISTS document_chunks (" +
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT, " +
+                    "document_id INTEGER NOT NULL, " +
+                    "chunk_index INTEGER NOT NULL, " +
+                    "source_hash TEXT, " +
+                    "title TEXT, " +
+                    "content TEXT, " +
+                    "embedding TEXT)");
+            stmt.execute("CREATE INDEX IF NOT EXISTS idx_document_chunks_document ON document_chunks(document_id)");
+        }
+    }
+
+    /**
+     * 用新的片段替换文档原有的全部片段
+     *
+     * @param sourceHash 文档源文本的哈希
+     */
+    public void replaceDocument(long documentId, String sourceHash, List<Chunk> chunks) throws SQLException {
+        applyChanges(Collections.singletonList(new DocumentChunks(documentId, sourceHash, chunks)),
+                Collections.emptyList());
+    }
+
+    /**
+     * 删除文档的全部片段
+     */
+    public void deleteDocuments(Collection<Long> documentIds) throws SQLException {
+        applyChanges(Collections.emptyList(), documentIds);
+    }
+
+    /**
+     * 批量替换和删除多个文档的片段：所有变更在一个事务中提交，提交后只替换一次内存快照
+     * （保留未变更文档的行，追加新片段，不重新读取整张表）
+     *
+     * @param upserts 需要替换片段的文档
+     * @param deletes 需要删除片段的文档 id
+     */
+    public synchronized void applyChanges(Collection<DocumentChunks> upserts, Collection<Long> deletes)
+            throws SQLException {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return;
+        }
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement delete = conn.prepareStatement("DELETE FROM document_chunks WHERE document_id = ?");
+             PreparedStatement insert = conn.prepareStatement(
+                     "INSERT INTO document_chunks (document_id, chunk_index, source_hash, title, content, embedding) " +
+                             "VALUES (?, ?, ?, ?, ?, ?)")) {
+            for (Long id : deletes) {
+                delete.setLong(1, id);
+                delete.addBatch();
+            }
+            for (DocumentChunks document : upserts) {
+                delete.setLong(1, document.documentId);
+                delete.addBatch();
+            }
+            delete.executeBatch();
+            for (DocumentChunks document : upserts) {
+                for (Chunk chunk : document.chunks) {
+                    insert.setLong(1, document.documentId);
+                    insert.setInt(2, chunk.chunkIndex);
+                    insert.setString(3, document.sourceHash);
+                    insert.setString(4, chunk.title);
+                    insert.setString(5, chunk.content);
+                    insert.setString(6, gson.toJson(chunk.embedding));
+                    insert.addBatch();
+                }
+            }
+            insert.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+
+        Set<Long> changed = new HashSet<>(deletes);
+        List<VectorSnapshot.Entry<Row>> added = new ArrayList<>();
+        for (DocumentChunks document : upserts) {
+            changed.add(document.documentId);
+            for (Chunk chunk : document.chunks) {
+                added.add(new VectorSnapshot.Entry<>(
+                        new Row(document.documentId, chunk.chunkIndex, chunk.title, chunk.content), chunk.embedding));
+            }
+        }
+        rows = rows.replace(row -> changed.contains(row.documentId), added);
+    }
+
+    /**
+     * 获取已索引文档的 document_id -> 源文本哈希
+     */
+    public synchronized Map<Long, String> listSourceHashes() throws SQLException {
+        Map<Long, String> hashes = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT DISTINCT document_id, source_hash FROM document_chunks")) {
+            while (rs.next()) {
+                hashes.put(rs.getLong("document_id"), rs.getString("source_hash"));
+            }
+        }
+        return hashes;
+    }
+
+    /**
+     * 查询与向量最相似的 K 个片段，相似度低于 minSimilarity 的片段不返回
+     */
+    public List<Result> queryTopK(float[] queryVec, int k, double minSimilarity) {
+        return toResults(rows.topK(queryVec, k, minSimilarity));
+    }
+
+    /**
+     * MMR 查询：从相似度不低于 minSimilarity 的前 fetchK 个片段中，选出兼顾相关性与多样性的 K 个片段，
+     * 避免同一文档相邻的重叠片段或几乎相同的段落挤占上下文，见 VectorSnapshot.mmr
+     *
+     * @param lambda 1.0 等价于普通 top-K，越小越偏向多样性
+     */
+    public List<Result> queryMMR(float[] queryVec, int k, int fetchK, double lambda, double minSimilarity) {
+        return toResults(rows.mmr(queryVec, k, fetchK, lambda, minSimilarity));
+    }
+
+    private static List<Result> toResults(List<VectorSnapshot.Match<Row>> matches) {
+        List<Result> results = new ArrayList<>(matches.size());
+        for (VectorSnapshot.Match<Row> match : matches) {
+            results.add(new Result(match.value, match.sim));
+        }
+        return results;
+    }
+
+    /**
+     * 片段总数
+     */
+    public int size() {
+        return rows.size();
+    }
+
+    public void close() throws SQLException {
+        conn.close();
+    }
+
+    private VectorSnapshot<Row> readRows() throws SQLException {
+        List<VectorSnapshot.Entry<Row>> loaded = new ArrayList<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT document_id, chunk_index, title, content, embedding FROM document_chunks")) {
+            while (rs.next()) {
+                loaded.add(new VectorSnapshot.Entry<>(
+                        new Row(rs.getLong("document_id"), rs.getInt("chunk_index"), rs.getString("title"),
+                                rs.getString("content")),
+                        gson.fromJson(rs.getString("embedding"), float[].class)));
+            }
+        }
+        return VectorSnapshot.of(loaded);
+    }
+
+    // ========= 辅助数据结构 =========
+    public static class Chunk {
+        public final int chunkIndex;
+        public final String title;
+        public final String content;
+        public final float[] embedding;
+        public Chunk(int chunkIndex, String title, String content, float[] embedding) {
+            this.chunkIndex = chunkIndex;
+            this.title = title;
+            this.content = content;
+            this.embedding = embedding;
+        }
+    }
+
+    /**
+     * 一个文档的全部新片段
+     */
+    public static class DocumentChunks {
+        public final long documentId;
+        public final String sourceHash;
+        public final List<Chunk> chunks;
+        public DocumentChunks(long documentId, String sourceHash, List<Chunk> chunks) {
+            this.documentId = documentId;
+            this.sourceHash = sourceHash;
+            this.chunks = chunks;
+        }
+    }
+
+    public static class Result {
+        public final long documentId;
+        public final int chunkIndex;
+        public final String title;
+        public final String content;
+        public final double sim;
+        Result(Row row, double sim) {
+            this.documentId = row.documentId;
+            this.chunkIndex = row.chunkIndex;
+            this.title = row.title;
+            this.content = row.content;
+            this.sim = sim;
+        }
+    }
+
+    // 内存快照中一行的数据（向量与范数保存在 VectorSnapshot.Entry 中）
+    private static class Row {
+        final long documentId;
+        final int chunkIndex;
+        final String title;
+        final String content;
+        Row(long documentId, int chunkIndex, String title, String content) {
+            this.documentId = documentId;
+            this.chunkIndex = chunkIndex;
+            this.title = title;
+            this.content = content;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.vector;
+
+import com.example.vector.LocalVectorStore.Item;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 预先计算的示例向量快照（二进制格式）
+ * 在构建阶段生成并打包进 jar，启动时直接加载，避免为示例调用 embeddings 接口。
+ *
+ * 格式：魔数、格式版本、模型名、示例哈希、条目数、向量维度，
+ * 然后每个条目依次为 agent_code、示例内容、float32 向量
+ */
+public class EmbeddingSnapshot {
+
+    private static final int MAGIC = 0x41474553; // "AGES"
+    private static final int FORMAT_VERSION = 1;
+
+    private final String model;
+    private final String examplesHash;
+    private final List<Item> items;
+
+    public EmbeddingSnapshot(String model, String examplesHash, List<Item> items) {
+        this.model = model;
+        this.examplesHash = examplesHash;
+        this.items = items;
+    }
+
+    /**
+     * 计算整个示例集合的哈希（与顺序无关）
+     */
+    public static String examplesHash(Map<String, List<String>> examples) {
+        List<String> hashes = new ArrayList<>();
+        for (Map.Entry<String, List<String>> entry : examples.entrySet()) {
+            for (String example : entry.getValue()) {
+                hashes.add(LocalVectorStore.hashOf(entry.getKey(), example));
+            }
+        }
+        Collections.sort(hashes);
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String hash : hashes) {
+                digest.update(hash.getBytes(StandardCharsets.UTF_8));
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void write(OutputStream out) throws IOException {
+        int dimension = items.isEmpty() ? 0 : items.get(0).embedding.length;
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        data.writeInt(MAGIC);
+        data.writeInt(FORMAT_VERSION);
+        data.writeUTF(model);
+        data.writeUTF(examplesHash);
+        data.writeInt(items.size());
+        data.writeInt(dimension);
+        for (Item item : items) {
+            if (item.embedding.length != dimension) {
+                throw new IOException("向量维度不一致: " + item.content);
+            }
+            data.writeUTF(item.agentCode);
+            data.writeUTF(item.content);
+            for (float v : item.embedding) {
+                data.writeFloat(v);
+            }
+        }
+        data.flush();
+    }
+
+    public static EmbeddingSnapshot read(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("不是有效的向量快照文件");
+        }
+        int version = data.readInt();
+        if (version != FORMAT_VERSION) {
+            throw new IOException("不支持的向量快照版本: " + version);
+        }
+        String model = data.readUTF();
+        String examplesHash = data.readUTF();
+        int count = data.readInt();
+        int dimension = data.readInt();
+        List<Item> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String agentCode = data.readUTF();
+            String content = data.readUTF();
+            float[] embedding = new float[dimension];
+            for (int d = 0; d < dimension; d++) {
+                embedding[d] = data.readFloat();
+            }
+            items.add(new Item(content, agentCode, embedding));
+        }
+        return new EmbeddingSnapshot(model, examplesHash, items);
+    }
+
+    /**
+     * 按 (agent_code, 示例) 哈希索引向量，用于增量同步时复用
+     */
+    public Map<String, float[]> byContentHash() {
+        Map<String, float[]> vectors = new HashMap<>(items.size() * 2);
+        for (Item item : items) {
+            vectors.put(LocalVectorStore.hashOf(item.agentCode, item.content), item.embedding);
+        }
+        return vectors;
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String getExamplesHash() {
+        return examplesHash;
+    }
+
+    public List<Item> getItems() {
+        return items;
+    }
+}
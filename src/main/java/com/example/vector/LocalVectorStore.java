@@ -1,5 +1,8 @@
 package com.example.vector;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.*;
 import java.util.*;
 import com.google.gson.Gson;
@@ -10,6 +13,9 @@ import com.google.gson.Gson;
  *  - 向量以 JSON 字符串存储
  *  - 支持插入文本 + 向量
  *  - 支持按余弦相似度查询最相近内容
+ *  - 支持 MMR（最大边际相关）多样化检索，避免近似重复结果挤占 top-K
+ *  - 向量在首次查询时加载到内存，写入后失效重建
+ *  - 每行记录 (agent_code, content) 的哈希，支持增量同步，批量变更后原子替换内存快照
  *  - 无需任何扩展（仅 sqlite-jdbc + gson）
  */
 public class LocalVectorStore {
@@ -17,6 +23,9 @@ public class LocalVectorStore {
     private final Connection conn;
     private final Gson gson = new Gson();
 
+    // 内存中的向量快照（首次查询时加载，写入后置空）
+    private volatile VectorSnapshot<Row> rows;
+
     public LocalVectorStore(String dbPath) throws SQLException {
         this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
         initTable();
@@ -31,49 +40,191 @@ public class LocalVectorStore {
                     "agent_code TEXT, " +
                     "embedding TEXT)");
         }
+        migrateContentHash();
+    }
+
+    // 旧表没有 content_hash 列时补充该列并回填
+    private void migrateContentHash() throws SQLException {
+        boolean hasColumn = false;
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("PRAGMA table_info(embeddings)")) {
+            while (rs.next()) {
+                if ("content_hash".equals(rs.getString("name"))) {
+                    hasColumn = true;
+                }
+            }
+        }
+        if (!hasColumn) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("ALTER TABLE embeddings ADD COLUMN content_hash TEXT");
+            }
+        }
+
+        Map<Integer, String> missing = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery(
+                     "SELECT id, content, agent_code FROM embeddings WHERE content_hash IS NULL")) {
+            while (rs.next()) {
+                missing.put(rs.getInt("id"), hashOf(rs.getString("agent_code"), rs.getString("content")));
+            }
+        }
+        if (!missing.isEmpty()) {
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "UPDATE embeddings SET content_hash = ? WHERE id = ?")) {
+                for (Map.Entry<Integer, String> entry : missing.entrySet()) {
+                    ps.setString(1, entry.getValue());
+                    ps.setInt(2, entry.getKey());
+                    ps.addBatch();
+                }
+                ps.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 计算 (agent_code, content) 的哈希，用于增量同步时比对
+     */
+    public static String hashOf(String agentCode, String content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(String.valueOf(agentCode).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(String.valueOf(content).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     // 插入一条向量记录
-    public void insert(String content, String agentCode, float[] embedding) throws SQLException {
+    public synchronized void insert(String content, String agentCode, float[] embedding) throws SQLException {
         String json = gson.toJson(embedding);
         try (PreparedStatement ps = conn.prepareStatement(
-                "INSERT INTO embeddings (content, agent_code, embedding) VALUES (?, ?, ?)")) {
+                "INSERT INTO embeddings (content, agent_code, embedding, content_hash) VALUES (?, ?, ?, ?)")) {
             ps.setString(1, content);
             ps.setString(2, agentCode);
             ps.setString(3, json);
+            ps.setString(4, hashOf(agentCode, content));
             ps.executeUpdate();
         }
+        rows = null;
     }
 
     // 批量插入
-    public void insertBatch(List<Item> items) throws SQLException {
-        try (PreparedStatement ps = conn.prepareStatement(
-                "INSERT INTO embeddings (content, agent_code, embedding) VALUES (?, ?, ?)")) {
-            for (Item item : items) {
-                ps.setString(1, item.content);
-                ps.setString(2, item.agentCode);
-                ps.setString(3, gson.toJson(item.embedding));
-                ps.addBatch();
+    public synchronized void insertBatch(List<Item> items) throws SQLException {
+        applyChanges(items, Collections.emptyList());
+    }
+
+    /**
+     * 在一个事务中插入和删除记录，提交后重新加载内存快照并原子替换
+     * 替换完成前的查询仍使用旧快照，不会看到只完成一半的变更
+     */
+    public synchronized void applyChanges(List<Item> inserts, Collection<Integer> deleteIds) throws SQLException {
+        boolean autoCommit = conn.getAutoCommit();
+        conn.setAutoCommit(false);
+        try (PreparedStatement insert = conn.prepareStatement(
+                "INSERT INTO embeddings (content, agent_code, embedding, content_hash) VALUES (?, ?, ?, ?)");
+             PreparedStatement delete = conn.prepareStatement("DELETE FROM embeddings WHERE id = ?")) {
+            for (Item item : inserts) {
+                insert.setString(1, item.content);
+                insert.setString(2, item.agentCode);
+                insert.setString(3, gson.toJson(item.embedding));
+                insert.setString(4, hashOf(item.agentCode, item.content));
+                insert.addBatch();
+            }
+            for (Integer id : deleteIds) {
+                delete.setInt(1, id);
+                delete.addBatch();
+            }
+            insert.executeBatch();
+            delete.executeBatch();
+            conn.commit();
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            conn.setAutoCommit(autoCommit);
+        }
+        rows = readRows();
+    }
+
+    /**
+     * 获取所有记录的 id -> content_hash 映射（按 id 升序）
+     */
+    public synchronized Map<Integer, String> listHashes() throws SQLException {
+        Map<Integer, String> hashes = new LinkedHashMap<>();
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT id, content_hash FROM embeddings ORDER BY id")) {
+            while (rs.next()) {
+                hashes.put(rs.getInt("id"), rs.getString("content_hash"));
             }
-            ps.executeBatch();
         }
+        return hashes;
     }
 
     // 查询前K个最相似项
     public List<Result> queryTopK(float[] queryVec, int k) throws SQLException {
-        List<Result> results = new ArrayList<>();
+        return toResults(loadRows().topK(queryVec, k, Double.NEGATIVE_INFINITY));
+    }
+
+    // MMR 查询，候选池默认为 max(4 * k, 20)
+    public List<Result> queryMMR(float[] queryVec, int k, double lambda) throws SQLException {
+        return queryMMR(queryVec, k, Math.max(k * 4, 20), lambda);
+    }
+
+    /**
+     * MMR（最大边际相关）查询：在相似度与多样性之间折中选出 K 个结果，见 VectorSnapshot.mmr
+     *
+     * @param fetchK 候选池大小
+     * @param lambda 1.0 等价于普通 top-K，越小越偏向多样性
+     */
+    public List<Result> queryMMR(float[] queryVec, int k, int fetchK, double lambda) throws SQLException {
+        return toResults(loadRows().mmr(queryVec, k, fetchK, lambda, Double.NEGATIVE_INFINITY));
+    }
+
+    private static List<Result> toResults(List<VectorSnapshot.Match<Row>> matches) {
+        List<Result> results = new ArrayList<>(matches.size());
+        for (VectorSnapshot.Match<Row> match : matches) {
+            results.add(new Result(match.value.id, match.value.content, match.value.agentCode, match.sim));
+        }
+        return results;
+    }
+
+    // 获取全部向量记录（来自内存快照）
+    public List<Item> listAll() throws SQLException {
+        VectorSnapshot<Row> all = loadRows();
+        List<Item> items = new ArrayList<>(all.size());
+        for (VectorSnapshot.Entry<Row> entry : all.entries()) {
+            items.add(new Item(entry.value.content, entry.value.agentCode, entry.vector));
+        }
+        return items;
+    }
+
+    // 加载全部向量到内存（双重检查，写入后会重新加载）
+    private VectorSnapshot<Row> loadRows() throws SQLException {
+        VectorSnapshot<Row> snapshot = rows;
+        if (snapshot != null) {
+            return snapshot;
+        }
+        synchronized (this) {
+            if (rows == null) {
+                rows = readRows();
+            }
+            return rows;
+        }
+    }
+
+    private VectorSnapshot<Row> readRows() throws SQLException {
+        List<VectorSnapshot.Entry<Row>> loaded = new ArrayList<>();
         try (Statement stmt = conn.createStatement();
              ResultSet rs = stmt.executeQuery("SELECT id, content, agent_code, embedding FROM embeddings")) {
-
             while (rs.next()) {
                 float[] emb = gson.fromJson(rs.getString("embedding"), float[].class);
-                double sim = cosineSim(queryVec, emb);
-                results.add(new Result(rs.getInt("id"), rs.getString("content"), 
-                    rs.getString("agent_code"), sim));
+                loaded.add(new VectorSnapshot.Entry<>(
+                        new Row(rs.getInt("id"), rs.getString("content"), rs.getString("agent_code")), emb));
             }
         }
-        results.sort((a, b) -> Double.compare(b.sim, a.sim)); // 按相似度降序
-        return results.size() > k ? results.subList(0, k) : results;
+        return VectorSnapshot.of(loaded);
     }
 
     // 检查数据库中是否有数据
@@ -113,15 +264,15 @@ public class LocalVectorStore {
         }
     }
 
-    // ========= 工具函数 =========
-    private static double cosineSim(float[] a, float[] b) {
-        double dot = 0, na = 0, nb = 0;
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            na += a[i] * a[i];
-            nb += b[i] * b[i];
+    // 内存快照中一行的数据（向量与范数保存在 VectorSnapshot.Entry 中）
+    private static class Row {
+        final int id;
+        final String content;
+        final String agentCode;
+        Row(int id, String content, String agentCode) {
+            this.id = id;
+            this.content = content;
+            this.agentCode = agentCode;
         }
-        return dot / (Math.sqrt(na) * Math.sqrt(nb));
     }
 }
-
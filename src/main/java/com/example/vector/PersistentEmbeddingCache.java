@@ -0,0 +1,311 @@
+package com.example.vector;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 持久化 Embedding 缓存（基于 SQLite）
+ * 特点：
+ *  - 键为 hash(模型, 归一化文本)，值以 float32 小端 BLOB 存储
+ *  - 写入和访问时间更新通过后台线程异步批量落盘（write-behind），不阻塞调用方；
+ *    待写队列有界，队列繁忙时优先保留写入，访问时间更新直接丢弃（只影响淘汰顺序），同一批次内的重复更新合并
+ *  - 超过最大条目数时按最近访问时间淘汰（启动时及每写入一定条数检查一次）
+ */
+public class PersistentEmbeddingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentEmbeddingCache.class);
+
+    private static final int WRITE_BATCH_SIZE = 256;
+    // 每写入多少条检查一次容量（不超过最大条目数的 1/10）
+    private static final int EVICTION_CHECK_INTERVAL = 1000;
+    // 待写队列容量；访问时间更新最多占用一半，其余留给写入
+    private static final int MAX_PENDING = 10000;
+    private static final int MAX_PENDING_TOUCHES = MAX_PENDING / 2;
+
+    private final Connection conn;
+    private final long maxEntries;
+    private final long evictionCheckInterval;
+    private final BlockingQueue<Op> queue = new LinkedBlockingQueue<>(MAX_PENDING);
+    private final Thread writer;
+    private volatile boolean running = true;
+    private long writesSinceCheck;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong droppedWrites = new AtomicLong();
+    private final AtomicLong droppedTouches = new AtomicLong();
+
+    public PersistentEmbeddingCache(String dbPath, long maxEntries) throws SQLException {
+        this.conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+        this.maxEntries = maxEntries;
+        this.evictionCheckInterval = Math.max(1, Math.min(EVICTION_CHECK_INTERVAL, maxEntries / 10));
+        initTable();
+        // 上次运行写入的条目不足一个检查间隔时不会触发淘汰，启动时先检查一次
+        evictIfNeeded();
+        this.writer = new Thread(this::writeLoop, "embedding-cache-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // 创建表
+    private void initTable() throws SQLException {
+        synchronized (conn) {
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("CREATE TABLE IF NOT EXISTS embedding_cache (" +
+                        "cache_key TEXT PRIMARY KEY, " +
+                        "embedding BLOB NOT NULL, " +
+                        "last_access INTEGER NOT NULL)");
+                stmt.execute("CREATE INDEX IF NOT EXISTS idx_embedding_cache_access " +
+                        "ON embedding_cache (last_access)");
+            }
+        }
+    }
+
+    /**
+     * 生成缓存键：SHA-256(模型 + 文本)
+     */
+    public static String key(String model, String normalizedText) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(model.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(normalizedText.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 读取缓存，未命中返回 null；命中时异步更新访问时间
+     */
+    public float[] get(String key) {
+        byte[] blob = null;
+        try {
+            synchronized (conn) {
+                try (PreparedStatement ps = conn.prepareStatement(
+                        "SELECT embedding FROM embedding_cache WHERE cache_key = ?")) {
+                    ps.setString(1, key);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        if (rs.next()) {
+                            blob = rs.getBytes(1);
+                        }
+                    }
+                }
+            }
+        } catch (SQLException e) {
+            logger.warn("读取持久化缓存失败: {}", e.getMessage());
+        }
+
+        if (blob == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        if (queue.size() >= MAX_PENDING_TOUCHES || !queue.offer(new Op(key, null))) {
+            droppedTouches.incrementAndGet();
+        }
+        return decode(blob);
+    }
+
+    /**
+     * 异步写入缓存；待写队列已满时丢弃本次写入
+     */
+    public void putAsync(String key, float[] embedding) {
+        if (running && !queue.offer(new Op(key, embedding))) {
+            droppedWrites.incrementAndGet();
+        }
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getWriteCount() {
+        return writes.get();
+    }
+
+    public int getPendingWrites() {
+        return queue.size();
+    }
+
+    /**
+     * 因待写队列已满而丢弃的写入数
+     */
+    public long getDroppedWrites() {
+        return droppedWrites.get();
+    }
+
+    /**
+     * 因待写队列繁忙而丢弃的访问时间更新数
+     */
+    public long getDroppedTouches() {
+        return droppedTouches.get();
+    }
+
+    /**
+     * 停止后台线程，写完队列中剩余的数据后关闭连接
+     */
+    public void close() throws SQLException {
+        running = false;
+        writer.interrupt();
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        synchronized (conn) {
+            conn.close();
+        }
+    }
+
+    // 后台写线程：阻塞等待第一条，再尽量多取一批一起提交
+    private void writeLoop() {
+        while (running) {
+            try {
+                Op first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                List<Op> batch = new ArrayList<>(WRITE_BATCH_SIZE);
+                batch.add(first);
+                queue.drainTo(batch, WRITE_BATCH_SIZE - 1);
+                writeBatch(batch);
+            } catch (InterruptedException e) {
+                break;
+            } catch (Exception e) {
+                logger.warn("写入持久化缓存失败: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void flush() {
+        List<Op> batch = new ArrayList<>();
+        queue.drainTo(batch);
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            writeBatch(batch);
+        } catch (SQLException e) {
+            logger.warn("写入持久化缓存失败: {}", e.getMessage());
+        }
+    }
+
+    private void writeBatch(List<Op> batch) throws SQLException {
+        // 同一批次内同一键只写一次：写入以最后一次为准，已写入的键不再单独更新访问时间
+        Map<String, float[]> upserts = new LinkedHashMap<>();
+        Set<String> touches = new LinkedHashSet<>();
+        for (Op op : batch) {
+            if (op.embedding != null) {
+                upserts.put(op.key, op.embedding);
+            } else {
+                touches.add(op.key);
+            }
+        }
+        touches.removeAll(upserts.keySet());
+
+        long now = System.currentTimeMillis();
+        synchronized (conn) {
+            boolean autoCommit = conn.getAutoCommit();
+            conn.setAutoCommit(false);
+            try (PreparedStatement upsert = conn.prepareStatement(
+                    "INSERT OR REPLACE INTO embedding_cache (cache_key, embedding, last_access) VALUES (?, ?, ?)");
+                 PreparedStatement touch = conn.prepareStatement(
+                    "UPDATE embedding_cache SET last_access = ? WHERE cache_key = ?")) {
+                for (Map.Entry<String, float[]> entry : upserts.entrySet()) {
+                    upsert.setString(1, entry.getKey());
+                    upsert.setBytes(2, encode(entry.getValue()));
+                    upsert.setLong(3, now);
+                    upsert.addBatch();
+                }
+                for (String key : touches) {
+                    touch.setLong(1, now);
+                    touch.setString(2, key);
+                    touch.addBatch();
+                }
+                upsert.executeBatch();
+                touch.executeBatch();
+                conn.commit();
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(autoCommit);
+            }
+        }
+
+        writes.addAndGet(upserts.size());
+        writesSinceCheck += upserts.size();
+        if (writesSinceCheck >= evictionCheckInterval) {
+            writesSinceCheck = 0;
+            evictIfNeeded();
+        }
+    }
+
+    // 超过容量时删除最久未访问的条目
+    private void evictIfNeeded() throws SQLException {
+        synchronized (conn) {
+            long count;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM embedding_cache")) {
+                count = rs.next() ? rs.getLong(1) : 0;
+            }
+            if (count <= maxEntries) {
+                return;
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "DELETE FROM embedding_cache WHERE cache_key IN " +
+                    "(SELECT cache_key FROM embedding_cache ORDER BY last_access ASC LIMIT ?)")) {
+                ps.setLong(1, count - maxEntries);
+                int deleted = ps.executeUpdate();
+                logger.info("持久化缓存超出容量，淘汰 {} 条", deleted);
+            }
+        }
+    }
+
+    // ========= 编解码 =========
+    static byte[] encode(float[] v) {
+        ByteBuffer buffer = ByteBuffer.allocate(v.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(v);
+        return buffer.array();
+    }
+
+    static float[] decode(byte[] blob) {
+        float[] v = new float[blob.length / 4];
+        ByteBuffer.wrap(blob).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(v);
+        return v;
+    }
+
+    // 队列中的操作：embedding 为 null 表示只更新访问时间
+    private static class Op {
+        final String key;
+        final float[] embedding;
+        Op(String key, float[] embedding) { this.key = key; this.embedding = embedding; }
+    }
+}
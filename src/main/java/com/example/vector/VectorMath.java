@@ -0,0 +1,70 @@
+package com.example.vector;
+
+/**
+ * 向量运算工具：点积、范数、归一化与余弦相似度
+ * 向量库、路由原型和语义缓存共用这一份实现，保证各处的相似度口径一致
+ */
+public final class VectorMath {
+
+    private VectorMath() {
+    }
+
+    /**
+     * 点积（按 a 的长度计算）
+     */
+    public static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * L2 范数
+     */
+    public static double norm(float[] v) {
+        double sum = 0;
+        for (float x : v) {
+            sum += x * x;
+        }
+        return Math.sqrt(sum);
+    }
+
+    /**
+     * 归一化为单位向量；零向量返回全零向量
+     */
+    public static float[] normalize(float[] v) {
+        double norm = norm(v);
+        float[] out = new float[v.length];
+        if (norm == 0) {
+            return out;
+        }
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (float) (v[i] / norm);
+        }
+        return out;
+    }
+
+    /**
+     * 余弦相似度，范数由调用方预先计算；任一向量为零向量时返回 0
+     *
+     * @throws IllegalArgumentException 两个向量维度不同
+     */
+    public static double cosine(float[] a, double na, float[] b, double nb) {
+        if (a.length != b.length) {
+            throw new IllegalArgumentException("向量维度不一致: " + a.length + " != " + b.length);
+        }
+        if (na == 0 || nb == 0) {
+            return 0;
+        }
+        return dot(a, b) / (na * nb);
+    }
+
+    /**
+     * 余弦相似度
+     */
+    public static double cosine(float[] a, float[] b) {
+        return cosine(a, norm(a), b, norm(b));
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.vector;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * 不可变的内存向量快照：每条记录保存向量及预先计算好的范数，提供 top-K 与 MMR 查询
+ * 向量库在变更提交后构建新快照并整体替换引用，查询始终看到某个完整版本
+ * 与查询向量维度不同的记录（如更换 embedding 模型前写入的行）不参与比较
+ *
+ * @param <T> 记录携带的数据（内容、所属文档等）
+ */
+public final class VectorSnapshot<T> {
+
+    private static final VectorSnapshot<?> EMPTY = new VectorSnapshot<>(Collections.emptyList());
+
+    private final List<Entry<T>> entries;
+
+    private VectorSnapshot(List<Entry<T>> entries) {
+        this.entries = entries;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> VectorSnapshot<T> empty() {
+        return (VectorSnapshot<T>) EMPTY;
+    }
+
+    public static <T> VectorSnapshot<T> of(List<Entry<T>> entries) {
+        return new VectorSnapshot<>(Collections.unmodifiableList(new ArrayList<>(entries)));
+    }
+
+    /**
+     * 构建新快照：去掉满足 removed 的记录，再追加 added（原快照不变）
+     */
+    public VectorSnapshot<T> replace(Predicate<T> removed, List<Entry<T>> added) {
+        List<Entry<T>> updated = new ArrayList<>(entries.size() + added.size());
+        for (Entry<T> entry : entries) {
+            if (!removed.test(entry.value)) {
+                updated.add(entry);
+            }
+        }
+        updated.addAll(added);
+        return new VectorSnapshot<>(Collections.unmodifiableList(updated));
+    }
+
+    public List<Entry<T>> entries() {
+        return entries;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 查询与向量最相似的 K 条记录（按相似度降序），相似度低于 minSimilarity 的记录不返回
+     */
+    public List<Match<T>> topK(float[] query, int k, double minSimilarity) {
+        if (k <= 0 || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+        List<Match<T>> results = candidates(query, k, minSimilarity);
+        results.sort((a, b) -> Double.compare(b.sim, a.sim));
+        return results;
+    }
+
+    /**
+     * MMR（最大边际相关）查询：在相似度与多样性之间折中选出 K 条记录
+     *
+     * 先按查询相似度取 fetchK 个候选，再贪心地选择
+     *   lambda * sim(q, d) - (1 - lambda) * max(sim(d, 已选))
+     * 最大的候选。每选中一条记录只需把它与剩余候选比较一次来更新
+     * “与已选集合的最大相似度”，总开销约为 O(N + k * fetchK) 次向量点积。
+     * 结果按选中顺序排列，sim 为与查询的相似度
+     *
+     * @param lambda 1.0 等价于普通 top-K，越小越偏向多样性
+     */
+    public List<Match<T>> mmr(float[] query, int k, int fetchK, double lambda, double minSimilarity) {
+        if (k <= 0 || entries.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 1. 用小顶堆选出候选池
+        List<Match<T>> pool = candidates(query, Math.max(fetchK, k), minSimilarity);
+        pool.sort((a, b) -> Double.compare(b.sim, a.sim));
+
+        // 2. 贪心选择，增量维护每个候选与已选集合的最大相似度
+        int n = pool.size();
+        double[] maxSimToSelected = new double[n];
+        Arrays.fill(maxSimToSelected, Double.NEGATIVE_INFINITY);
+        boolean[] selected = new boolean[n];
+        List<Match<T>> results = new ArrayList<>(Math.min(k, n));
+
+        while (results.size() < k && results.size() < n) {
+            int best = -1;
+            double bestScore = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < n; i++) {
+                if (selected[i]) {
+                    continue;
+                }
+                double redundancy = results.isEmpty() ? 0 : maxSimToSelected[i];
+                double score = lambda * pool.get(i).sim - (1 - lambda) * redundancy;
+                if (score > bestScore) {
+                    bestScore = score;
+                    best = i;
+                }
+            }
+
+            selected[best] = true;
+            Match<T> picked = pool.get(best);
+            results.add(picked);
+
+            for (int i = 0; i < n; i++) {
+                if (!selected[i]) {
+                    Entry<T> entry = pool.get(i).entry;
+                    double sim = VectorMath.cosine(entry.vector, entry.norm, picked.entry.vector, picked.entry.norm);
+                    if (sim > maxSimToSelected[i]) {
+                        maxSimToSelected[i] = sim;
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // 相似度不低于 minSimilarity 的前 limit 条记录（无序）
+    private List<Match<T>> candidates(float[] query, int limit, double minSimilarity) {
+        double queryNorm = VectorMath.norm(query);
+        PriorityQueue<Match<T>> heap = new PriorityQueue<>(Math.min(limit, entries.size()),
+                Comparator.comparingDouble(m -> m.sim));
+        for (Entry<T> entry : entries) {
+            if (entry.vector.length != query.length) {
+                continue;
+            }
+            double sim = VectorMath.cosine(query, queryNorm, entry.vector, entry.norm);
+            if (sim < minSimilarity) {
+                continue;
+            }
+            if (heap.size() < limit) {
+                heap.add(new Match<>(entry, sim));
+            } else if (sim > heap.peek().sim) {
+                heap.poll();
+                heap.add(new Match<>(entry, sim));
+            }
+        }
+        return new ArrayList<>(heap);
+    }
+
+    // ========= 辅助数据结构 =========
+    public static final class Entry<T> {
+        public final T value;
+        public final float[] vector;
+        public final double norm;
+        public Entry(T value, float[] vector) {
+            this.value = value;
+            this.vector = vector;
+            this.norm = VectorMath.norm(vector);
+        }
+    }
+
+    public static final class Match<T> {
+        public final T value;
+        public final double sim;
+        private final Entry<T> entry;
+        Match(Entry<T> entry, double sim) {
+            this.value = entry.value;
+            this.sim = sim;
+            this.entry = entry;
+        }
+    }
+}
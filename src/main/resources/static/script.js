@@ -11,6 +11,13 @@ const drawerContent = document.getElementById('drawerContent');
 // 当前选择的服务
 let currentService = 'openai';
 
+// 输入预取：停止输入一段时间后把当前问题发给后端，提前完成向量计算和路由
+const PREFETCH_DELAY_MS = 400;
+const PREFETCH_MIN_LENGTH = 4;
+let prefetchTimer = null;
+let prefetchController = null;
+let lastPrefetched = '';
+
 // 处理键盘事件
 function handleKeyPress(event) {
     if (event.key === 'Enter') {
@@ -18,6 +25,35 @@ function handleKeyPress(event) {
     }
 }
 
+// 输入变化时（防抖）预取
+function handleInput() {
+    clearTimeout(prefetchTimer);
+    prefetchTimer = setTimeout(prefetchQuestion, PREFETCH_DELAY_MS);
+}
+
+// 预取当前问题（只对 OpenAI 服务生效，失败时忽略）
+function prefetchQuestion() {
+    const question = questionInput.value.trim();
+    if (currentService !== 'openai' || question.length < PREFETCH_MIN_LENGTH || question === lastPrefetched) {
+        return;
+    }
+    lastPrefetched = question;
+
+    // 取消上一次尚未完成的预取
+    if (prefetchController) {
+        prefetchController.abort();
+    }
+    prefetchController = new AbortController();
+    fetch('/api/qa/prefetch', {
+        method: 'POST',
+        headers: {
+            'Content-Type': 'application/json',
+        },
+        body: JSON.stringify({ question: question }),
+        signal: prefetchController.signal
+    }).catch(() => {});
+}
+
 // 切换服务
 function changeService() {
     currentService = serviceSelect.value;
@@ -163,6 +199,10 @@ async function sendQuestion() {
         return;
     }
 
+    // 正式提问后不再预取；进行中的预取保留，后端会复用其结果
+    clearTimeout(prefetchTimer);
+    lastPrefetched = '';
+
     // 添加用户消息
     addMessage(question, true);
     questionInput.value = '';
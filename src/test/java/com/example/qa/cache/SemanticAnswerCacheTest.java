@@ -0,0 +1,70 @@
+package com.example.qa.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * SemanticAnswerCache 测试类
+ * 测试相似度阈值、Agent 隔离、上下文版本失效以及文本和编号校验
+ */
+class SemanticAnswerCacheTest {
+
+    private static final List<String> ANSWER = Arrays.asList("💡 提示\n\n", "回答内容\n\n");
+    private static final String MODEL = "test-model";
+
+    @Test
+    void testSimilarQuestionHitsSameAgentAndVersion() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+        cache.put("问题", new float[]{1.0f, 0.0f}, MODEL, "patent_search", 1, ANSWER);
+
+        assertEquals(ANSWER, cache.find("相似问题", new float[]{0.99f, 0.05f}, MODEL, "patent_search", 1));
+        assertNull(cache.find("相似问题", new float[]{0.99f, 0.05f}, MODEL, "formula_assistant", 1), "不同 Agent 不应命中");
+        assertNull(cache.find("相似问题", new float[]{0.6f, 0.8f}, MODEL, "patent_search", 1), "相似度低于阈值不应命中");
+    }
+
+    @Test
+    void testNewContextVersionInvalidatesEntries() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+        cache.put("问题", new float[]{1.0f, 0.0f}, MODEL, "patent_search", 1, ANSWER);
+
+        assertNull(cache.find("相似问题", new float[]{1.0f, 0.0f}, MODEL, "patent_search", 2));
+        assertEquals(0, cache.size(), "过期版本的条目应被移除");
+    }
+
+    @Test
+    void testLeastRecentlyHitEntryIsEvicted() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 2, 0);
+        cache.put("问题", new float[]{1.0f, 0.0f}, MODEL, "a", 1, ANSWER);
+        cache.put("问题二", new float[]{0.0f, 1.0f}, MODEL, "a", 1, ANSWER);
+        cache.put("问题三", new float[]{-1.0f, 0.0f}, MODEL, "a", 1, ANSWER);
+
+        assertEquals(2, cache.size());
+        assertNull(cache.find("相似问题", new float[]{1.0f, 0.0f}, MODEL, "a", 1));
+    }
+
+    @Test
+    void testSameTextHitsAcrossEmbedders() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+        cache.put("石墨烯的导热系数是多少？", new float[]{1.0f, 0.0f}, MODEL, "material_scout", 1, ANSWER);
+
+        assertEquals(ANSWER, cache.find(" 石墨烯的导热系数是多少？ ", new float[]{0.0f, 1.0f, 0.0f}, "local",
+                "material_scout", 1));
+        assertNull(cache.find("石墨烯的密度是多少？", new float[]{1.0f, 0.0f}, "local", "material_scout", 1),
+                "不同向量模型的向量不应比较");
+        assertEquals(1L, cache.getStats().get("exactHits"));
+    }
+
+    @Test
+    void testDifferentIdentifiersDoNotShareAnswer() {
+        SemanticAnswerCache cache = new SemanticAnswerCache(0.95, 10, 0);
+        cache.put("专利CN112345678A的用途", new float[]{1.0f, 0.0f}, MODEL, "patent_search", 1, ANSWER);
+
+        assertNull(cache.find("专利CN112345679A的用途", new float[]{1.0f, 0.0f}, MODEL, "patent_search", 1));
+        assertEquals(ANSWER, cache.find("专利 cn112345678a 有什么用途", new float[]{0.99f, 0.05f}, MODEL,
+                "patent_search", 1));
+    }
+}
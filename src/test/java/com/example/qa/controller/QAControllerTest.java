@@ -0,0 +1,186 @@
+package com.example.qa.controller;
+
+import com.example.qa.handler.BusinessChainHandler;
+import com.example.qa.router.AgentRouter;
+import com.example.qa.router.RoutingDecision;
+import com.example.qa.service.AnswerCacheService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 问答控制器测试类
+ * 测试规则处理器与多标签路由的分发，以及取消请求时处理器输出随之取消
+ */
+@ExtendWith(MockitoExtension.class)
+class QAControllerTest {
+
+    private static final String QUESTION = "石墨烯专利的配方";
+
+    @Mock
+    private AgentRouter agentRouter;
+
+    @Mock
+    private AnswerCacheService answerCacheService;
+
+    @InjectMocks
+    private QAController qaController;
+
+    private final FakeHandler patent = new FakeHandler("PatentSearchHandler", "patent_search", 10);
+    private final FakeHandler formula = new FakeHandler("FormulaAssistantHandler", "formula_assistant", 20);
+    private final FakeHandler confluence = new FakeHandler("ConfluenceHandler", null, 5);
+
+    private void initController() {
+        ReflectionTestUtils.setField(qaController, "handlers", Arrays.asList(patent, formula, confluence));
+        qaController.initHandlerIndex();
+        RoutingDecision decision = new RoutingDecision("patent_search", 0.9, Collections.emptyList(),
+                Arrays.asList("patent_search", "formula_assistant"));
+        when(agentRouter.routeAsync(QUESTION)).thenReturn(Mono.just(decision));
+    }
+
+    private void answerCacheMisses() {
+        when(answerCacheService.answer(anyString(), anyString(), any(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<Flux<String>>>getArgument(3).get());
+    }
+
+    @Test
+    void testMultiAgentAnswersInRoutingOrder() {
+        initController();
+        answerCacheMisses();
+        patent.output = Flux.just("专利A");
+        formula.output = Flux.just("配方B");
+
+        List<String> chunks = qaController.streamAnswer(Map.of("question", QUESTION)).collectList().block();
+
+        assertEquals(Arrays.asList("💡 我使用了 Patent Search 来回答您的问题：\n\n", "专利A", "\n---\n\n",
+                "💡 我使用了 Formula Assistant 来回答您的问题：\n\n", "配方B"), chunks);
+        verify(answerCacheService).answer(eq(QUESTION), eq("patent_search+formula_assistant"), any(), any());
+    }
+
+    @Test
+    void testRuleHandlerTakesPrecedenceOverMultiAgent() {
+        initController();
+        confluence.matches = true;
+        confluence.output = Flux.just("Confluence 页面");
+        patent.output = Flux.just("专利A");
+        formula.output = Flux.just("配方B");
+
+        List<String> chunks = qaController.streamAnswer(Map.of("question", QUESTION)).collectList().block();
+
+        assertEquals(Arrays.asList("💡 我使用了 Confluence 来回答您的问题：\n\n", "Confluence 页面"), chunks);
+        assertEquals(0, formula.calls.get(), "规则处理器命中时不应并行调用其他 Agent");
+        verify(answerCacheService, never()).answer(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    void testRuleHandlerSkipFallsBackToPrimaryAgent() {
+        initController();
+        confluence.matches = true;
+        confluence.output = Flux.just("__SKIP__");
+        patent.output = Flux.just("专利A");
+
+        List<String> chunks = qaController.streamAnswer(Map.of("question", QUESTION)).collectList().block();
+
+        assertEquals(Arrays.asList("💡 我使用了 Patent Search 来回答您的问题：\n\n", "专利A"), chunks);
+        assertEquals(1, confluence.cancels.get(), "跳过的处理器输出应被取消");
+    }
+
+    @Test
+    void testCancelDuringMultiAgentOutputCancelsAllSections() throws InterruptedException {
+        initController();
+        answerCacheMisses();
+        // 第一个 Agent 异步输出一段后继续生成，第二个 Agent 尚未输出
+        patent.output = Flux.concat(Flux.just("专利A").delayElements(Duration.ofMillis(50)), Flux.never());
+        formula.output = Flux.never();
+
+        Flux<String> answer = qaController.streamAnswer(Map.of("question", QUESTION));
+        assertEquals(0, patent.calls.get() + formula.calls.get(), "订阅前不应组装处理器的请求");
+
+        List<String> chunks = answer.take(2).collectList().block(Duration.ofSeconds(5));
+
+        assertEquals(Arrays.asList("💡 我使用了 Patent Search 来回答您的问题：\n\n", "专利A"), chunks);
+        assertEquals(1, patent.subscriptions.get());
+        assertEquals(1, formula.subscriptions.get(), "多个 Agent 应并行调用");
+        // 取消信号由合并各段的线程在本次输出结束后传递
+        awaitTrue(() -> patent.cancels.get() == 1, "取消请求后第一个 Agent 的输出应被取消");
+        awaitTrue(() -> formula.cancels.get() == 1, "取消请求后第二个 Agent 的输出应被取消");
+    }
+
+    private static void awaitTrue(BooleanSupplier condition, String message) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail(message);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static class FakeHandler implements BusinessChainHandler {
+        final String name;
+        final String agentCode;
+        final int priority;
+        boolean matches;
+        Flux<String> output = Flux.empty();
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final AtomicInteger cancels = new AtomicInteger();
+
+        FakeHandler(String name, String agentCode, int priority) {
+            this.name = name;
+            this.agentCode = agentCode;
+            this.priority = priority;
+        }
+
+        @Override
+        public boolean canHandle(String question) {
+            return matches;
+        }
+
+        @Override
+        public Flux<String> handleStream(String question) {
+            calls.incrementAndGet();
+            return output
+                    .doOnSubscribe(s -> subscriptions.incrementAndGet())
+                    .doOnCancel(cancels::incrementAndGet);
+        }
+
+        @Override
+        public String handleSync(String question) {
+            return String.join("", output.collectList().block());
+        }
+
+        @Override
+        public String getHandlerName() {
+            return name;
+        }
+
+        @Override
+        public String getAgentCode() {
+            return agentCode;
+        }
+
+        @Override
+        public int getPriority() {
+            return priority;
+        }
+    }
+}
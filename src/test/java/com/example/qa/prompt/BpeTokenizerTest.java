@@ -0,0 +1,167 @@
+package com.example.qa.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * BpeTokenizer 测试类（使用手工构造的小词表；构建时下载了 cl100k_base 词表时另外校验已知的编码结果）
+ */
+class BpeTokenizerTest {
+
+    // 全部单字节（编号 0-255）加上若干合并结果，编号依次递增
+    private static BpeTokenizer tokenizer(byte[]... merges) throws IOException {
+        StringBuilder vocab = new StringBuilder();
+        for (int b = 0; b < 256; b++) {
+            vocab.append(Base64.getEncoder().encodeToString(new byte[]{(byte) b})).append(' ').append(b).append('\n');
+        }
+        for (int i = 0; i < merges.length; i++) {
+            vocab.append(Base64.getEncoder().encodeToString(merges[i])).append(' ').append(256 + i).append('\n');
+        }
+        return BpeTokenizer.load(new ByteArrayInputStream(vocab.toString().getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    private static byte[] utf8(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> pieces(String text) {
+        List<String> pieces = new ArrayList<>();
+        Matcher matcher = BpeTokenizer.CL100K_PATTERN.matcher(text);
+        while (matcher.find()) {
+            pieces.add(matcher.group());
+        }
+        return pieces;
+    }
+
+    @Test
+    void testPreTokenizationMatchesCl100k() {
+        assertEquals(Arrays.asList("hello", " world"), pieces("hello world"));
+        assertEquals(Arrays.asList("I", "'m", " ", "123", "45", "!\n"), pieces("I'm 12345!\n"));
+        assertEquals(Arrays.asList("石墨烯的导热", "。"), pieces("石墨烯的导热。"));
+    }
+
+    @Test
+    void testMergesLowestRankFirst() throws IOException {
+        BpeTokenizer tokenizer = tokenizer(utf8("lo"), utf8("low"), utf8("er"));
+
+        assertEquals(Arrays.asList(257, 258), tokenizer.encode("lower"));
+        assertEquals(2, tokenizer.count("lower"));
+        // 整个片段在词表中时直接得到一个 token
+        assertEquals(Arrays.asList(257), tokenizer.encode("low"));
+    }
+
+    @Test
+    void testChineseIsEncodedAsUtf8Bytes() throws IOException {
+        byte[] shi = utf8("石");
+        assertEquals(Arrays.asList(shi[0] & 0xff, shi[1] & 0xff, shi[2] & 0xff), tokenizer().encode("石"));
+        assertEquals(6, tokenizer().count("石墨"));
+
+        // 前两个字节先合并，再与第三个字节合并成完整的汉字
+        BpeTokenizer merged = tokenizer(Arrays.copyOf(shi, 2), shi);
+        byte[] mo = utf8("墨");
+        assertEquals(Arrays.asList(257, mo[0] & 0xff, mo[1] & 0xff, mo[2] & 0xff), merged.encode("石墨"));
+    }
+
+    @Test
+    void testEmptyVocabularyIsRejected() {
+        assertThrows(IOException.class, () -> BpeTokenizer.load(new ByteArrayInputStream(new byte[0])));
+    }
+
+    @Test
+    void testEqualRanksMergeLeftmostFirst() throws IOException {
+        BpeTokenizer tokenizer = tokenizer(utf8("aa"));
+
+        assertEquals(Arrays.asList(256, (int) 'a'), tokenizer.encode("aaa"));
+        assertEquals(Arrays.asList(256, 256), tokenizer.encode("aaaa"));
+    }
+
+    @Test
+    void testLongChinesePieceMatchesRoundBasedMerge() throws IOException {
+        // 每个汉字先合并前两个字节再合并成整字，部分相邻汉字再合并成词
+        String[] words = {"石墨烯", "导热", "材料", "专利", "石墨"};
+        List<byte[]> merges = new ArrayList<>();
+        String chars = "石墨烯导热材料专利的性能";
+        for (int i = 0; i < chars.length(); i++) {
+            byte[] ch = utf8(chars.substring(i, i + 1));
+            merges.add(Arrays.copyOf(ch, 2));
+            merges.add(ch);
+        }
+        for (String word : words) {
+            merges.add(utf8(word));
+        }
+        BpeTokenizer tokenizer = tokenizer(merges.toArray(new byte[0][]));
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            text.append(chars.charAt((i * 7) % chars.length()));
+        }
+        assertEquals(1, pieces(text.toString()).size(), "连续的中文应是一个预分词片段");
+
+        assertEquals(roundBasedEncode(merges, text.toString()), tokenizer.encode(text.toString()));
+    }
+
+    // 逐轮扫描全部相邻对、合并编号最小的一对（同编号取最左），作为合并顺序的参照
+    private static List<Integer> roundBasedEncode(List<byte[]> merges, String text) {
+        Map<String, Integer> ranks = new HashMap<>();
+        for (int b = 0; b < 256; b++) {
+            ranks.put(new String(new byte[]{(byte) b}, StandardCharsets.ISO_8859_1), b);
+        }
+        for (int i = 0; i < merges.size(); i++) {
+            ranks.putIfAbsent(new String(merges.get(i), StandardCharsets.ISO_8859_1), 256 + i);
+        }
+        String piece = new String(utf8(text), StandardCharsets.ISO_8859_1);
+        List<String> parts = new ArrayList<>();
+        for (int i = 0; i < piece.length(); i++) {
+            parts.add(piece.substring(i, i + 1));
+        }
+        while (true) {
+            int best = -1;
+            int bestRank = Integer.MAX_VALUE;
+            for (int i = 0; i < parts.size() - 1; i++) {
+                Integer rank = ranks.get(parts.get(i) + parts.get(i + 1));
+                if (rank != null && rank < bestRank) {
+                    bestRank = rank;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            parts.set(best, parts.get(best) + parts.remove(best + 1));
+        }
+        List<Integer> tokens = new ArrayList<>();
+        for (String part : parts) {
+            tokens.add(ranks.get(part));
+        }
+        return tokens;
+    }
+
+    @Test
+    void testKnownCl100kEncodings() throws IOException {
+        InputStream in = BpeTokenizerTest.class.getClassLoader().getResourceAsStream("cl100k_base.tiktoken");
+        assumeTrue(in != null, "未下载 cl100k_base 词表（-DskipVocabDownload）");
+        BpeTokenizer tokenizer;
+        try (in) {
+            tokenizer = BpeTokenizer.load(in);
+        }
+
+        // 与 tiktoken 的 cl100k_base 编码结果一致
+        assertEquals(100256, tokenizer.vocabularySize());
+        assertEquals(Arrays.asList(15339, 1917), tokenizer.encode("hello world"));
+        assertEquals(Arrays.asList(83, 1609, 5963, 374, 2294, 0), tokenizer.encode("tiktoken is great!"));
+        assertEquals(6, tokenizer.count("tiktoken is great!"));
+    }
+}
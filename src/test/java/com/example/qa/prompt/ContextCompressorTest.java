@@ -0,0 +1,69 @@
+package com.example.qa.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContextCompressor 测试类（使用按字符估算的计数器）
+ */
+class ContextCompressorTest {
+
+    private final TokenCounter counter = new TokenCounter(null, 100);
+    private final ContextCompressor compressor = new ContextCompressor(counter, 0.4, 0.4, 0.2, 3);
+
+    private static ContextChunk chunk(long id, String content, double score) {
+        return new ContextChunk(id, 0, "doc" + id, "=== doc" + id + " ===\n", content, score);
+    }
+
+    @Test
+    void testKeepsMostRelevantSentencesInOriginalOrder() {
+        String content = "公司成立于二零零五年。石墨烯的导热系数约为五千瓦每米开尔文。办公室位于上海。"
+                + "食堂每天中午供应午餐。石墨烯导热性能优于铜。";
+        List<ContextChunk> chunks = Collections.singletonList(chunk(1, content, 0.8));
+
+        ContextCompressor.Result result = compressor.compress("石墨烯的导热系数是多少", chunks, 50);
+
+        assertEquals(1, result.getChunks().size());
+        String compressed = result.getChunks().get(0).getContent();
+        assertEquals("石墨烯的导热系数约为五千瓦每米开尔文。……石墨烯导热性能优于铜。", compressed);
+        assertEquals("=== doc1 ===\n", result.getChunks().get(0).getHeader());
+        assertTrue(result.getRatio() <= 0.5);
+        assertEquals(5, result.getSentences());
+    }
+
+    @Test
+    void testRemovesNearDuplicateSentencesAcrossChunks() {
+        List<ContextChunk> chunks = Arrays.asList(
+                chunk(1, "聚酰亚胺薄膜的耐热温度可以达到四百度。", 0.9),
+                chunk(2, "聚酰亚胺薄膜的耐热温度可以达到四百度！", 0.7),
+                chunk(3, "氧化铝陶瓷硬度高。", 0.5));
+
+        ContextCompressor.Result result = compressor.compress("聚酰亚胺耐热吗", chunks, 1000);
+
+        assertEquals(1, result.getDuplicates());
+        assertEquals(2, result.getChunks().size());
+        assertEquals(1, result.getChunks().get(0).getDocumentId());
+        assertEquals(3, result.getChunks().get(1).getDocumentId());
+    }
+
+    @Test
+    void testWithinBudgetKeepsEverything() {
+        List<ContextChunk> chunks = Collections.singletonList(chunk(1, "First sentence. Second sentence.", 0));
+
+        ContextCompressor.Result result = compressor.compress("anything", chunks, 1000);
+
+        assertEquals("First sentence. Second sentence.", result.getChunks().get(0).getContent());
+        assertEquals(1.0, result.getRatio(), 1e-9);
+    }
+
+    @Test
+    void testTerms() {
+        assertEquals(new java.util.HashSet<>(Arrays.asList("石墨", "墨烯", "pi", "300")),
+                ContextCompressor.terms("石墨烯，PI 300"));
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.qa.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PromptAssembler 测试类（使用按字符估算的计数器：ASCII 每 4 个字符 1 个 token）
+ */
+class PromptAssemblerTest {
+
+    private final TokenCounter counter = new TokenCounter(null, 100);
+    private final PromptAssembler assembler = new PromptAssembler(counter);
+
+    // 正文 38 个字符加结尾的空行共 40 个字符 = 10 个 token
+    private static ContextChunk chunk(long id, char c, double score) {
+        return new ContextChunk(id, 0, "doc" + id, "", String.valueOf(c).repeat(38), score);
+    }
+
+    private int fixedTokens(String prefix, String suffix) {
+        return counter.count(prefix) + counter.count(suffix) + counter.count(PromptAssembler.CONTEXT_HEADER)
+                + PromptAssembler.MESSAGE_OVERHEAD;
+    }
+
+    @Test
+    void testDropsLowestScoringChunksFirst() {
+        List<ContextChunk> chunks = Arrays.asList(chunk(1, 'a', 0.5), chunk(2, 'b', 0.9), chunk(3, 'c', 0.7));
+        int fixed = fixedTokens("P:", ":S");
+        // 只够放两个片段
+        int window = fixed + 25 + 100;
+
+        AssembledPrompt prompt = assembler.assemble("P:", chunks, ":S", window, 100);
+
+        assertEquals(2, prompt.getIncludedChunks());
+        assertEquals(1, prompt.getDroppedChunks());
+        assertFalse(prompt.getSystemMessage().contains("a"));
+        assertTrue(prompt.getSystemMessage().startsWith("P:"));
+        assertEquals(":S", prompt.getUserMessage());
+        assertEquals(fixed + 20, prompt.getPromptTokens());
+        assertEquals(100, prompt.getCompletionTokens());
+    }
+
+    @Test
+    void testContextOrderedByDocumentRegardlessOfScore() {
+        ContextChunk second = new ContextChunk(2, 1, "doc2", "", "y".repeat(38), 0.1);
+        List<ContextChunk> first = Arrays.asList(chunk(3, 'c', 0.9), second, chunk(2, 'b', 0.5), chunk(1, 'a', 0.2));
+        List<ContextChunk> reversed = Arrays.asList(chunk(1, 'a', 0.8), chunk(2, 'b', 0.1), second, chunk(3, 'c', 0.3));
+
+        AssembledPrompt a = assembler.assemble("P:", first, "问题一", 10000, 100);
+        AssembledPrompt b = assembler.assemble("P:", reversed, "问题二", 10000, 100);
+
+        // 检索得分和问题不同，系统消息完全相同
+        assertEquals(a.getSystemMessage(), b.getSystemMessage());
+        String system = a.getSystemMessage();
+        assertTrue(system.indexOf('a') < system.indexOf('b'));
+        assertTrue(system.indexOf('b') < system.indexOf('y'));
+        assertTrue(system.indexOf('y') < system.indexOf('c'));
+    }
+
+    @Test
+    void testTruncatesTopChunkWhenNothingFits() {
+        ContextChunk big = new ContextChunk(1, 0, "doc1", "", "x".repeat(4000), 1.0);
+        int window = fixedTokens("P:", ":S") + 100 + 50;
+
+        AssembledPrompt prompt = assembler.assemble("P:", Collections.singletonList(big), ":S", window, 100);
+
+        assertTrue(prompt.isTruncated());
+        assertEquals(1, prompt.getIncludedChunks());
+        assertTrue(prompt.getPromptTokens() <= window - 100);
+        assertTrue(prompt.getSystemMessage().contains("x".repeat(100)));
+    }
+
+    @Test
+    void testEmptyContextAndCompletionLimitedByWindow() {
+        AssembledPrompt prompt = assembler.assemble("P:", Collections.emptyList(), ":S", 100, 1000);
+
+        assertTrue(prompt.getSystemMessage().contains(PromptAssembler.EMPTY_CONTEXT));
+        assertEquals(0, prompt.getIncludedChunks());
+        assertEquals(100 - prompt.getPromptTokens(), prompt.getCompletionTokens());
+    }
+
+    @Test
+    void testTokenCountsAreCached() {
+        TokenCounter cached = new TokenCounter(null, 2);
+        assertEquals(10, cached.count("a".repeat(40)));
+        assertEquals(10, cached.count("a".repeat(40)));
+        assertEquals(1, cached.getHits());
+        // 中文按 UTF-8 字节数的一半估算
+        assertEquals(3, cached.count("石墨"));
+        cached.count("b");
+        assertEquals(2, cached.size());
+    }
+}
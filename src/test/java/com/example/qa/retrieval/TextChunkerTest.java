@@ -0,0 +1,43 @@
+package com.example.qa.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TextChunker 测试类
+ */
+class TextChunkerTest {
+
+    @Test
+    void testShortParagraphsAreMerged() {
+        List<String> chunks = new TextChunker(10).split("一二三\n\n四五六\n七八九十一二");
+
+        assertEquals(Arrays.asList("一二三\n四五六", "七八九十一二"), chunks);
+    }
+
+    @Test
+    void testLongParagraphIsSplit() {
+        List<String> chunks = new TextChunker(4).split("一二三四五六七八九");
+
+        assertEquals(Arrays.asList("一二三四", "五六七八", "九"), chunks);
+        assertTrue(new TextChunker(4).split("  \n").isEmpty());
+    }
+
+    @Test
+    void testSplitsAtChineseSentenceBoundaries() {
+        List<String> chunks = new TextChunker(15).split("石墨烯导热性好。“它很轻！”成本仍然较高；需要优化工艺。");
+
+        assertEquals(Arrays.asList("石墨烯导热性好。“它很轻！”", "成本仍然较高；需要优化工艺。"), chunks);
+    }
+
+    @Test
+    void testOverlapRepeatsTrailingSentences() {
+        List<String> chunks = new TextChunker(10, 3).split("甲乙。丙丁。戊己。庚辛。壬癸。");
+
+        assertEquals(Arrays.asList("甲乙。丙丁。戊己。", "戊己。庚辛。壬癸。"), chunks);
+    }
+}
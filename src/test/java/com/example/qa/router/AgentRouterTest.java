@@ -56,33 +56,6 @@ class AgentRouterTest {
         assertEquals("fallback_agent", result, "null 查询应该返回 fallback_agent");
     }
 
-    @Test
-    void testCosineSimilarity() {
-        double[] a = {1.0, 2.0, 3.0};
-        double[] b = {1.0, 2.0, 3.0};
-        
-        // 使用反射调用私有方法
-        double similarity = ReflectionTestUtils.invokeMethod(agentRouter, "cosineSimilarity", a, b);
-        
-        assertEquals(1.0, similarity, 0.0001, "相同向量相似度应该为 1");
-        
-        double[] c = {0.0, 0.0, 0.0};
-        double[] d = {1.0, 0.0, 0.0};
-        double similarity2 = ReflectionTestUtils.invokeMethod(agentRouter, "cosineSimilarity", c, d);
-        
-        assertEquals(0.0, similarity2, 0.0001, "正交向量相似度应该为 0");
-    }
-
-    @Test
-    void testCosineSimilarityWithDifferentLength() {
-        double[] a = {1.0, 2.0};
-        double[] b = {1.0, 2.0, 3.0};
-        
-        assertThrows(IllegalArgumentException.class, () -> {
-            ReflectionTestUtils.invokeMethod(agentRouter, "cosineSimilarity", a, b);
-        });
-    }
-
     @Test
     void testClearCache() {
         // 清空缓存
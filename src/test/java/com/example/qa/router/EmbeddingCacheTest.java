@@ -0,0 +1,71 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingCache 测试类
+ * 测试字节预算、分段淘汰、TTL 和统计信息
+ */
+class EmbeddingCacheTest {
+
+    // 每个条目约 96 + 2 * 2 + 4 * 100 = 500 字节
+    private static float[] vector() {
+        return new float[100];
+    }
+
+    @Test
+    void testHitAndMissCounting() {
+        EmbeddingCache cache = new EmbeddingCache(10_000, 0);
+        cache.put("k1", vector());
+
+        assertNotNull(cache.get("k1"));
+        assertNull(cache.get("k2"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    void testByteBudgetIsEnforced() {
+        EmbeddingCache cache = new EmbeddingCache(2_000, 0);
+        for (int i = 0; i < 10; i++) {
+            cache.put("k" + i, vector());
+        }
+
+        assertTrue(cache.getSizeInBytes() <= 2_000, "缓存大小不应超过字节预算");
+        assertEquals(4, cache.size());
+        assertEquals(6, cache.getEvictionCount());
+    }
+
+    @Test
+    void testFrequentlyUsedEntrySurvivesScan() {
+        EmbeddingCache cache = new EmbeddingCache(2_000, 0);
+        cache.put("hot", vector());
+        cache.get("hot"); // 再次访问后晋升到保护段
+
+        // 大量只访问一次的条目不应把热点条目挤出
+        for (int i = 0; i < 20; i++) {
+            cache.put("cold" + i, vector());
+        }
+
+        assertNotNull(cache.get("hot"));
+    }
+
+    @Test
+    void testExpiredEntryIsNotReturned() throws Exception {
+        EmbeddingCache cache = new EmbeddingCache(10_000, 1);
+        cache.put("k1", vector());
+        Thread.sleep(5);
+
+        assertNull(cache.get("k1"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testTextNormalization() {
+        assertEquals("查询 专利 ABC", TextNormalizer.normalize("  查询　　专利\t\nＡＢＣ "));
+        assertEquals("", TextNormalizer.normalize(null));
+    }
+}
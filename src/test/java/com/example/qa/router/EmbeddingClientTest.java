@@ -0,0 +1,156 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingClient 测试类
+ * 使用本地 ExchangeFunction 模拟 embeddings 接口，不访问网络
+ */
+class EmbeddingClientTest {
+
+    private static final String BATCH_OF_FOUR = "{\"data\":[" +
+            "{\"index\":2,\"embedding\":[2.0]}," +
+            "{\"index\":0,\"embedding\":[0.0]}," +
+            "{\"index\":3,\"embedding\":[3.0]}," +
+            "{\"index\":1,\"embedding\":[1.0]}]}";
+
+    private final AtomicInteger httpCalls = new AtomicInteger();
+
+    private WebClient mockWebClient(String responseBody) {
+        return WebClient.builder()
+                .exchangeFunction(request -> {
+                    httpCalls.incrementAndGet();
+                    return Mono.just(ClientResponse.create(HttpStatus.OK)
+                            .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                            .body(responseBody)
+                            .build());
+                })
+                .build();
+    }
+
+    @Test
+    void testConcurrentRequestsAreCoalesced() {
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(BATCH_OF_FOUR), "test-key", "test-model", 1000, 4);
+
+        List<float[]> vectors = Flux.range(0, 4)
+                .flatMapSequential(i -> client.embed("text-" + i))
+                .collectList()
+                .block();
+
+        assertEquals(1, httpCalls.get(), "凑满一批后应只发送一次请求");
+        for (int i = 0; i < 4; i++) {
+            assertEquals(i, vectors.get(i)[0], 0.0001, "每个调用方应收到自己的向量");
+        }
+        assertEquals(4.0, (double) client.getStats().get("averageBatchSize"), 0.0001);
+        client.close();
+    }
+
+    @Test
+    void testWindowFlushesPartialBatch() {
+        String single = "{\"data\":[{\"index\":0,\"embedding\":[0.5,0.25]}]}";
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(single), "test-key", "test-model", 5, 32);
+
+        float[] vector = client.embed("text").block();
+
+        assertArrayEquals(new float[]{0.5f, 0.25f}, vector);
+        assertEquals(1, httpCalls.get());
+        client.close();
+    }
+
+    @Test
+    void testMissingApiKeyFails() {
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(BATCH_OF_FOUR), "", "test-model", 0, 4);
+
+        assertThrows(IllegalStateException.class, () -> client.embed("text").block());
+        assertEquals(0, httpCalls.get());
+        client.close();
+    }
+
+    @Test
+    void testBadInputFailsOnlyItsOwnCaller() {
+        List<Integer> batchSizes = new ArrayList<>();
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(BATCH_OF_FOUR), "test-key", "test-model", 1000, 4) {
+            @Override
+            public Mono<List<float[]>> embedBatch(List<String> texts) {
+                batchSizes.add(texts.size());
+                if (texts.contains("bad")) {
+                    return Mono.error(new EmbeddingApiException(400, "输入过长"));
+                }
+                return Mono.just(vectorsFor(texts));
+            }
+        };
+
+        List<Mono<float[]>> calls = List.of(client.embed("0"), client.embed("1"), client.embed("bad"), client.embed("3"));
+
+        assertEquals(0, calls.get(0).block(Duration.ofSeconds(5))[0], 0.0001);
+        assertEquals(1, calls.get(1).block(Duration.ofSeconds(5))[0], 0.0001);
+        assertThrows(EmbeddingClient.EmbeddingApiException.class, () -> calls.get(2).block(Duration.ofSeconds(5)));
+        assertEquals(3, calls.get(3).block(Duration.ofSeconds(5))[0], 0.0001);
+        // 4 -> 2 + 2 -> 含 bad 的一半再拆成 1 + 1
+        assertEquals(List.of(4, 2, 2, 1, 1), batchSizes);
+        assertEquals(2L, client.getStats().get("splitRetries"));
+        client.close();
+    }
+
+    @Test
+    void testShortResponseDoesNotLeaveCallersHanging() {
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(BATCH_OF_FOUR), "test-key", "test-model", 1000, 2) {
+            @Override
+            public Mono<List<float[]>> embedBatch(List<String> texts) {
+                List<float[]> vectors = vectorsFor(texts);
+                // 合并请求时少返回一条
+                return Mono.just(texts.size() > 1 ? vectors.subList(0, 1) : vectors);
+            }
+        };
+
+        Mono<float[]> first = client.embed("0");
+        Mono<float[]> second = client.embed("1");
+
+        assertEquals(0, first.block(Duration.ofSeconds(5))[0], 0.0001);
+        assertEquals(1, second.block(Duration.ofSeconds(5))[0], 0.0001);
+        client.close();
+    }
+
+    @Test
+    void testServerErrorFailsWholeBatchWithoutSplitting() {
+        AtomicInteger calls = new AtomicInteger();
+        EmbeddingClient client = new EmbeddingClient(mockWebClient(BATCH_OF_FOUR), "test-key", "test-model", 1000, 2) {
+            @Override
+            public Mono<List<float[]>> embedBatch(List<String> texts) {
+                calls.incrementAndGet();
+                return Mono.error(new EmbeddingApiException(503, "服务不可用"));
+            }
+        };
+
+        Mono<float[]> first = client.embed("0");
+        Mono<float[]> second = client.embed("1");
+
+        assertThrows(EmbeddingClient.EmbeddingApiException.class, () -> first.block(Duration.ofSeconds(5)));
+        assertThrows(EmbeddingClient.EmbeddingApiException.class, () -> second.block(Duration.ofSeconds(5)));
+        assertEquals(1, calls.get(), "服务整体不可用时不应拆分重试");
+        client.close();
+    }
+
+    // 以文本内容（数字）作为一维向量的值
+    private static List<float[]> vectorsFor(List<String> texts) {
+        List<float[]> vectors = new ArrayList<>();
+        for (String text : texts) {
+            vectors.add(new float[]{Float.parseFloat(text)});
+        }
+        return vectors;
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.qa.router;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * embeddings 响应解码的分配量对比（手动运行，不在单元测试中执行）
+ *
+ * 对比原来的 Map → JsonNode → float[] 解码与 EmbeddingResponseDecoder 每次调用分配的字节数和耗时。
+ * 运行方式：在 IDE 中直接运行 main，或
+ * java -cp target/classes:target/test-classes:&lt;依赖&gt; com.example.qa.router.EmbeddingDecodeBenchmark [批大小] [维度]
+ */
+public class EmbeddingDecodeBenchmark {
+
+    private static final int WARMUP = 2000;
+    private static final int ITERATIONS = 2000;
+
+    public static void main(String[] args) throws Exception {
+        int batch = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        int dimension = args.length > 1 ? Integer.parseInt(args[1]) : 1536;
+        byte[] response = buildResponse(batch, dimension);
+        ObjectMapper mapper = new ObjectMapper();
+
+        System.out.printf("响应大小: %d 字节（%d 条 x %d 维）%n", response.length, batch, dimension);
+        run("Map + valueToTree", () -> decodeWithTree(mapper, response, batch));
+        run("流式解码", () -> decodeStreaming(response, batch, dimension));
+    }
+
+    private static void run(String name, Decode decode) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long tid = Thread.currentThread().getId();
+        long sink = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            sink += decode.run();
+        }
+        long bytesBefore = threads.getThreadAllocatedBytes(tid);
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += decode.run();
+        }
+        long nanos = System.nanoTime() - start;
+        long bytes = threads.getThreadAllocatedBytes(tid) - bytesBefore;
+        System.out.printf("%-20s 每次分配 %,10d 字节, 每次耗时 %8.1f µs (%d)%n",
+                name, bytes / ITERATIONS, nanos / 1000.0 / ITERATIONS, sink & 1);
+    }
+
+    // 原实现：先解码为 Map，再转换成 JsonNode 树，最后逐个复制到 float[]
+    private static int decodeWithTree(ObjectMapper mapper, byte[] response, int batch) throws Exception {
+        Map<?, ?> map = mapper.readValue(response, Map.class);
+        JsonNode json = mapper.valueToTree(map);
+        float[][] vectors = new float[batch][];
+        for (JsonNode item : json.get("data")) {
+            JsonNode array = item.get("embedding");
+            float[] embedding = new float[array.size()];
+            for (int i = 0; i < array.size(); i++) {
+                embedding[i] = (float) array.get(i).asDouble();
+            }
+            vectors[item.path("index").asInt(0)] = embedding;
+        }
+        return vectors[0].length;
+    }
+
+    private static int decodeStreaming(byte[] response, int batch, int dimension) throws Exception {
+        try (EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder(batch, dimension)) {
+            // 模拟网络按 8KB 分块到达
+            for (int i = 0; i < response.length; i += 8192) {
+                decoder.feed(ByteBuffer.wrap(response, i, Math.min(8192, response.length - i)));
+            }
+            return decoder.finish().get(0).length;
+        }
+    }
+
+    private static byte[] buildResponse(int batch, int dimension) {
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder("{\"object\":\"list\",\"data\":[");
+        for (int b = 0; b < batch; b++) {
+            if (b > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"object\":\"embedding\",\"index\":").append(b).append(",\"embedding\":[");
+            for (int d = 0; d < dimension; d++) {
+                if (d > 0) {
+                    sb.append(',');
+                }
+                sb.append((float) (random.nextGaussian() * 0.05));
+            }
+            sb.append("]}");
+        }
+        sb.append("],\"model\":\"text-embedding-3-small\",\"usage\":{\"prompt_tokens\":8,\"total_tokens\":8}}");
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @FunctionalInterface
+    private interface Decode {
+        int run() throws Exception;
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * EmbeddingResponseDecoder 测试类
+ * 测试分块输入、index 乱序、无关字段以及数据异常
+ */
+class EmbeddingResponseDecoderTest {
+
+    private static final String RESPONSE = "{\"object\":\"list\",\"data\":[" +
+            "{\"object\":\"embedding\",\"index\":1,\"embedding\":[0.5,-1,2.25e-1]}," +
+            "{\"embedding\":[1.0,2.0,3.0],\"index\":0,\"extra\":{\"data\":[9]}}]," +
+            "\"model\":\"test-model\",\"usage\":{\"prompt_tokens\":4,\"total_tokens\":4}}";
+
+    @Test
+    void testDecodesAcrossArbitraryChunkBoundaries() throws Exception {
+        byte[] bytes = RESPONSE.getBytes(StandardCharsets.UTF_8);
+        for (int chunk = 1; chunk <= bytes.length; chunk += 7) {
+            try (EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder(2, 0)) {
+                for (int i = 0; i < bytes.length; i += chunk) {
+                    decoder.feed(ByteBuffer.wrap(bytes, i, Math.min(chunk, bytes.length - i)));
+                }
+                List<float[]> vectors = decoder.finish();
+
+                assertArrayEquals(new float[]{1.0f, 2.0f, 3.0f}, vectors.get(0), "分块大小 " + chunk);
+                assertArrayEquals(new float[]{0.5f, -1.0f, 0.225f}, vectors.get(1), "分块大小 " + chunk);
+                assertEquals(3, decoder.getDimension());
+            }
+        }
+    }
+
+    @Test
+    void testDimensionHintDoesNotLimitVectorLength() throws Exception {
+        try (EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder(2, 1)) {
+            decoder.feed(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+            assertEquals(3, decoder.finish().get(0).length);
+        }
+    }
+
+    @Test
+    void testCountMismatchFails() throws Exception {
+        try (EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder(3, 0)) {
+            decoder.feed(ByteBuffer.wrap(RESPONSE.getBytes(StandardCharsets.UTF_8)));
+            assertThrows(RuntimeException.class, decoder::finish);
+        }
+        try (EmbeddingResponseDecoder decoder = new EmbeddingResponseDecoder(1, 0)) {
+            decoder.feed(ByteBuffer.wrap("{\"error\":{}}".getBytes(StandardCharsets.UTF_8)));
+            assertThrows(RuntimeException.class, decoder::finish);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.test.context.runner.ApplicationContextRunner;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 示例向量快照测试
+ * 用录制文件生成快照（与 embedding-snapshot profile 的 recorded 模式相同），再由 AgentRouter 启动时加载；
+ * embeddings 接口地址不可连接，示例向量只能来自快照
+ */
+class EmbeddingSnapshotRoutingTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testRouterWarmsUpFromRecordedSnapshot() throws Exception {
+        Path examples = Paths.get(getClass().getResource("/snapshot/agent_examples.txt").toURI());
+        Path recording = Paths.get(getClass().getResource("/snapshot/recorded_embeddings.json").toURI());
+        Path snapshot = tempDir.resolve("agent_embeddings.snapshot");
+
+        EmbeddingSnapshotBuilder.main(new String[]{examples.toString(), snapshot.toString(),
+                "--mode", "recorded", "--recording", recording.toString()});
+        assertTrue(Files.size(snapshot) > 0);
+
+        new ApplicationContextRunner()
+                .withBean(AgentRouter.class)
+                .withPropertyValues(
+                        "openai.api-key=test-key",
+                        "openai.base-url=http://127.0.0.1:9",
+                        "agent-router.examples-path=" + examples,
+                        "agent-router.examples-watch=false",
+                        "agent-router.snapshot-location=" + snapshot.toUri(),
+                        "agent-router.vector-db-path=" + tempDir.resolve("agent_embeddings.db"),
+                        "agent-router.disk-cache.enabled=false",
+                        "agent-router.cache.max-bytes=1048576",
+                        "agent-router.lexical.enabled=false",
+                        "agent-router.local.fallback=false",
+                        "agent-router.warmup.async=false")
+                .run(context -> {
+                    AgentRouter router = context.getBean(AgentRouter.class);
+                    assertEquals(AgentRouter.Readiness.READY, router.getReadiness(), "所有示例向量都应来自快照");
+
+                    // 快照中的向量同时写入内存缓存，示例原文路由不需要调用接口
+                    assertEquals("patent_search", router.routeAsync("搜索专利信息").block().getAgentCode());
+                    assertEquals("formula_assistant", router.routeAsync("优化化学配方").block().getAgentCode());
+                    // 内存缓存按配置创建
+                    assertEquals(1048576L, router.getCacheStats().get("maxBytes"));
+                });
+    }
+
+    @Test
+    void testRecordedModeFailsWhenRecordingMissesExamples() {
+        Path examples = Paths.get("src/main/resources/agent_examples.txt");
+        Path recording = tempDir.resolve("missing.json");
+
+        assertThrows(IllegalStateException.class, () -> EmbeddingSnapshotBuilder.main(new String[]{
+                examples.toString(), tempDir.resolve("out.snapshot").toString(),
+                "--mode", "recorded", "--recording", recording.toString()}));
+    }
+}
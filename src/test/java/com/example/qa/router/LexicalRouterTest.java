@@ -0,0 +1,53 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LexicalRouter 测试类
+ * 测试 Aho-Corasick 多模式匹配与关键词路由的置信度判断
+ */
+class LexicalRouterTest {
+
+    private static LexicalRouter router() {
+        Map<String, Map<String, Double>> keywords = new LinkedHashMap<>();
+        keywords.put("patent_search", Map.of("专利", 1.0, "patent", 1.0, "用途", 0.5));
+        keywords.put("formula_assistant", Map.of("配方", 1.0, "比例", 0.5));
+        keywords.put("material_scout", Map.of("材料", 1.0));
+        return LexicalRouter.build(keywords, 1.0, 0.8);
+    }
+
+    @Test
+    void testAhoCorasickFindsOverlappingPatterns() {
+        AhoCorasick matcher = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+
+        List<AhoCorasick.Match> matches = matcher.findAll("ushers");
+
+        assertEquals("[she[1,4), he[2,4), hers[2,6)]", matches.toString());
+    }
+
+    @Test
+    void testUnambiguousKeywordRoutesImmediately() {
+        RoutingDecision decision = router().route("帮我查一下这个 Patent 的用途");
+
+        assertNotNull(decision);
+        assertEquals("patent_search", decision.getAgentCode());
+        assertEquals(1.0, decision.getScore(), 0.0001);
+    }
+
+    @Test
+    void testAmbiguousSignalIsDeferred() {
+        // 材料(1.0) 与 比例(0.5) 同时命中，最高分占比不足
+        assertNull(router().route("推荐材料比例"));
+        // 只命中弱关键词，得分不足
+        assertNull(router().route("这个东西的用途"));
+        // 没有命中任何关键词
+        assertNull(router().route("你好"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LocalNgramEmbedder 测试类
+ * 测试向量归一化、确定性以及中文近义问题的相似度
+ */
+class LocalNgramEmbedderTest {
+
+    private static final List<String> CORPUS = Arrays.asList(
+            "查询专利用途", "找一下相关专利", "搜索专利信息",
+            "帮我分析配方", "优化化学配方", "推荐材料比例",
+            "解析文档内容", "分析PDF文件", "提取文档摘要");
+
+    private static double dot(float[] a, float[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Test
+    void testVectorIsNormalizedAndDeterministic() {
+        LocalNgramEmbedder embedder = LocalNgramEmbedder.fit(CORPUS, 256);
+
+        float[] first = embedder.embed("帮我查一下专利");
+        float[] second = LocalNgramEmbedder.fit(CORPUS, 256).embed("帮我查一下专利");
+
+        assertEquals(256, first.length);
+        assertEquals(1.0, dot(first, first), 0.0001);
+        assertArrayEquals(first, second);
+    }
+
+    @Test
+    void testSimilarQuestionsScoreHigher() {
+        LocalNgramEmbedder embedder = LocalNgramEmbedder.fit(CORPUS, 512);
+        float[] query = embedder.embed("这个专利的用途是什么");
+
+        double patent = dot(query, embedder.embed("查询专利用途"));
+        double formula = dot(query, embedder.embed("优化化学配方"));
+
+        assertTrue(patent > formula, "共享字符 n-gram 的示例应更相似");
+    }
+
+    @Test
+    void testEmptyTextGivesZeroVector() {
+        LocalNgramEmbedder embedder = LocalNgramEmbedder.fit(CORPUS, 64);
+
+        assertEquals(0.0, dot(embedder.embed("  "), embedder.embed("  ")), 0.0);
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.qa.router;
+
+import com.example.vector.LocalVectorStore.Item;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PrototypeIndex 测试类
+ * 测试质心与 k-means 原型的构建和打分
+ */
+class PrototypeIndexTest {
+
+    private final List<Item> items = Arrays.asList(
+            new Item("a1", "agent_a", new float[]{1.0f, 0.1f, 0.0f}),
+            new Item("a2", "agent_a", new float[]{0.9f, -0.1f, 0.0f}),
+            new Item("a3", "agent_a", new float[]{0.0f, 0.1f, 1.0f}),
+            new Item("b1", "agent_b", new float[]{0.0f, 1.0f, 0.1f}),
+            new Item("b2", "agent_b", new float[]{0.1f, 0.9f, 0.0f})
+    );
+
+    @Test
+    void testCentroidPrototypes() {
+        PrototypeIndex index = PrototypeIndex.build(items, 1, 42L);
+
+        assertEquals(2, index.getAgentCount());
+        assertEquals(2, index.getPrototypeCount());
+
+        List<PrototypeIndex.AgentScore> scores = index.score(new float[]{0.1f, 1.0f, 0.0f});
+        assertEquals("agent_b", scores.get(0).agentCode);
+        assertTrue(scores.get(0).score > scores.get(1).score, "结果应按得分降序");
+    }
+
+    @Test
+    void testKMeansPrototypesCoverSeparateClusters() {
+        PrototypeIndex centroidIndex = PrototypeIndex.build(items, 1, 42L);
+        PrototypeIndex kmeansIndex = PrototypeIndex.build(items, 2, 42L);
+
+        assertEquals(4, kmeansIndex.getPrototypeCount(), "每个 Agent 应有 2 个原型");
+
+        // agent_a 的离群示例 a3 单独成簇，多原型下得分应明显高于单一质心
+        float[] query = {0.0f, 0.1f, 1.0f};
+        double centroidScore = scoreOf(centroidIndex.score(query), "agent_a");
+        double kmeansScore = scoreOf(kmeansIndex.score(query), "agent_a");
+        assertTrue(kmeansScore > centroidScore);
+        assertEquals(1.0, kmeansScore, 0.001);
+    }
+
+    private double scoreOf(List<PrototypeIndex.AgentScore> scores, String agentCode) {
+        return scores.stream().filter(s -> s.agentCode.equals(agentCode)).findFirst().orElseThrow().score;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.qa.router;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * RoutingDecisionCache 测试类
+ * 测试 SimHash 指纹对细微差异的稳定性以及按汉明距离命中
+ */
+class RoutingDecisionCacheTest {
+
+    private static RoutingDecision decision(String agentCode) {
+        return new RoutingDecision(agentCode, 0.9, Collections.emptyList());
+    }
+
+    @Test
+    void testPunctuationAndWidthVariantsShareFingerprint() {
+        long base = SimHash.fingerprint("帮我查询一下这个专利的用途");
+
+        assertEquals(base, SimHash.fingerprint("帮我查询一下这个专利的用途？"));
+        assertEquals(base, SimHash.fingerprint(" 帮我查询一下 这个专利的用途!! "));
+        assertEquals(SimHash.fingerprint("PDF 摘要"), SimHash.fingerprint("ＰＤＦ　摘要"));
+    }
+
+    @Test
+    void testDefaultDistanceSeparatesNearDuplicatesFromDifferentQuestions() {
+        int maxDistance = RoutingDecisionCache.DEFAULT_MAX_DISTANCE;
+        long base = SimHash.fingerprint("请帮我查询一下专利CN112345678A的主要用途、应用领域以及相关的技术背景");
+
+        // 句尾多一个语气词仍视为同一问题
+        assertTrue(SimHash.distance(base,
+                SimHash.fingerprint("请帮我查询一下专利CN112345678A的主要用途、应用领域以及相关的技术背景吧")) <= maxDistance);
+        // 专利号不同是另一个问题
+        assertTrue(SimHash.distance(base,
+                SimHash.fingerprint("请帮我查询一下专利CN112345679A的主要用途、应用领域以及相关的技术背景")) > maxDistance);
+        assertTrue(SimHash.distance(SimHash.fingerprint("帮我查询一下这个专利的用途"),
+                SimHash.fingerprint("帮我查询一下那个专利的用途")) > maxDistance);
+    }
+
+    @Test
+    void testNearFingerprintHitsAndFarFingerprintMisses() {
+        RoutingDecisionCache cache = new RoutingDecisionCache(3, 100, 0);
+        long fingerprint = 0x0123456789ABCDEFL;
+        cache.put(fingerprint, decision("patent_search"));
+
+        // 翻转 3 位，落在不同的段里
+        long near = fingerprint ^ (1L | (1L << 20) | (1L << 40));
+        assertEquals("patent_search", cache.get(near).getAgentCode());
+
+        long far = fingerprint ^ 0xFL;
+        assertNull(cache.get(far));
+        assertEquals(1L, cache.getStats().get("nearHits"));
+    }
+
+    @Test
+    void testLeastRecentlyUsedEntryIsEvicted() {
+        RoutingDecisionCache cache = new RoutingDecisionCache(0, 2, 0);
+        cache.put(1L, decision("a"));
+        cache.put(2L, decision("b"));
+        cache.get(1L);
+        cache.put(3L, decision("c"));
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(1L));
+        assertNull(cache.get(2L));
+    }
+}
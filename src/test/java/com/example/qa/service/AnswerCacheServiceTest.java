@@ -0,0 +1,106 @@
+package com.example.qa.service;
+
+import com.example.qa.router.AgentRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Flux;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 回答缓存服务测试类
+ * 测试上下文版本变化后已缓存的回答失效：rag 模式下跟随片段索引版本，all 模式下跟随文档数据版本
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class AnswerCacheServiceTest {
+
+    private static final String QUESTION = "石墨烯的导热系数是多少";
+    private static final float[] VECTOR = {0.6f, 0.8f};
+
+    @Mock
+    private AgentRouter agentRouter;
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private DocumentRetrievalService documentRetrievalService;
+
+    private final MaterialsContextService materialsContextService = new MaterialsContextService();
+    private final AnswerCacheService answerCacheService = new AnswerCacheService();
+
+    private final AtomicLong dataVersion = new AtomicLong(1);
+    private final AtomicLong indexVersion = new AtomicLong(1);
+    private final AtomicInteger producerCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(documentService.getDataVersion()).thenAnswer(invocation -> dataVersion.get());
+        when(documentRetrievalService.getIndexVersion()).thenAnswer(invocation -> indexVersion.get());
+        ReflectionTestUtils.setField(materialsContextService, "documentService", documentService);
+        ReflectionTestUtils.setField(materialsContextService, "documentRetrievalService", documentRetrievalService);
+
+        ReflectionTestUtils.setField(answerCacheService, "enabled", true);
+        ReflectionTestUtils.setField(answerCacheService, "similarityThreshold", 0.95);
+        ReflectionTestUtils.setField(answerCacheService, "maxEntries", 100);
+        ReflectionTestUtils.setField(answerCacheService, "ttlSeconds", 3600L);
+        ReflectionTestUtils.setField(answerCacheService, "localDimension", 64);
+        ReflectionTestUtils.setField(answerCacheService, "agentRouter", agentRouter);
+        ReflectionTestUtils.setField(answerCacheService, "materialsContextService", materialsContextService);
+        answerCacheService.init();
+    }
+
+    private List<String> ask() {
+        return answerCacheService.answer(QUESTION, "material_scout", VECTOR, () -> {
+            producerCalls.incrementAndGet();
+            return Flux.just("导热系数约为 ", "5000 W/(m·K)");
+        }).collectList().block();
+    }
+
+    @Test
+    void testIndexVersionBumpTurnsHitIntoMissInRagMode() {
+        ReflectionTestUtils.setField(materialsContextService, "retrievalMode", "rag");
+
+        ask();
+        assertEquals(Arrays.asList("导热系数约为 ", "5000 W/(m·K)"), ask());
+        assertEquals(1, producerCalls.get(), "版本未变化时第二次应命中缓存");
+
+        // 文档已修改但索引器尚未替换片段：检索到的仍是旧片段，缓存的回答仍然有效
+        dataVersion.incrementAndGet();
+        ask();
+        assertEquals(1, producerCalls.get());
+
+        // 索引器替换片段后索引版本递增，缓存的回答失效
+        indexVersion.incrementAndGet();
+        ask();
+        assertEquals(2, producerCalls.get(), "索引版本变化后应重新生成回答");
+        ask();
+        assertEquals(2, producerCalls.get(), "新版本下生成的回答应再次命中");
+    }
+
+    @Test
+    void testDataVersionBumpTurnsHitIntoMissInAllMode() {
+        ReflectionTestUtils.setField(materialsContextService, "retrievalMode", "all");
+
+        ask();
+        ask();
+        assertEquals(1, producerCalls.get());
+
+        dataVersion.incrementAndGet();
+        ask();
+        assertEquals(2, producerCalls.get(), "数据版本变化后应重新生成回答");
+    }
+}
@@ -0,0 +1,180 @@
+package com.example.qa.service;
+
+import com.example.qa.entity.Document;
+import com.example.qa.entity.DocumentIndexEvent;
+import com.example.qa.repository.DocumentIndexEventRepository;
+import com.example.qa.router.AgentRouter;
+import com.example.vector.DocumentChunkStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.springframework.test.util.ReflectionTestUtils;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 文档片段索引服务测试类
+ * 测试对账与增量事件串行执行、失败事件的退避与死信
+ */
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+class DocumentIndexServiceTest {
+
+    private static final float[] QUERY = {1.0f, 0.0f};
+
+    @Mock
+    private DocumentService documentService;
+
+    @Mock
+    private DocumentIndexEventRepository eventRepository;
+
+    @Mock
+    private AgentRouter agentRouter;
+
+    @InjectMocks
+    private DocumentIndexService documentIndexService;
+
+    // 模拟的文档表与发件箱表
+    private final Map<Long, Document> documents = new LinkedHashMap<>();
+    private final List<DocumentIndexEvent> events = new CopyOnWriteArrayList<>();
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(documentIndexService, "dbPath", ":memory:");
+        ReflectionTestUtils.setField(documentIndexService, "chunkSize", 500);
+        ReflectionTestUtils.setField(documentIndexService, "chunkOverlap", 0);
+        ReflectionTestUtils.setField(documentIndexService, "pollIntervalMs", 50L);
+        ReflectionTestUtils.setField(documentIndexService, "batchSize", 50);
+        ReflectionTestUtils.setField(documentIndexService, "maxAttempts", 2);
+        ReflectionTestUtils.setField(documentIndexService, "retryInitialDelayMs", 50L);
+        ReflectionTestUtils.setField(documentIndexService, "retryMaxDelayMs", 100L);
+        ReflectionTestUtils.setField(documentIndexService, "retentionHours", 24L);
+
+        when(documentService.getDataVersion()).thenAnswer(invocation -> dataVersion.get());
+        when(documentService.getAllActiveDocuments()).thenAnswer(invocation -> new ArrayList<>(documents.values()));
+        when(documentService.getDocumentById(anyLong()))
+                .thenAnswer(invocation -> Optional.ofNullable(documents.get(invocation.<Long>getArgument(0))));
+        when(eventRepository.findDueEvents(any(), any())).thenAnswer(invocation -> {
+            LocalDateTime now = invocation.getArgument(0);
+            List<DocumentIndexEvent> due = new ArrayList<>();
+            for (DocumentIndexEvent event : events) {
+                if (event.getProcessedAt() == null && event.getDeadLetteredAt() == null
+                        && (event.getNextAttemptAt() == null || !event.getNextAttemptAt().isAfter(now))) {
+                    due.add(event);
+                }
+            }
+            return due;
+        });
+        when(eventRepository.findFirstByProcessedAtIsNullAndDeadLetteredAtIsNullOrderByNextAttemptAtAsc())
+                .thenAnswer(invocation -> events.stream()
+                        .filter(event -> event.getProcessedAt() == null && event.getDeadLetteredAt() == null)
+                        .min(Comparator.comparing(DocumentIndexEvent::getNextAttemptAt,
+                                Comparator.nullsFirst(Comparator.naturalOrder()))));
+    }
+
+    @AfterEach
+    void tearDown() {
+        documentIndexService.destroy();
+    }
+
+    @Test
+    void testEventDuringSlowReindexIsNotOverwritten() throws Exception {
+        documentIndexService.init();
+        Document document = document(1L, "旧内容。");
+        AtomicInteger concurrentEmbeds = new AtomicInteger();
+        AtomicInteger maxConcurrentEmbeds = new AtomicInteger();
+        when(agentRouter.embedBatch(anyList())).thenAnswer(invocation -> {
+            List<String> texts = invocation.getArgument(0);
+            maxConcurrentEmbeds.accumulateAndGet(concurrentEmbeds.incrementAndGet(), Math::max);
+            try {
+                if (texts.get(0).contains("旧内容")) {
+                    // 对账正在向量化旧内容时文档被修改，写入新的索引事件
+                    documents.put(1L, document(1L, "新内容。"));
+                    events.add(new DocumentIndexEvent(1L, DocumentIndexEvent.UPSERT));
+                    dataVersion.incrementAndGet();
+                    // 给轮询留出足够的时间，串行执行时它必须等对账结束
+                    Thread.sleep(300);
+                }
+                return Mono.just(vectors(texts.size()));
+            } finally {
+                concurrentEmbeds.decrementAndGet();
+            }
+        });
+
+        // 文档没有索引事件（如发件箱引入之前写入），只能由对账补齐
+        documents.put(1L, document);
+        documentIndexService.reindex().block(Duration.ofSeconds(5));
+
+        awaitTrue(() -> events.get(0).getProcessedAt() != null);
+        assertEquals(1, maxConcurrentEmbeds.get(), "对账与事件处理不应同时执行");
+        List<DocumentChunkStore.Result> results = documentIndexService.query(QUERY, 5, 20, 1.0, -1.0);
+        assertEquals(1, results.size());
+        assertEquals("新内容。", results.get(0).content, "事件处理应在对账之后，索引为最新内容");
+    }
+
+    @Test
+    void testFailedEventBacksOffThenBecomesDeadLetter() throws Exception {
+        when(agentRouter.embedBatch(anyList())).thenReturn(Mono.error(new IllegalStateException("接口不可用")));
+        documentIndexService.init();
+
+        documents.put(1L, document(1L, "内容。"));
+        DocumentIndexEvent event = new DocumentIndexEvent(1L, DocumentIndexEvent.UPSERT);
+        events.add(event);
+        dataVersion.incrementAndGet();
+
+        awaitTrue(() -> event.getAttempts() >= 1);
+        assertNull(event.getDeadLetteredAt(), "第一次失败后应等待重试");
+        assertNotNull(event.getNextAttemptAt(), "失败的事件应安排下一次重试时间");
+        assertEquals("接口不可用", event.getLastError());
+
+        // 版本号不再变化，重试由退避时间驱动
+        awaitTrue(() -> event.getDeadLetteredAt() != null);
+        assertEquals(2, event.getAttempts());
+        assertNull(event.getProcessedAt(), "死信不应标记为已完成");
+        assertEquals(1L, documentIndexService.getStats().get("deadLetteredEvents"));
+    }
+
+    private static Document document(long id, String content) {
+        Document document = new Document();
+        document.setId(id);
+        document.setTitle("文档" + id);
+        document.setContent(content);
+        return document;
+    }
+
+    private static List<float[]> vectors(int count) {
+        List<float[]> vectors = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            vectors.add(QUERY.clone());
+        }
+        return vectors;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("等待超时");
+            }
+            Thread.sleep(20);
+        }
+    }
+}
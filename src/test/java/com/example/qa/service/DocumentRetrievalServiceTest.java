@@ -0,0 +1,91 @@
+package com.example.qa.service;
+
+import com.example.qa.router.AgentRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 文档检索服务测试类
+ * 测试问题向量的来源：优先复用路由向量，其次内存缓存（含预取的向量），最后才单独计算
+ */
+@ExtendWith(MockitoExtension.class)
+class DocumentRetrievalServiceTest {
+
+    @Mock
+    private DocumentIndexService documentIndexService;
+
+    @Mock
+    private AgentRouter agentRouter;
+
+    @InjectMocks
+    private DocumentRetrievalService documentRetrievalService;
+
+    @BeforeEach
+    void setUp() {
+        when(agentRouter.getSearchScheduler()).thenReturn(Schedulers.immediate());
+        when(documentIndexService.getStats()).thenReturn(Collections.emptyMap());
+    }
+
+    @Test
+    void testReusesRoutingVectorFromContext() {
+        float[] routingVector = {1.0f, 0.0f};
+        when(documentIndexService.query(same(routingVector), eq(5), anyInt(), anyDouble(), eq(0.3)))
+                .thenReturn(Collections.emptyList());
+
+        documentRetrievalService.retrieve("石墨烯的导热系数", 5, 0.3)
+                .contextWrite(context -> context.put(DocumentRetrievalService.QUERY_VECTOR, routingVector))
+                .block();
+
+        verify(agentRouter, never()).embed(anyString());
+        verify(agentRouter, never()).getCachedEmbedding(anyString());
+        Map<String, Object> stats = documentRetrievalService.getStats();
+        assertEquals(1L, stats.get("routingVectorReuses"));
+        assertEquals(0L, stats.get("queryEmbeds"));
+    }
+
+    @Test
+    void testEmbedsQuestionWhenRoutingHadNoVector() {
+        float[] vector = {0.0f, 1.0f};
+        when(agentRouter.getCachedEmbedding("石墨烯的导热系数")).thenReturn(null);
+        when(agentRouter.embed("石墨烯的导热系数")).thenReturn(Mono.just(vector));
+        when(documentIndexService.query(same(vector), eq(5), anyInt(), anyDouble(), eq(0.3)))
+                .thenReturn(Collections.emptyList());
+
+        documentRetrievalService.retrieve("石墨烯的导热系数", 5, 0.3).block();
+
+        Map<String, Object> stats = documentRetrievalService.getStats();
+        assertEquals(0L, stats.get("routingVectorReuses"));
+        assertEquals(1L, stats.get("queryEmbeds"), "检索单独计算的向量应计入 queryEmbeds");
+    }
+
+    @Test
+    void testPrefetchWarmsVectorWithoutCountingQueryEmbed() {
+        float[] vector = {0.0f, 1.0f};
+        when(agentRouter.getCachedEmbedding("石墨烯的导热系数")).thenReturn(null, vector);
+        when(agentRouter.prefetchEmbedding("石墨烯的导热系数")).thenReturn(Mono.just(vector));
+        when(documentIndexService.query(same(vector), eq(5), anyInt(), anyDouble(), eq(0.3)))
+                .thenReturn(Collections.emptyList());
+
+        documentRetrievalService.prefetch("石墨烯的导热系数", null).block();
+        documentRetrievalService.retrieve("石墨烯的导热系数", 5, 0.3).block();
+
+        verify(agentRouter, never()).embed(anyString());
+        Map<String, Object> stats = documentRetrievalService.getStats();
+        assertEquals(1L, stats.get("prefetchEmbeds"));
+        assertEquals(1L, stats.get("cachedVectorHits"), "正式检索应命中预取的向量");
+        assertEquals(0L, stats.get("queryEmbeds"));
+    }
+}
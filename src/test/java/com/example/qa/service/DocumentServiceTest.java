@@ -1,6 +1,7 @@
 package com.example.qa.service;
 
 import com.example.qa.entity.Document;
+import com.example.qa.repository.DocumentIndexEventRepository;
 import com.example.qa.repository.DocumentRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -26,6 +27,9 @@ class DocumentServiceTest {
     
     @Mock
     private DocumentRepository documentRepository;
+
+    @Mock
+    private DocumentIndexEventRepository documentIndexEventRepository;
     
     @InjectMocks
     private DocumentService documentService;
@@ -221,40 +225,40 @@ class DocumentServiceTest {
     @Test
     void testSoftDeleteDocument() {
         // Given
-        when(documentRepository.softDeleteById(1L, any(LocalDateTime.class))).thenReturn(1);
+        when(documentRepository.softDeleteById(eq(1L), any(LocalDateTime.class))).thenReturn(1);
         
         // When
         boolean result = documentService.softDeleteDocument(1L);
         
         // Then
         assertTrue(result);
-        verify(documentRepository).softDeleteById(1L, any(LocalDateTime.class));
+        verify(documentRepository).softDeleteById(eq(1L), any(LocalDateTime.class));
     }
     
     @Test
     void testSoftDeleteDocumentNotFound() {
         // Given
-        when(documentRepository.softDeleteById(999L, any(LocalDateTime.class))).thenReturn(0);
+        when(documentRepository.softDeleteById(eq(999L), any(LocalDateTime.class))).thenReturn(0);
         
         // When
         boolean result = documentService.softDeleteDocument(999L);
         
         // Then
         assertFalse(result);
-        verify(documentRepository).softDeleteById(999L, any(LocalDateTime.class));
+        verify(documentRepository).softDeleteById(eq(999L), any(LocalDateTime.class));
     }
     
     @Test
     void testRestoreDocument() {
         // Given
-        when(documentRepository.restoreById(1L, any(LocalDateTime.class))).thenReturn(1);
+        when(documentRepository.restoreById(eq(1L), any(LocalDateTime.class))).thenReturn(1);
         
         // When
         boolean result = documentService.restoreDocument(1L);
         
         // Then
         assertTrue(result);
-        verify(documentRepository).restoreById(1L, any(LocalDateTime.class));
+        verify(documentRepository).restoreById(eq(1L), any(LocalDateTime.class));
     }
     
     @Test
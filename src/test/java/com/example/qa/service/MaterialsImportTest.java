@@ -200,13 +200,13 @@ public class MaterialsImportTest {
         assertFalse(searchResults.isEmpty());
         
         // 测试按内容搜索
-        List<Document> contentResults = documentService.searchByContent("Eureka");
+        List<Document> contentResults = documentService.searchByContent("专利");
         assertFalse(contentResults.isEmpty());
         
         System.out.println("搜索测试通过:");
         System.out.println("- 核心优势分类文档数量: " + coreAdvantageDocs.size());
         System.out.println("- 包含'材料'关键词的文档数量: " + searchResults.size());
-        System.out.println("- 包含'Eureka'内容的文档数量: " + contentResults.size());
+        System.out.println("- 包含'专利'内容的文档数量: " + contentResults.size());
     }
 
     /**
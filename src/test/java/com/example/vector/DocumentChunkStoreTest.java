@@ -0,0 +1,93 @@
+package com.example.vector;
+
+import com.example.vector.DocumentChunkStore.Chunk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DocumentChunkStore 测试类
+ * 测试按文档替换片段、相似度下限、MMR 去重、删除与批量变更
+ */
+class DocumentChunkStoreTest {
+
+    private DocumentChunkStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new DocumentChunkStore(":memory:");
+        store.replaceDocument(1L, "h1", Arrays.asList(
+                new Chunk(0, "文档一", "A", new float[]{1.0f, 0.0f}),
+                new Chunk(1, "文档一", "B", new float[]{0.6f, 0.8f})));
+        store.replaceDocument(2L, "h2", Collections.singletonList(
+                new Chunk(0, "文档二", "C", new float[]{0.0f, 1.0f})));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void testTopKRespectsMinSimilarity() {
+        List<DocumentChunkStore.Result> results = store.queryTopK(new float[]{1.0f, 0.0f}, 3, 0.5);
+
+        assertEquals(2, results.size(), "相似度为 0 的片段不应返回");
+        assertEquals("A", results.get(0).content);
+        assertEquals("B", results.get(1).content);
+    }
+
+    @Test
+    void testReplaceAndDeleteDocument() throws Exception {
+        store.replaceDocument(1L, "h1-v2", Collections.singletonList(
+                new Chunk(0, "文档一", "A2", new float[]{1.0f, 0.0f})));
+        assertEquals(2, store.size());
+        assertEquals("h1-v2", store.listSourceHashes().get(1L));
+
+        store.deleteDocuments(Collections.singletonList(2L));
+        assertEquals(1, store.size());
+        assertFalse(store.listSourceHashes().containsKey(2L));
+    }
+
+    @Test
+    void testApplyChangesReplacesAndDeletesInOneBatch() throws Exception {
+        store.applyChanges(Arrays.asList(
+                        new DocumentChunkStore.DocumentChunks(1L, "h1-v2", Collections.singletonList(
+                                new Chunk(0, "文档一", "A2", new float[]{1.0f, 0.0f}))),
+                        new DocumentChunkStore.DocumentChunks(3L, "h3", Collections.singletonList(
+                                new Chunk(0, "文档三", "D", new float[]{0.0f, 1.0f})))),
+                Collections.singletonList(2L));
+
+        assertEquals(2, store.size());
+        assertEquals("h1-v2", store.listSourceHashes().get(1L));
+        assertEquals("h3", store.listSourceHashes().get(3L));
+        assertFalse(store.listSourceHashes().containsKey(2L));
+        List<DocumentChunkStore.Result> results = store.queryTopK(new float[]{0.0f, 1.0f}, 3, 0.5);
+        assertEquals(1, results.size(), "内存快照应与数据库一致");
+        assertEquals("D", results.get(0).content);
+    }
+
+    @Test
+    void testQueryMMRDemotesNearDuplicateChunks() throws Exception {
+        // 文档三的两个片段几乎相同（如相邻片段的重叠部分），都比文档二的片段更接近查询
+        store.replaceDocument(3L, "h3", Arrays.asList(
+                new Chunk(0, "文档三", "D1", new float[]{0.8f, 0.6f}),
+                new Chunk(1, "文档三", "D2", new float[]{0.79f, 0.61f})));
+        float[] query = {0.85f, 0.53f};
+
+        List<DocumentChunkStore.Result> topK = store.queryTopK(query, 2, 0.0);
+        assertEquals("D1", topK.get(0).content);
+        assertEquals("D2", topK.get(1).content, "普通 top-K 第二名是近似重复的片段");
+
+        List<DocumentChunkStore.Result> mmr = store.queryMMR(query, 2, 10, 0.5, 0.0);
+        assertEquals("D1", mmr.get(0).content);
+        assertEquals("A", mmr.get(1).content, "MMR 应把近似重复的片段让位给不同的片段");
+        assertEquals(1, store.queryMMR(query, 2, 10, 0.5, 0.996).size(), "MMR 同样遵守相似度下限");
+    }
+}
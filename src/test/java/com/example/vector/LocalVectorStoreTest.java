@@ -0,0 +1,113 @@
+package com.example.vector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * LocalVectorStore 测试类
+ * 测试 top-K 查询、MMR 多样化查询与增量变更
+ */
+class LocalVectorStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private LocalVectorStore store;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        store = new LocalVectorStore(tempDir.resolve("test_vectors.db").toString());
+        store.insertBatch(Arrays.asList(
+                new LocalVectorStore.Item("A1", "a", new float[]{1.0f, 0.0f, 0.0f}),
+                new LocalVectorStore.Item("A2", "a", new float[]{0.999f, 0.04f, 0.0f}),
+                new LocalVectorStore.Item("B1", "b", new float[]{0.6f, 0.8f, 0.0f}),
+                new LocalVectorStore.Item("C1", "c", new float[]{0.0f, 0.0f, 1.0f})
+        ));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        store.close();
+    }
+
+    @Test
+    void testQueryTopK() throws Exception {
+        List<LocalVectorStore.Result> results = store.queryTopK(new float[]{1.0f, 0.0f, 0.0f}, 3);
+
+        assertEquals(3, results.size());
+        assertEquals("A1", results.get(0).content);
+        assertEquals(1.0, results.get(0).sim, 0.0001);
+        assertTrue(results.get(0).sim >= results.get(1).sim, "结果应按相似度降序");
+    }
+
+    @Test
+    void testQueryMMRPrefersDiverseResults() throws Exception {
+        float[] query = {0.9f, 0.436f, 0.0f};
+
+        List<LocalVectorStore.Result> topK = store.queryTopK(query, 2);
+        assertEquals("A2", topK.get(0).content);
+        assertEquals("A1", topK.get(1).content, "普通 top-K 第二名是近似重复项");
+
+        List<LocalVectorStore.Result> mmr = store.queryMMR(query, 2, 0.5);
+        assertEquals(2, mmr.size());
+        assertEquals("A2", mmr.get(0).content, "第一个结果应为最相似项");
+        assertEquals("B1", mmr.get(1).content, "MMR 应跳过近似重复项");
+    }
+
+    @Test
+    void testQueryMMRWithLambdaOneMatchesTopK() throws Exception {
+        float[] query = {0.9f, 0.3f, 0.1f};
+
+        List<LocalVectorStore.Result> topK = store.queryTopK(query, 3);
+        List<LocalVectorStore.Result> mmr = store.queryMMR(query, 3, 1.0);
+
+        assertEquals(topK.size(), mmr.size());
+        for (int i = 0; i < topK.size(); i++) {
+            assertEquals(topK.get(i).id, mmr.get(i).id);
+        }
+    }
+
+    @Test
+    void testQueryMMRSeesNewInserts() throws Exception {
+        float[] query = {0.0f, 1.0f, 0.0f};
+        store.queryMMR(query, 1, 0.5);
+
+        store.insert("D1", "d", new float[]{0.0f, 1.0f, 0.0f});
+
+        List<LocalVectorStore.Result> results = store.queryMMR(query, 1, 0.5);
+        assertEquals("D1", results.get(0).content, "写入后应重新加载内存快照");
+    }
+
+    @Test
+    void testApplyChangesSwapsSnapshot() throws Exception {
+        Map<Integer, String> hashes = store.listHashes();
+        assertEquals(4, hashes.size());
+        assertTrue(hashes.containsValue(LocalVectorStore.hashOf("c", "C1")));
+
+        // 先查询一次，确保内存快照已加载
+        assertEquals("C1", store.queryTopK(new float[]{0.0f, 0.0f, 1.0f}, 1).get(0).content);
+
+        Integer c1 = null;
+        for (Map.Entry<Integer, String> entry : hashes.entrySet()) {
+            if (entry.getValue().equals(LocalVectorStore.hashOf("c", "C1"))) {
+                c1 = entry.getKey();
+            }
+        }
+        store.applyChanges(
+                Collections.singletonList(new LocalVectorStore.Item("C2", "c", new float[]{0.0f, 0.1f, 1.0f})),
+                Collections.singletonList(c1));
+
+        assertEquals(4, store.listHashes().size());
+        assertEquals("C2", store.queryTopK(new float[]{0.0f, 0.0f, 1.0f}, 1).get(0).content);
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PersistentEmbeddingCache 测试类
+ * 测试重启后缓存仍然可用，以及容量限制
+ */
+class PersistentEmbeddingCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testEntriesSurviveReopen() throws Exception {
+        String dbPath = tempDir.resolve("cache.db").toString();
+        String key = PersistentEmbeddingCache.key("text-embedding-3-small", "查询专利信息");
+
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(dbPath, 100);
+        assertNull(cache.get(key));
+        cache.putAsync(key, new float[]{0.25f, -1.5f, 3.0f});
+        cache.close();
+
+        PersistentEmbeddingCache reopened = new PersistentEmbeddingCache(dbPath, 100);
+        assertArrayEquals(new float[]{0.25f, -1.5f, 3.0f}, reopened.get(key));
+        assertEquals(1, reopened.getHitCount());
+        reopened.close();
+    }
+
+    @Test
+    void testSmallCacheStaysWithinMaxEntries() throws Exception {
+        String dbPath = tempDir.resolve("cache.db").toString();
+
+        // 最大条目数远小于默认检查间隔时，按最大条目数的比例检查容量
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(dbPath, 10);
+        for (int i = 0; i < 50; i++) {
+            String key = PersistentEmbeddingCache.key("text-embedding-3-small", "文本" + i);
+            cache.putAsync(key, new float[]{i});
+            // 命中产生的访问时间更新与写入混在同一批次
+            cache.get(key);
+            cache.get(key);
+        }
+        cache.close();
+
+        assertTrue(countRows(dbPath) <= 10, "条目数应不超过最大条目数");
+    }
+
+    @Test
+    void testReopenEvictsEntriesAboveNewLimit() throws Exception {
+        String dbPath = tempDir.resolve("cache.db").toString();
+        PersistentEmbeddingCache cache = new PersistentEmbeddingCache(dbPath, 100);
+        for (int i = 0; i < 20; i++) {
+            cache.putAsync(PersistentEmbeddingCache.key("text-embedding-3-small", "文本" + i), new float[]{i});
+        }
+        cache.close();
+        assertEquals(20, countRows(dbPath));
+
+        // 上次运行写入的条目不足一个检查间隔，启动时也应按新的容量淘汰
+        new PersistentEmbeddingCache(dbPath, 5).close();
+        assertEquals(5, countRows(dbPath));
+    }
+
+    private static long countRows(String dbPath) throws Exception {
+        try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + dbPath);
+             Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT COUNT(*) FROM embedding_cache")) {
+            return rs.next() ? rs.getLong(1) : 0;
+        }
+    }
+
+    @Test
+    void testKeyDependsOnModel() {
+        assertNotEquals(
+                PersistentEmbeddingCache.key("model-a", "相同文本"),
+                PersistentEmbeddingCache.key("model-b", "相同文本"));
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.vector;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * VectorMath 测试类
+ */
+class VectorMathTest {
+
+    @Test
+    void testCosine() {
+        assertEquals(1.0, VectorMath.cosine(new float[]{1f, 0f}, new float[]{2f, 0f}), 1e-9);
+        assertEquals(0.6, VectorMath.cosine(new float[]{1f, 0f}, new float[]{0.6f, 0.8f}), 1e-6);
+        assertEquals(0.0, VectorMath.cosine(new float[]{0f, 0f}, new float[]{1f, 0f}), "零向量的相似度为 0");
+    }
+
+    @Test
+    void testCosineOfIdenticalVectors() {
+        float[] a = {1f, 2f, 3f};
+        float[] b = {1f, 2f, 3f};
+
+        assertEquals(1.0, VectorMath.cosine(a, b), 0.0001, "相同向量相似度应该为 1");
+        assertEquals(0.0, VectorMath.cosine(new float[]{0f, 0f, 0f}, new float[]{1f, 0f, 0f}), 0.0001);
+    }
+
+    @Test
+    void testCosineWithDifferentLength() {
+        float[] a = {1f, 2f};
+        float[] b = {1f, 2f, 3f};
+
+        assertThrows(IllegalArgumentException.class, () -> VectorMath.cosine(a, b));
+    }
+
+    @Test
+    void testNormalize() {
+        float[] unit = VectorMath.normalize(new float[]{3f, 4f});
+
+        assertEquals(1.0, VectorMath.norm(unit), 1e-6);
+        assertEquals(0.6f, unit[0], 1e-6f);
+        assertArrayEquals(new float[]{0f, 0f}, VectorMath.normalize(new float[]{0f, 0f}));
+    }
+}